@@ -0,0 +1,103 @@
+package components.mchest;
+
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmark for {@code ChestAnalytics.analyze} over a large collection
+ * of chests, run with pools of increasing size to show how the aggregation
+ * scales with cores.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ChestAnalyticsBenchmark {
+
+    /**
+     * Number of worker threads in the pool.
+     */
+    @Param({ "1", "2", "4", "8" })
+    public int workers;
+
+    /**
+     * Simple name of the kernel implementation of the chests.
+     */
+    @Param({ "MChestOnMap", "AdaptiveMChest" })
+    public String kernel;
+
+    /**
+     * The chests analyzed.
+     */
+    private ArrayList<MChest> chests;
+
+    /**
+     * The pool the analytics run on.
+     */
+    private ForkJoinPool pool;
+
+    /**
+     * The analytics under test.
+     */
+    private ChestAnalytics analytics;
+
+    /**
+     * Builds the chests and the pool.
+     *
+     * @throws ReflectiveOperationException
+     *             if the kernel cannot be constructed
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws ReflectiveOperationException {
+        final int chestCount = 500_000;
+        final int kinds = 64;
+        final int itemsPerChest = 6;
+        final int quantities = 16;
+        this.chests = new ArrayList<>(chestCount);
+        for (int i = 0; i < chestCount; i++) {
+            MChest chest = MChestBenchmark.newChest(this.kernel);
+            for (int j = 0; j < itemsPerChest; j++) {
+                chest.addItem("item:" + (i + j * j) % kinds,
+                        1 + (i + j) % quantities);
+            }
+            this.chests.add(chest);
+        }
+        this.pool = new ForkJoinPool(this.workers);
+        this.analytics = new ChestAnalytics(ItemRegistry.shared(), this.pool);
+    }
+
+    /**
+     * Shuts the pool down.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        this.pool.shutdown();
+    }
+
+    /**
+     * Aggregates every chest.
+     *
+     * @return the report, so the work is not eliminated
+     */
+    @Benchmark
+    public ChestReport analyze() {
+        return this.analytics.analyze(this.chests);
+    }
+}
@@ -0,0 +1,116 @@
+package components.mchest;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmark for {@code CraftingSystem.craftItem}, run against every
+ * kernel implementation.
+ *
+ * <p>
+ * {@code CraftingSystem} lives in the default package, which JMH benchmarks
+ * cannot import, so it is reached through method handles looked up once in
+ * {@link #setUp()}. Each operation crafts a sword and then puts the chest
+ * back the way it was, so the chest never runs out of ingredients.
+ * </p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CraftingBenchmark {
+
+    /**
+     * Simple name of the kernel implementation under test.
+     */
+    @Param({ "MChestOnMap", "MChestOnIntTable", "MChestOnItemIds",
+            "ConcurrentMChest", "MChestOnArena", "MChestOnTrie",
+            "AdaptiveMChest" })
+    public String kernel;
+
+    /**
+     * Number of unrelated items also in the chest.
+     */
+    @Param({ "0", "64" })
+    public int otherItems;
+
+    /**
+     * The chest crafted from.
+     */
+    private MChest chest;
+
+    /**
+     * The crafting system under test.
+     */
+    private Object system;
+
+    /**
+     * Handle for {@code CraftingSystem.craftItem(String, String...)}.
+     */
+    private MethodHandle craftItem;
+
+    /**
+     * Ingredients of the sword recipe.
+     */
+    private String[] ingredients;
+
+    /**
+     * Builds the chest and the crafting system.
+     *
+     * @throws Throwable
+     *             if {@code CraftingSystem} cannot be reached
+     */
+    @Setup
+    public void setUp() throws Throwable {
+        final int stock = 100;
+        this.chest = MChestBenchmark.newChest(this.kernel);
+        this.chest.addItem("wood", stock);
+        this.chest.addItem("stick", stock);
+        for (int i = 0; i < this.otherItems; i++) {
+            this.chest.addItem("other:" + i, 1);
+        }
+        this.ingredients = new String[] { "wood", "wood", "stick" };
+
+        Class<?> type = Class.forName("CraftingSystem");
+        MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+        this.system = lookup
+                .findConstructor(type,
+                        MethodType.methodType(void.class, MChest.class))
+                .invoke(this.chest);
+        this.craftItem = lookup.findVirtual(type, "craftItem", MethodType
+                .methodType(boolean.class, String.class, String[].class));
+    }
+
+    /**
+     * Crafts a sword, then returns its ingredients to the chest.
+     *
+     * @return whether the sword was crafted
+     * @throws Throwable
+     *             if the craft fails
+     */
+    @Benchmark
+    public boolean craftSword() throws Throwable {
+        boolean crafted = (boolean) this.craftItem.invoke(this.system,
+                "sword", this.ingredients);
+        this.chest.decrement("sword", 1);
+        this.chest.addItem("wood", 2);
+        this.chest.addItem("stick", 1);
+        return crafted;
+    }
+}
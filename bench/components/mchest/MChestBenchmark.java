@@ -0,0 +1,276 @@
+package components.mchest;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import components.list.List;
+import components.map.Map;
+
+/**
+ * JMH benchmarks for the {@code MChest} kernel and secondary methods, run
+ * against every kernel implementation, for several chest sizes and item-name
+ * distributions.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MChestBenchmark {
+
+    /**
+     * Number of precomputed item picks; a power of 2.
+     */
+    private static final int PICKS = 1024;
+
+    /**
+     * Seed for the item picks, fixed so every run measures the same sequence.
+     */
+    private static final long SEED = 42;
+
+    /**
+     * Simple name of the kernel implementation under test.
+     */
+    @Param({ "MChestOnMap", "MChestOnIntTable", "MChestOnItemIds",
+            "ConcurrentMChest", "MChestOnArena", "MChestOnTrie",
+            "AdaptiveMChest" })
+    public String kernel;
+
+    /**
+     * Number of distinct items in the chest. With 512 items every quantity is
+     * 1, so the chest stays within its capacity.
+     */
+    @Param({ "8", "64", "512" })
+    public int distinctItems;
+
+    /**
+     * How churn operations pick items: "uniform" picks every item equally
+     * often, "skewed" picks a few items most of the time.
+     */
+    @Param({ "uniform", "skewed" })
+    public String distribution;
+
+    /**
+     * The chest under test.
+     */
+    private MChest chest;
+
+    /**
+     * A chest with the same contents as {@code chest}, for {@code equals}.
+     */
+    private MChest twin;
+
+    /**
+     * The item names.
+     */
+    private String[] names;
+
+    /**
+     * Precomputed indexes into {@code names} for the churn benchmark.
+     */
+    private int[] picks;
+
+    /**
+     * Position in {@code picks}.
+     */
+    private int cursor;
+
+    /**
+     * Creates an empty chest of the kernel under test.
+     *
+     * @param simpleName
+     *            simple name of the kernel class
+     * @return the new chest
+     * @throws ReflectiveOperationException
+     *             if the kernel cannot be constructed
+     */
+    static MChest newChest(String simpleName)
+            throws ReflectiveOperationException {
+        Class<?> type = Class.forName("components.mchest." + simpleName);
+        return (MChest) type.getConstructor().newInstance();
+    }
+
+    /**
+     * Builds the chests and the item picks.
+     *
+     * @throws ReflectiveOperationException
+     *             if the kernel cannot be constructed
+     */
+    @Setup
+    public void setUp() throws ReflectiveOperationException {
+        /*
+         * Cycle quantities 1..16, but shrink the cycle for large item counts
+         * so the chest stays below its capacity, with one spare item for the
+         * churn benchmarks.
+         */
+        final int maxQuantity = 16;
+        int quantities = Math.max(1, Math.min(maxQuantity,
+                (CapacityPolicy.LEGACY_ITEMS - 1) / this.distinctItems));
+        this.chest = newChest(this.kernel);
+        this.twin = newChest(this.kernel);
+        this.names = new String[this.distinctItems];
+        for (int i = 0; i < this.distinctItems; i++) {
+            this.names[i] = "item:" + i;
+            this.chest.addItem(this.names[i], 1 + i % quantities);
+            this.twin.addItem(this.names[i], 1 + i % quantities);
+        }
+        Random random = new Random(SEED);
+        this.picks = new int[PICKS];
+        for (int i = 0; i < PICKS; i++) {
+            double u = random.nextDouble();
+            if (this.distribution.equals("skewed")) {
+                u = u * u * u;
+            }
+            this.picks[i] = (int) (u * this.distinctItems);
+        }
+        this.cursor = 0;
+    }
+
+    /**
+     * Returns the next precomputed item name.
+     *
+     * @return the item name
+     */
+    private String nextName() {
+        this.cursor = (this.cursor + 1) & (PICKS - 1);
+        return this.names[this.picks[this.cursor]];
+    }
+
+    /**
+     * Adds one of an item and removes it again with {@code removeItem}.
+     *
+     * @return the removed pair
+     */
+    @Benchmark
+    public Map.Pair<String, Integer> addRemoveChurn() {
+        String name = this.nextName();
+        this.chest.addItem(name, 1);
+        return this.chest.removeItem(name, 1);
+    }
+
+    /**
+     * Adds one of an item and removes it again with {@code decrement}.
+     *
+     * @return the quantity left
+     */
+    @Benchmark
+    public int addDecrementChurn() {
+        String name = this.nextName();
+        this.chest.addItem(name, 1);
+        return this.chest.decrement(name, 1);
+    }
+
+    /**
+     * Measures {@code totalItems}.
+     *
+     * @return the total
+     */
+    @Benchmark
+    public int totalItems() {
+        return this.chest.totalItems();
+    }
+
+    /**
+     * Measures {@code isFull}.
+     *
+     * @return whether the chest is full
+     */
+    @Benchmark
+    public boolean isFull() {
+        return this.chest.isFull();
+    }
+
+    /**
+     * Measures {@code getItems}.
+     *
+     * @return the copy of the items
+     */
+    @Benchmark
+    public Map<String, Integer> getItems() {
+        return this.chest.getItems();
+    }
+
+    /**
+     * Measures {@code forEachItem} summing the quantities.
+     *
+     * @return the sum of the quantities
+     */
+    @Benchmark
+    public int forEachItemSum() {
+        int[] sum = new int[1];
+        this.chest.forEachItem((item, quantity) -> sum[0] += quantity);
+        return sum[0];
+    }
+
+    /**
+     * Measures {@code getItemsByQuantity} selecting about half the items.
+     *
+     * @return the selected item names
+     */
+    @Benchmark
+    public List<String> getItemsByQuantity() {
+        final int half = 8;
+        return this.chest.getItemsByQuantity(half);
+    }
+
+    /**
+     * Measures {@code equals} between two chests with the same contents.
+     *
+     * @return true
+     */
+    @Benchmark
+    public boolean equalsTwin() {
+        return this.chest.equals(this.twin);
+    }
+
+    /**
+     * Measures {@code hashCode}.
+     *
+     * @return the hash code
+     */
+    @Benchmark
+    public int hashCodeOfChest() {
+        return this.chest.hashCode();
+    }
+
+    /**
+     * Measures {@code toString}.
+     *
+     * @return the string form of the chest
+     */
+    @Benchmark
+    public String toStringOfChest() {
+        return this.chest.toString();
+    }
+
+    /**
+     * Runs every benchmark in the bench folder with the GC profiler, which
+     * reports allocation rates alongside the timings.
+     *
+     * @param args
+     *            command-line arguments (not used)
+     * @throws RunnerException
+     *             if a benchmark fails to run
+     */
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include("components\\.mchest\\..*")
+                .addProfiler(GCProfiler.class).build()).run();
+    }
+}
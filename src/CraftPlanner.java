@@ -0,0 +1,392 @@
+import java.util.ArrayList;
+
+import components.map.Map;
+import components.map.Map2;
+import components.mchest.MChest;
+
+/**
+ * Answers "how many of this recipe can be made from this chest?" and builds
+ * multi-step crafting plans, crafting intermediate items (planks, sticks,
+ * ...) from the recipes in a {@code RecipeBook} when the chest does not hold
+ * enough of them.
+ *
+ * <p>
+ * For each target the planner compiles, once, the dependency graph of
+ * recipes below it into a topologically ordered node array; the compiled
+ * graph is memoized. Checking whether {@code n} crafts are possible is then a
+ * single pass over that array using a primitive copy of the relevant chest
+ * quantities, without touching or copying the chest itself.
+ * </p>
+ *
+ * <p>
+ * Items are always taken from the chest before being crafted. If the recipes
+ * form a cycle (ingot to block to ingot), the item that closes the cycle is
+ * treated as a raw ingredient at that point. Surplus output of an
+ * intermediate recipe is left in the chest and not counted towards other
+ * steps.
+ * </p>
+ */
+public final class CraftPlanner {
+
+    /**
+     * Demands are capped at this value so that large counts multiplied down a
+     * deep graph cannot overflow; no chest holds this many items.
+     */
+    private static final long DEMAND_LIMIT = Long.MAX_VALUE / 2;
+
+    /**
+     * The compiled dependency graph below one target recipe.
+     */
+    private static final class Graph {
+
+        /**
+         * Name of each distinct item in the graph, indexed by local item ID.
+         */
+        private String[] items;
+
+        /**
+         * Local item ID of each node. Nodes are in topological order: every
+         * node comes before the nodes it consumes, and node 0 is the target.
+         */
+        private int[] nodeItem;
+
+        /**
+         * Recipe crafting each node's item, or {@code null} for a node whose
+         * item is only taken from the chest.
+         */
+        private Recipe[] nodeRecipe;
+
+        /**
+         * For each crafted node, the node of each of its recipe's
+         * ingredients, in the recipe's ingredient order.
+         */
+        private int[][] nodeChildren;
+    }
+
+    /**
+     * The recipes available for crafting.
+     */
+    private final RecipeBook book;
+
+    /**
+     * Compiled graphs, keyed by target output name.
+     */
+    private final Map<String, Graph> graphs;
+
+    /**
+     * Constructs a planner over the recipes in {@code book}. Recipes added to
+     * {@code book} later are only seen by targets not yet planned.
+     *
+     * @param book
+     *            the recipes available for crafting
+     * @requires book != null
+     */
+    public CraftPlanner(RecipeBook book) {
+        assert book != null : "Violation of: book is not null";
+        this.book = book;
+        this.graphs = new Map2<>();
+    }
+
+    /**
+     * Working state used while compiling a graph.
+     */
+    private static final class Compiler {
+
+        /**
+         * Local item IDs by name.
+         */
+        private final Map<String, Integer> itemIds = new Map2<>();
+
+        /**
+         * Item names by local ID.
+         */
+        private final ArrayList<String> items = new ArrayList<>();
+
+        /**
+         * Crafted node of each item, by local item ID, or -1.
+         */
+        private final ArrayList<Integer> craftedNode = new ArrayList<>();
+
+        /**
+         * Raw node of each item, by local item ID, or -1.
+         */
+        private final ArrayList<Integer> rawNode = new ArrayList<>();
+
+        /**
+         * Whether each item is on the current DFS path, by local item ID.
+         */
+        private final ArrayList<Boolean> onPath = new ArrayList<>();
+
+        /**
+         * Local item ID of each node, in DFS post-order.
+         */
+        private final ArrayList<Integer> nodeItem = new ArrayList<>();
+
+        /**
+         * Recipe of each node, in DFS post-order.
+         */
+        private final ArrayList<Recipe> nodeRecipe = new ArrayList<>();
+
+        /**
+         * Children of each node, in DFS post-order.
+         */
+        private final ArrayList<int[]> nodeChildren = new ArrayList<>();
+
+        /**
+         * Returns the local ID of {@code item}, assigning one if needed.
+         *
+         * @param item
+         *            the item name
+         * @return the local item ID
+         */
+        int idOf(String item) {
+            if (!this.itemIds.hasKey(item)) {
+                this.itemIds.add(item, this.items.size());
+                this.items.add(item);
+                this.craftedNode.add(-1);
+                this.rawNode.add(-1);
+                this.onPath.add(false);
+            }
+            return this.itemIds.value(item);
+        }
+
+        /**
+         * Appends a node in post-order.
+         *
+         * @param item
+         *            the local item ID
+         * @param recipe
+         *            the recipe, or {@code null} for a raw node
+         * @param children
+         *            the child nodes
+         * @return the post-order index of the node
+         */
+        int addNode(int item, Recipe recipe, int[] children) {
+            this.nodeItem.add(item);
+            this.nodeRecipe.add(recipe);
+            this.nodeChildren.add(children);
+            return this.nodeItem.size() - 1;
+        }
+    }
+
+    /**
+     * Returns the post-order node for {@code item}, compiling the subgraph
+     * below it if this is its first visit.
+     *
+     * @param c
+     *            the compiler state
+     * @param item
+     *            the item name
+     * @param isTarget
+     *            whether {@code item} is the target, which is always crafted
+     * @return the post-order index of the node
+     */
+    private int visit(Compiler c, String item, boolean isTarget) {
+        int id = c.idOf(item);
+        if (c.craftedNode.get(id) >= 0) {
+            return c.craftedNode.get(id);
+        }
+        if (!isTarget && (c.onPath.get(id) || !this.book.hasRecipe(item))) {
+            if (c.rawNode.get(id) < 0) {
+                c.rawNode.set(id, c.addNode(id, null, new int[0]));
+            }
+            return c.rawNode.get(id);
+        }
+        Recipe recipe = this.book.recipe(item);
+        c.onPath.set(id, true);
+        int[] children = new int[recipe.ingredientCount()];
+        for (int i = 0; i < children.length; i++) {
+            children[i] = this.visit(c, recipe.ingredient(i), false);
+        }
+        c.onPath.set(id, false);
+        int node = c.addNode(id, recipe, children);
+        c.craftedNode.set(id, node);
+        return node;
+    }
+
+    /**
+     * Returns the compiled graph for {@code output}, compiling and memoizing
+     * it on first use.
+     *
+     * @param output
+     *            the target output name
+     * @return the compiled graph
+     */
+    private Graph graph(String output) {
+        if (!this.graphs.hasKey(output)) {
+            Compiler c = new Compiler();
+            this.visit(c, output, true);
+            int n = c.nodeItem.size();
+            Graph g = new Graph();
+            g.items = c.items.toArray(new String[0]);
+            g.nodeItem = new int[n];
+            g.nodeRecipe = new Recipe[n];
+            g.nodeChildren = new int[n][];
+            for (int post = 0; post < n; post++) {
+                int topo = n - 1 - post;
+                g.nodeItem[topo] = c.nodeItem.get(post);
+                g.nodeRecipe[topo] = c.nodeRecipe.get(post);
+                int[] children = c.nodeChildren.get(post);
+                g.nodeChildren[topo] = new int[children.length];
+                for (int i = 0; i < children.length; i++) {
+                    g.nodeChildren[topo][i] = n - 1 - children[i];
+                }
+            }
+            this.graphs.add(output, g);
+        }
+        return this.graphs.value(output);
+    }
+
+    /**
+     * Reads the quantity of every item in {@code g} from {@code chest}.
+     *
+     * @param g
+     *            the compiled graph
+     * @param chest
+     *            the chest
+     * @return the quantities, indexed by local item ID
+     */
+    private static long[] stockOf(Graph g, MChest chest) {
+        long[] stock = new long[g.items.length];
+        for (int i = 0; i < stock.length; i++) {
+            stock[i] = chest.itemQuantity(g.items[i]);
+        }
+        return stock;
+    }
+
+    /**
+     * Works out whether the target of {@code g} can be crafted {@code n}
+     * times from {@code initialStock}, recording the crafts needed at each
+     * node in {@code crafts}.
+     *
+     * @param g
+     *            the compiled graph
+     * @param initialStock
+     *            the available quantities, indexed by local item ID
+     * @param n
+     *            the number of target crafts
+     * @param crafts
+     *            receives the number of crafts at each node
+     * @return true if the crafts are possible
+     */
+    private static boolean feasible(Graph g, long[] initialStock, long n,
+            long[] crafts) {
+        long[] stock = initialStock.clone();
+        long[] demand = new long[g.nodeItem.length];
+        for (int v = 0; v < g.nodeItem.length; v++) {
+            int item = g.nodeItem[v];
+            Recipe recipe = g.nodeRecipe[v];
+            if (recipe == null) {
+                if (demand[v] > stock[item]) {
+                    return false;
+                }
+                stock[item] -= demand[v];
+            } else {
+                long count = n;
+                if (v > 0) {
+                    long taken = Math.min(stock[item], demand[v]);
+                    stock[item] -= taken;
+                    long need = demand[v] - taken;
+                    long perCraft = recipe.outputQuantity();
+                    count = (need + perCraft - 1) / perCraft;
+                }
+                crafts[v] = count;
+                for (int i = 0; i < recipe.ingredientCount(); i++) {
+                    int child = g.nodeChildren[v][i];
+                    long required = recipe.required(i);
+                    long extra = DEMAND_LIMIT;
+                    if (count <= DEMAND_LIMIT / required) {
+                        extra = count * required;
+                    }
+                    demand[child] = Math.min(DEMAND_LIMIT,
+                            demand[child] + extra);
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns how many times the recipe producing {@code output} can be
+     * crafted from {@code chest}, crafting intermediate items as needed.
+     *
+     * @param chest
+     *            the chest to craft from
+     * @param output
+     *            the target output name
+     * @return the maximum number of crafts
+     * @requires chest != null and the recipe book has a recipe for output
+     */
+    public int maxCraftable(MChest chest, String output) {
+        assert chest != null : "Violation of: chest is not null";
+        assert this.book
+                .hasRecipe(output) : "Violation of: output has a recipe";
+        Graph g = this.graph(output);
+        long[] stock = stockOf(g, chest);
+        long[] crafts = new long[g.nodeItem.length];
+        if (!feasible(g, stock, 1, crafts)) {
+            return 0;
+        }
+        long low = 1;
+        long high = 2;
+        while (high <= Integer.MAX_VALUE && feasible(g, stock, high, crafts)) {
+            low = high;
+            high *= 2;
+        }
+        high = Math.min(high, (long) Integer.MAX_VALUE + 1);
+        while (high - low > 1) {
+            long mid = (low + high) >>> 1;
+            if (feasible(g, stock, mid, crafts)) {
+                low = mid;
+            } else {
+                high = mid;
+            }
+        }
+        return (int) low;
+    }
+
+    /**
+     * Returns a plan for crafting the recipe producing {@code output}
+     * {@code count} times from {@code chest}, or {@code null} if the chest
+     * does not hold enough. The steps craft intermediates first and the
+     * target last.
+     *
+     * @param chest
+     *            the chest to craft from
+     * @param output
+     *            the target output name
+     * @param count
+     *            the number of target crafts
+     * @return the plan, or {@code null} if it is not possible
+     * @requires chest != null and count > 0 and the recipe book has a recipe
+     *           for output
+     */
+    public CraftingPlan plan(MChest chest, String output, int count) {
+        assert chest != null : "Violation of: chest is not null";
+        assert count > 0 : "Violation of: count > 0";
+        assert this.book
+                .hasRecipe(output) : "Violation of: output has a recipe";
+        Graph g = this.graph(output);
+        long[] crafts = new long[g.nodeItem.length];
+        if (!feasible(g, stockOf(g, chest), count, crafts)) {
+            return null;
+        }
+        int steps = 0;
+        for (int v = 0; v < crafts.length; v++) {
+            if (crafts[v] > 0) {
+                steps++;
+            }
+        }
+        Recipe[] recipes = new Recipe[steps];
+        int[] times = new int[steps];
+        int step = 0;
+        for (int v = crafts.length - 1; v >= 0; v--) {
+            if (crafts[v] > 0) {
+                recipes[step] = g.nodeRecipe[v];
+                times[step] = (int) crafts[v];
+                step++;
+            }
+        }
+        return new CraftingPlan(recipes, times);
+    }
+}
@@ -0,0 +1,280 @@
+import components.list.List;
+import components.list.List2;
+import components.map.Map;
+import components.map.Map2;
+import components.mchest.MChest;
+
+/**
+ * Keeps track of which recipes in a {@code RecipeBook} can currently be
+ * crafted from an {@code MChest}. An inverted index maps each ingredient to
+ * the recipes that use it, so when an item's quantity changes only those
+ * recipes are re-evaluated, and the craftable set is updated in place.
+ *
+ * <p>
+ * The index does not observe the chest by itself: whoever changes the
+ * quantity of an item must call {@link #itemChanged(String)} for it.
+ * {@code CraftingSystem} does this for the crafts it performs. The index is
+ * never registered with the chest, so the chest holds no reference to it and
+ * it can be dropped along with its crafting system.
+ * </p>
+ */
+public final class CraftableIndex {
+
+    /**
+     * The recipes that use one ingredient, and how much of it each needs.
+     */
+    private static final class Usage {
+
+        /**
+         * The quantity of the ingredient last seen in the chest.
+         */
+        private int quantity;
+
+        /**
+         * Indexes into {@code recipes} of the recipes using the ingredient.
+         */
+        private int[] recipeIndexes;
+
+        /**
+         * Quantity required by the recipe at the same index.
+         */
+        private int[] required;
+
+        /**
+         * Number of used entries in {@code recipeIndexes} and
+         * {@code required}.
+         */
+        private int size;
+
+        /**
+         * Constructs an empty usage list.
+         */
+        Usage() {
+            this.recipeIndexes = new int[2];
+            this.required = new int[2];
+            this.size = 0;
+        }
+
+        /**
+         * Records that the recipe at {@code recipeIndex} requires
+         * {@code amount} of the ingredient.
+         *
+         * @param recipeIndex
+         *            the index of the recipe
+         * @param amount
+         *            the quantity required
+         */
+        void add(int recipeIndex, int amount) {
+            if (this.size == this.recipeIndexes.length) {
+                int[] largerIndexes = new int[this.size * 2];
+                int[] largerRequired = new int[this.size * 2];
+                System.arraycopy(this.recipeIndexes, 0, largerIndexes, 0,
+                        this.size);
+                System.arraycopy(this.required, 0, largerRequired, 0,
+                        this.size);
+                this.recipeIndexes = largerIndexes;
+                this.required = largerRequired;
+            }
+            this.recipeIndexes[this.size] = recipeIndex;
+            this.required[this.size] = amount;
+            this.size++;
+        }
+    }
+
+    /**
+     * The chest being tracked.
+     */
+    private final MChest chest;
+
+    /**
+     * All indexed recipes.
+     */
+    private final Recipe[] recipes;
+
+    /**
+     * Index into {@code recipes} of each recipe, keyed by output item name.
+     */
+    private final Map<String, Integer> recipeIndexes;
+
+    /**
+     * For each recipe, the number of its ingredients the chest is short of.
+     */
+    private final int[] unmet;
+
+    /**
+     * Inverted index from ingredient name to the recipes using it.
+     */
+    private final Map<String, Usage> usages;
+
+    /**
+     * Indexes of the craftable recipes, stored in the first
+     * {@code craftableSize} entries.
+     */
+    private final int[] craftable;
+
+    /**
+     * For each recipe, its position in {@code craftable}, or -1 if it is not
+     * craftable.
+     */
+    private final int[] craftablePosition;
+
+    /**
+     * Number of craftable recipes.
+     */
+    private int craftableSize;
+
+    /**
+     * Builds the index for {@code book} and evaluates every recipe against the
+     * current contents of {@code chest}. Recipes added to {@code book}
+     * afterwards are not indexed.
+     *
+     * @param book
+     *            the recipes to track
+     * @param chest
+     *            the chest to track
+     * @requires book != null and chest != null
+     */
+    public CraftableIndex(RecipeBook book, MChest chest) {
+        assert book != null : "Violation of: book is not null";
+        assert chest != null : "Violation of: chest is not null";
+        this.chest = chest;
+        this.recipes = new Recipe[book.size()];
+        this.recipeIndexes = new Map2<>();
+        this.unmet = new int[book.size()];
+        this.usages = new Map2<>();
+        this.craftable = new int[book.size()];
+        this.craftablePosition = new int[book.size()];
+        this.craftableSize = 0;
+
+        int r = 0;
+        for (Recipe recipe : book) {
+            this.recipes[r] = recipe;
+            this.recipeIndexes.add(recipe.output(), r);
+            this.craftablePosition[r] = -1;
+            for (int i = 0; i < recipe.ingredientCount(); i++) {
+                String item = recipe.ingredient(i);
+                if (!this.usages.hasKey(item)) {
+                    Usage usage = new Usage();
+                    usage.quantity = chest.itemQuantity(item);
+                    this.usages.add(item, usage);
+                }
+                Usage usage = this.usages.value(item);
+                usage.add(r, recipe.required(i));
+                if (usage.quantity < recipe.required(i)) {
+                    this.unmet[r]++;
+                }
+            }
+            if (this.unmet[r] == 0) {
+                this.markCraftable(r);
+            }
+            r++;
+        }
+    }
+
+    /**
+     * Adds recipe {@code r} to the craftable set.
+     *
+     * @param r
+     *            the recipe index
+     */
+    private void markCraftable(int r) {
+        this.craftable[this.craftableSize] = r;
+        this.craftablePosition[r] = this.craftableSize;
+        this.craftableSize++;
+    }
+
+    /**
+     * Removes recipe {@code r} from the craftable set by moving the last
+     * member into its place.
+     *
+     * @param r
+     *            the recipe index
+     */
+    private void unmarkCraftable(int r) {
+        int position = this.craftablePosition[r];
+        int last = this.craftable[this.craftableSize - 1];
+        this.craftable[position] = last;
+        this.craftablePosition[last] = position;
+        this.craftablePosition[r] = -1;
+        this.craftableSize--;
+    }
+
+    /**
+     * Re-reads the quantity of {@code item} from the chest and re-evaluates
+     * only the recipes that use it. Items no recipe uses are ignored.
+     *
+     * @param item
+     *            the item whose quantity may have changed
+     * @requires item != null
+     */
+    public void itemChanged(String item) {
+        assert item != null : "Violation of: item is not null";
+        if (!this.usages.hasKey(item)) {
+            return;
+        }
+        Usage usage = this.usages.value(item);
+        int oldQuantity = usage.quantity;
+        int newQuantity = this.chest.itemQuantity(item);
+        if (oldQuantity == newQuantity) {
+            return;
+        }
+        usage.quantity = newQuantity;
+        for (int i = 0; i < usage.size; i++) {
+            int r = usage.recipeIndexes[i];
+            boolean wasMet = oldQuantity >= usage.required[i];
+            boolean isMet = newQuantity >= usage.required[i];
+            if (wasMet && !isMet) {
+                if (this.unmet[r] == 0) {
+                    this.unmarkCraftable(r);
+                }
+                this.unmet[r]++;
+            } else if (!wasMet && isMet) {
+                this.unmet[r]--;
+                if (this.unmet[r] == 0) {
+                    this.markCraftable(r);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reports whether the recipe producing {@code output} can currently be
+     * crafted.
+     *
+     * @param output
+     *            the output item name
+     * @return true if an indexed recipe for {@code output} is craftable
+     */
+    public boolean isCraftable(String output) {
+        assert output != null : "Violation of: output is not null";
+        boolean result = false;
+        if (this.recipeIndexes.hasKey(output)) {
+            int r = this.recipeIndexes.value(output);
+            result = this.craftablePosition[r] >= 0;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of recipes that can currently be crafted.
+     *
+     * @return the number of craftable recipes
+     */
+    public int craftableCount() {
+        return this.craftableSize;
+    }
+
+    /**
+     * Returns the recipes that can currently be crafted, in no particular
+     * order.
+     *
+     * @return the craftable recipes
+     */
+    public List<Recipe> craftable() {
+        List<Recipe> result = new List2<>();
+        for (int i = 0; i < this.craftableSize; i++) {
+            result.addRightFront(this.recipes[this.craftable[i]]);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,76 @@
+/**
+ * An immutable sequence of crafting steps produced by {@code CraftPlanner}.
+ * Each step crafts one recipe a number of times; steps are in execution
+ * order, so every intermediate item is crafted before the steps that consume
+ * it.
+ */
+public final class CraftingPlan {
+
+    /**
+     * The recipe crafted by each step.
+     */
+    private final Recipe[] recipes;
+
+    /**
+     * How many times the recipe at the same index is crafted.
+     */
+    private final int[] times;
+
+    /**
+     * Constructs a plan from its steps.
+     *
+     * @param recipes
+     *            the recipe crafted by each step
+     * @param times
+     *            how many times each recipe is crafted
+     * @requires |recipes| = |times| and every entry of times > 0
+     */
+    CraftingPlan(Recipe[] recipes, int[] times) {
+        assert recipes.length == times.length : "Violation of: sizes match";
+        this.recipes = recipes;
+        this.times = times;
+    }
+
+    /**
+     * Returns the number of steps.
+     *
+     * @return the number of steps
+     */
+    public int stepCount() {
+        return this.recipes.length;
+    }
+
+    /**
+     * Returns the recipe crafted by step {@code i}.
+     *
+     * @param i
+     *            the step index
+     * @return the recipe of step {@code i}
+     * @requires 0 <= i < stepCount()
+     */
+    public Recipe recipe(int i) {
+        return this.recipes[i];
+    }
+
+    /**
+     * Returns how many times step {@code i} crafts its recipe.
+     *
+     * @param i
+     *            the step index
+     * @return the number of crafts in step {@code i}
+     * @requires 0 <= i < stepCount()
+     */
+    public int times(int i) {
+        return this.times[i];
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder("CraftingPlan:");
+        for (int i = 0; i < this.recipes.length; i++) {
+            result.append(" [").append(this.times[i]).append(" x ")
+                    .append(this.recipes[i].output()).append(']');
+        }
+        return result.toString();
+    }
+}
@@ -1,3 +1,9 @@
+import java.io.PrintStream;
+
+import components.list.List;
+import components.map.Map;
+import components.map.Map.Pair;
+import components.map.Map2;
 import components.mchest.MChest;
 import components.mchest.MChestOnMap;
 
@@ -13,36 +19,301 @@ public class CraftingSystem {
     private MChest chest;
 
     /**
-     * Constructs a CraftingSystem with the specified MChest.
+     * The recipes that can be crafted by name.
+     */
+    private RecipeBook recipes;
+
+    /**
+     * Where crafting attempts are reported, or {@code null} for no logging.
+     */
+    private PrintStream log;
+
+    /**
+     * Tracks which recipes in {@code recipes} are craftable; built on first
+     * use.
+     */
+    private CraftableIndex craftable;
+
+    /**
+     * Plans multi-step crafts over {@code recipes}; built on first use.
+     */
+    private CraftPlanner planner;
+
+    /**
+     * Constructs a CraftingSystem with the specified MChest and no recipes.
      *
      * @param chest
      *            the MChest instance to be used for crafting
      */
     public CraftingSystem(MChest chest) {
+        this(chest, new RecipeBook());
+    }
+
+    /**
+     * Constructs a CraftingSystem with the specified MChest and recipe book.
+     *
+     * @param chest
+     *            the MChest instance to be used for crafting
+     * @param recipes
+     *            the recipes that can be crafted by name
+     */
+    public CraftingSystem(MChest chest, RecipeBook recipes) {
         this.chest = chest;
+        this.recipes = recipes;
+        this.log = null;
+        this.craftable = null;
+        this.planner = null;
     }
 
     /**
-     * Attempts to craft an item by consuming the required components.
+     * Returns the crafting planner, building it on first use.
      *
-     * @param recipeName
+     * @return the planner
+     */
+    private CraftPlanner planner() {
+        if (this.planner == null) {
+            this.planner = new CraftPlanner(this.recipes);
+        }
+        return this.planner;
+    }
+
+    /**
+     * Reports every crafting attempt, and the chest contents after it, to
+     * {@code out}. Logging is off by default.
+     *
+     * @param out
+     *            where to report, or {@code null} to turn logging off
+     */
+    public void logTo(PrintStream out) {
+        this.log = out;
+    }
+
+    /**
+     * Crafts {@code recipe} once if the chest holds enough of every
+     * ingredient: all ingredients are consumed and the output is added, or the
+     * chest is left unchanged. A full chest is left unchanged too, since it
+     * could not take the output.
+     *
+     * @param recipe
+     *            the recipe to craft
+     * @return true if the item was crafted, false otherwise
+     * @requires recipe != null
+     */
+    public boolean craft(Recipe recipe) {
+        assert recipe != null : "Violation of: recipe is not null";
+        if (this.log != null) {
+            this.log.println("Attempting to craft: " + recipe.output());
+        }
+        boolean crafted = !this.chest.isFull()
+                && recipe.canCraftFrom(this.chest);
+        if (crafted) {
+            for (int i = 0; i < recipe.ingredientCount(); i++) {
+                this.chest.decrement(recipe.ingredient(i), recipe.required(i));
+            }
+            this.chest.addItem(recipe.output(), recipe.outputQuantity());
+            if (this.craftable != null) {
+                for (int i = 0; i < recipe.ingredientCount(); i++) {
+                    this.craftable.itemChanged(recipe.ingredient(i));
+                }
+                this.craftable.itemChanged(recipe.output());
+            }
+        }
+        if (this.log != null) {
+            if (crafted) {
+                this.log.println(
+                        "Crafted " + recipe.output() + "! Updated chest:");
+            } else {
+                this.log.println("Cannot craft " + recipe.output()
+                        + ". Missing components.");
+            }
+            this.log.println(this.chest);
+        }
+        return crafted;
+    }
+
+    /**
+     * Crafts the recipe in the recipe book that produces {@code output}.
+     *
+     * @param output
      *            name of the item to craft
-     * @param recipeItems
-     *            required items to craft it
+     * @return true if the item was crafted, false otherwise
+     * @requires there is a recipe for output in the recipe book
+     */
+    public boolean craft(String output) {
+        return this.craft(this.recipes.recipe(output));
+    }
+
+    /**
+     * Returns how many times the recipe producing {@code output} can be
+     * crafted from the chest, counting intermediate items that can themselves
+     * be crafted from it.
+     *
+     * @param output
+     *            name of the item to craft
+     * @return the maximum number of crafts
+     * @requires there is a recipe for output in the recipe book
+     */
+    public int maxCraftable(String output) {
+        return this.planner().maxCraftable(this.chest, output);
+    }
+
+    /**
+     * Returns a plan for crafting the recipe producing {@code output}
+     * {@code count} times, crafting intermediate items as needed, or
+     * {@code null} if the chest does not hold enough.
+     *
+     * @param output
+     *            name of the item to craft
+     * @param count
+     *            the number of crafts
+     * @return the plan, or {@code null}
+     * @requires count > 0 and there is a recipe for output in the recipe book
      */
-    public void craftItem(String recipeName, String... recipeItems) {
-        System.out.println("Attempting to craft: " + recipeName);
-        if (this.chest.canCraft(recipeItems)) {
-            for (String item : recipeItems) {
-                this.chest.removeItem(item, 1);
+    public CraftingPlan plan(String output, int count) {
+        return this.planner().plan(this.chest, output, count);
+    }
+
+    /**
+     * Reports whether the chest has room for {@code plan}: after every step,
+     * the items the plan has added so far, net of what it has consumed, must
+     * fit in the chest as it was before the plan. Space freed by consuming
+     * other items is not counted.
+     *
+     * @param plan
+     *            the plan to check
+     * @return true if the chest can take every step of the plan
+     */
+    private boolean hasRoomFor(CraftingPlan plan) {
+        Map<String, Integer> net = new Map2<>();
+        for (int s = 0; s < plan.stepCount(); s++) {
+            Recipe recipe = plan.recipe(s);
+            int times = plan.times(s);
+            for (int i = 0; i < recipe.ingredientCount(); i++) {
+                addTo(net, recipe.ingredient(i), -recipe.required(i) * times);
             }
-            this.chest.addItem(recipeName, 1);
-            System.out.println("Crafted " + recipeName + "! Updated chest:");
+            addTo(net, recipe.output(), recipe.outputQuantity() * times);
+            Map<String, Integer> gains = new Map2<>();
+            for (Pair<String, Integer> pair : net) {
+                if (pair.value() > 0) {
+                    gains.add(pair.key(), pair.value());
+                }
+            }
+            if (!this.chest.fits(gains)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Adds {@code change} to the value of {@code item} in {@code net}.
+     *
+     * @param net
+     *            the net change per item
+     * @param item
+     *            the item
+     * @param change
+     *            the change to add
+     */
+    private static void addTo(Map<String, Integer> net, String item,
+            int change) {
+        if (net.hasKey(item)) {
+            net.replaceValue(item, net.value(item) + change);
         } else {
-            System.out.println(
-                    "Cannot craft " + recipeName + ". Missing components.");
+            net.add(item, change);
+        }
+    }
+
+    /**
+     * Crafts the recipe producing {@code output} {@code count} times,
+     * including any intermediate crafts, or leaves the chest unchanged if that
+     * is not possible. As with {@link #craft(Recipe)}, a chest without room
+     * for the crafted items is left unchanged.
+     *
+     * @param output
+     *            name of the item to craft
+     * @param count
+     *            the number of crafts
+     * @return true if the items were crafted, false otherwise
+     * @requires count > 0 and there is a recipe for output in the recipe book
+     */
+    public boolean craft(String output, int count) {
+        if (this.log != null) {
+            this.log.println("Attempting to craft: " + count + " x " + output);
+        }
+        CraftingPlan plan = null;
+        if (!this.chest.isFull()) {
+            plan = this.plan(output, count);
         }
-        System.out.println(this.chest);
+        if (plan != null && !this.hasRoomFor(plan)) {
+            plan = null;
+        }
+        if (plan != null) {
+            for (int s = 0; s < plan.stepCount(); s++) {
+                Recipe recipe = plan.recipe(s);
+                int times = plan.times(s);
+                for (int i = 0; i < recipe.ingredientCount(); i++) {
+                    this.chest.decrement(recipe.ingredient(i),
+                            recipe.required(i) * times);
+                    this.itemChanged(recipe.ingredient(i));
+                }
+                this.chest.addItem(recipe.output(),
+                        recipe.outputQuantity() * times);
+                this.itemChanged(recipe.output());
+            }
+        }
+        if (this.log != null) {
+            if (plan != null) {
+                this.log.println("Crafted " + plan + ". Updated chest:");
+            } else {
+                this.log.println("Cannot craft " + count + " x " + output
+                        + ". Missing components.");
+            }
+            this.log.println(this.chest);
+        }
+        return plan != null;
+    }
+
+    /**
+     * Returns the recipes in the recipe book that can currently be crafted
+     * from the chest. After the first call this is kept up to date
+     * incrementally: crafts made through this system are tracked
+     * automatically, and other changes to the chest must be reported with
+     * {@link #itemChanged(String)}.
+     *
+     * @return the craftable recipes
+     */
+    public List<Recipe> craftableRecipes() {
+        if (this.craftable == null) {
+            this.craftable = new CraftableIndex(this.recipes, this.chest);
+        }
+        return this.craftable.craftable();
+    }
+
+    /**
+     * Reports that the quantity of {@code item} in the chest was changed by
+     * something other than this crafting system.
+     *
+     * @param item
+     *            the item whose quantity may have changed
+     */
+    public void itemChanged(String item) {
+        if (this.craftable != null) {
+            this.craftable.itemChanged(item);
+        }
+    }
+
+    /**
+     * Attempts to craft an item by consuming the required components.
+     *
+     * @param recipeName
+     *            name of the item to craft
+     * @param recipeItems
+     *            required items to craft it, one of each per mention
+     * @return true if the item was crafted, false otherwise
+     */
+    public boolean craftItem(String recipeName, String... recipeItems) {
+        return this.craft(new Recipe(recipeName, recipeItems));
     }
 
     /**
@@ -58,6 +329,7 @@ public class CraftingSystem {
         chest.addItem("stick", 2);
 
         CraftingSystem system = new CraftingSystem(chest);
+        system.logTo(System.out);
         system.craftItem("sword", "wood", "stick");
         system.craftItem("pickaxe", "wood", "stick", "stone");
     }
@@ -0,0 +1,182 @@
+import components.map.Map;
+import components.map.Map.Pair;
+import components.map.Map2;
+import components.mchest.MChest;
+
+/**
+ * An immutable crafting recipe: the quantity of each ingredient it consumes
+ * and the item (and quantity) it produces. Ingredients are compiled into
+ * parallel arrays when the recipe is built, so checking a chest against the
+ * recipe is one pass with no allocation.
+ */
+public final class Recipe {
+
+    /**
+     * The name of the item produced.
+     */
+    private final String output;
+
+    /**
+     * The quantity of {@code output} produced per craft.
+     */
+    private final int outputQuantity;
+
+    /**
+     * Ingredient names; no name appears twice.
+     */
+    private final String[] ingredients;
+
+    /**
+     * Quantity required of the ingredient at the same index.
+     */
+    private final int[] required;
+
+    /**
+     * Constructs a recipe producing one {@code output} from the listed
+     * ingredients, one of each per mention, so {@code "wood", "wood"} requires
+     * two wood.
+     *
+     * @param output
+     *            the name of the item produced
+     * @param ingredients
+     *            the ingredients consumed
+     * @requires output != null and ingredients.length > 0
+     */
+    public Recipe(String output, String... ingredients) {
+        this(output, 1, countEach(ingredients));
+    }
+
+    /**
+     * Constructs a recipe producing {@code outputQuantity} of {@code output}
+     * from the given ingredient quantities.
+     *
+     * @param output
+     *            the name of the item produced
+     * @param outputQuantity
+     *            the quantity produced per craft
+     * @param ingredients
+     *            a map from ingredient names to required quantities
+     * @requires output != null and outputQuantity > 0 and |ingredients| > 0
+     *           and every quantity in ingredients > 0
+     */
+    public Recipe(String output, int outputQuantity,
+            Map<String, Integer> ingredients) {
+        assert output != null : "Violation of: output is not null";
+        assert outputQuantity > 0 : "Violation of: outputQuantity > 0";
+        assert ingredients != null
+                && ingredients.size() > 0 : "Violation of: |ingredients| > 0";
+        this.output = output;
+        this.outputQuantity = outputQuantity;
+        this.ingredients = new String[ingredients.size()];
+        this.required = new int[ingredients.size()];
+        int i = 0;
+        for (Pair<String, Integer> pair : ingredients) {
+            assert pair.value() > 0 : "Violation of: quantity > 0";
+            this.ingredients[i] = pair.key();
+            this.required[i] = pair.value();
+            i++;
+        }
+    }
+
+    /**
+     * Counts how many times each name is listed.
+     *
+     * @param names
+     *            the names to count
+     * @return a map from each listed name to its number of mentions
+     */
+    private static Map<String, Integer> countEach(String... names) {
+        assert names != null : "Violation of: names is not null";
+        Map<String, Integer> counts = new Map2<>();
+        for (String name : names) {
+            if (counts.hasKey(name)) {
+                counts.replaceValue(name, counts.value(name) + 1);
+            } else {
+                counts.add(name, 1);
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Returns the name of the item this recipe produces.
+     *
+     * @return the output item name
+     */
+    public String output() {
+        return this.output;
+    }
+
+    /**
+     * Returns the quantity produced per craft.
+     *
+     * @return the output quantity
+     */
+    public int outputQuantity() {
+        return this.outputQuantity;
+    }
+
+    /**
+     * Returns the number of distinct ingredients.
+     *
+     * @return the number of ingredients
+     */
+    public int ingredientCount() {
+        return this.ingredients.length;
+    }
+
+    /**
+     * Returns the name of the {@code i}-th ingredient.
+     *
+     * @param i
+     *            the ingredient index
+     * @return the ingredient name
+     * @requires 0 <= i < ingredientCount()
+     */
+    public String ingredient(int i) {
+        return this.ingredients[i];
+    }
+
+    /**
+     * Returns the quantity required of the {@code i}-th ingredient.
+     *
+     * @param i
+     *            the ingredient index
+     * @return the required quantity
+     * @requires 0 <= i < ingredientCount()
+     */
+    public int required(int i) {
+        return this.required[i];
+    }
+
+    /**
+     * Reports whether {@code chest} holds enough of every ingredient for one
+     * craft.
+     *
+     * @param chest
+     *            the chest to check
+     * @return true if every requirement is met, false otherwise
+     * @requires chest != null
+     */
+    public boolean canCraftFrom(MChest chest) {
+        assert chest != null : "Violation of: chest is not null";
+        for (int i = 0; i < this.ingredients.length; i++) {
+            if (chest.itemQuantity(this.ingredients[i]) < this.required[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder();
+        result.append(this.outputQuantity).append(' ').append(this.output)
+                .append(" <-");
+        for (int i = 0; i < this.ingredients.length; i++) {
+            result.append(' ').append(this.required[i]).append(' ')
+                    .append(this.ingredients[i]);
+        }
+        return result.toString();
+    }
+}
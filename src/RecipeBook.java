@@ -0,0 +1,88 @@
+import java.util.Iterator;
+
+import components.map.Map;
+import components.map.Map.Pair;
+import components.map.Map2;
+
+/**
+ * A collection of {@code Recipe}s indexed by the item each one produces. At
+ * most one recipe per output item is kept.
+ */
+public final class RecipeBook implements Iterable<Recipe> {
+
+    /**
+     * Recipes keyed by output item name.
+     */
+    private final Map<String, Recipe> recipes;
+
+    /**
+     * No-argument constructor that initializes an empty recipe book.
+     */
+    public RecipeBook() {
+        this.recipes = new Map2<>();
+    }
+
+    /**
+     * Adds {@code recipe} to the book.
+     *
+     * @param recipe
+     *            the recipe to add
+     * @requires recipe != null and not hasRecipe(recipe.output())
+     */
+    public void add(Recipe recipe) {
+        assert recipe != null : "Violation of: recipe is not null";
+        assert !this.hasRecipe(
+                recipe.output()) : "Violation of: no recipe for output yet";
+        this.recipes.add(recipe.output(), recipe);
+    }
+
+    /**
+     * Reports whether the book has a recipe producing {@code output}.
+     *
+     * @param output
+     *            the output item name
+     * @return true if there is a recipe for {@code output}
+     */
+    public boolean hasRecipe(String output) {
+        assert output != null : "Violation of: output is not null";
+        return this.recipes.hasKey(output);
+    }
+
+    /**
+     * Returns the recipe producing {@code output}.
+     *
+     * @param output
+     *            the output item name
+     * @return the recipe for {@code output}
+     * @requires hasRecipe(output)
+     */
+    public Recipe recipe(String output) {
+        assert this.hasRecipe(output) : "Violation of: hasRecipe(output)";
+        return this.recipes.value(output);
+    }
+
+    /**
+     * Returns the number of recipes in the book.
+     *
+     * @return the number of recipes
+     */
+    public int size() {
+        return this.recipes.size();
+    }
+
+    @Override
+    public Iterator<Recipe> iterator() {
+        Iterator<Pair<String, Recipe>> pairs = this.recipes.iterator();
+        return new Iterator<Recipe>() {
+            @Override
+            public boolean hasNext() {
+                return pairs.hasNext();
+            }
+
+            @Override
+            public Recipe next() {
+                return pairs.next().value();
+            }
+        };
+    }
+}
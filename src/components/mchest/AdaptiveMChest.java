@@ -0,0 +1,363 @@
+package components.mchest;
+
+import java.util.function.ObjIntConsumer;
+
+import components.map.Map;
+
+/**
+ * {@code AdaptiveMChest} represents a Minecraft chest that changes layout
+ * with its size. Up to {@code INLINE_CAPACITY} distinct items are kept in a
+ * pair of parallel {@code String[]}/{@code int[]} arrays searched linearly,
+ * which for a handful of items is faster than hashing and costs three small
+ * objects instead of a map with an entry object per item. Adding an item
+ * past that promotes the chest to an {@code MChestOnIntTable}, and removing
+ * items until only {@code DEMOTE_SIZE} are left demotes it back. The gap
+ * between the two thresholds keeps a chest hovering around the limit from
+ * switching layout on every change.
+ *
+ * @convention <pre>
+ * ($this.table = null and
+ *  |$this.keys| = |$this.counts| = INLINE_CAPACITY and
+ *  0 <= $this.size <= INLINE_CAPACITY and
+ *  $this.keys[0, $this.size) are distinct non-null item names and
+ *  $this.counts[0, $this.size) > 0 and
+ *  $this.keys[$this.size, INLINE_CAPACITY) = null and
+ *  $this.total = sum of $this.counts[0, $this.size))
+ * or
+ * ($this.table != null and $this.keys = null and $this.counts = null and
+ *  $this.table.distinctItems() > DEMOTE_SIZE)
+ * </pre>
+ * @correspondence <pre>
+ * if $this.table = null then
+ *   this = {($this.keys[i], $this.counts[i]): 0 <= i < $this.size}
+ * else
+ *   this = $this.table
+ * </pre>
+ *
+ * @author Yuvraj Atre
+ */
+public class AdaptiveMChest extends MChestSecondary {
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * Largest number of distinct items kept in the inline arrays.
+     */
+    static final int INLINE_CAPACITY = 8;
+
+    /**
+     * Number of distinct items at which a hashed chest goes back to the
+     * inline arrays.
+     */
+    static final int DEMOTE_SIZE = 4;
+
+    /**
+     * Inline item names, or {@code null} while hashed.
+     */
+    private String[] keys;
+
+    /**
+     * Inline quantities, or {@code null} while hashed.
+     */
+    private int[] counts;
+
+    /**
+     * Number of inline items.
+     */
+    private int size;
+
+    /**
+     * Sum of the inline quantities.
+     */
+    private int total;
+
+    /**
+     * The hashed layout, or {@code null} while inline.
+     */
+    private MChestOnIntTable table;
+
+    /**
+     * Creator of initial representation.
+     */
+    private void createNewRep() {
+        this.keys = new String[INLINE_CAPACITY];
+        this.counts = new int[INLINE_CAPACITY];
+        this.size = 0;
+        this.total = 0;
+        this.table = null;
+    }
+
+    /**
+     * Returns the inline index of {@code item}, or -1 if it is not inline.
+     *
+     * @param item
+     *            the item name
+     * @return the index of item in keys, or -1
+     */
+    private int indexOf(String item) {
+        int i = this.size - 1;
+        while (i >= 0 && !this.keys[i].equals(item)) {
+            i--;
+        }
+        return i;
+    }
+
+    /**
+     * Moves the inline items into a new hash table.
+     */
+    private void promote() {
+        MChestOnIntTable promoted = new MChestOnIntTable();
+        for (int i = 0; i < this.size; i++) {
+            promoted.addItem(this.keys[i], this.counts[i]);
+        }
+        this.keys = null;
+        this.counts = null;
+        this.size = 0;
+        this.total = 0;
+        this.table = promoted;
+    }
+
+    /**
+     * Moves the items of the hash table back inline if few enough are left.
+     */
+    private void demoteIfSmall() {
+        if (this.table.distinctItems() <= DEMOTE_SIZE) {
+            MChestOnIntTable hashed = this.table;
+            this.createNewRep();
+            hashed.forEachItem((item, quantity) -> {
+                this.keys[this.size] = item;
+                this.counts[this.size] = quantity;
+                this.size++;
+                this.total += quantity;
+            });
+        }
+    }
+
+    /*
+     * Constructors -----------------------------------------------------------
+     */
+
+    /**
+     * No-argument constructor that initializes an empty chest.
+     *
+     * @ensures this = {}
+     */
+    public AdaptiveMChest() {
+        this.createNewRep();
+    }
+
+    /*
+     * Kernel methods ---------------------------------------------------------
+     */
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void addItem(String item, int quantity) {
+        assert item != null : "Violation of: item is not null";
+        assert quantity > 0 : "Violation of: quantity > 0";
+
+        if (this.table == null) {
+            int i = this.indexOf(item);
+            if (i >= 0) {
+                this.counts[i] += quantity;
+                this.total += quantity;
+            } else if (this.size < INLINE_CAPACITY) {
+                this.keys[this.size] = item;
+                this.counts[this.size] = quantity;
+                this.size++;
+                this.total += quantity;
+            } else {
+                this.promote();
+            }
+        }
+        if (this.table != null) {
+            this.table.addItem(item, quantity);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map.Pair<String, Integer> removeItem(String item, int quantity) {
+        assert item != null : "Violation of: item is not null";
+        assert quantity > 0 : "Violation of: quantity > 0";
+        assert this.containsItem(item) : "Violation of: item is in the chest";
+
+        int currentQuantity = this.itemQuantity(item);
+        int remaining = this.decrement(item, quantity);
+
+        return new ItemPair(item, currentQuantity - remaining);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int decrement(String item, int quantity) {
+        assert item != null : "Violation of: item is not null";
+        assert quantity > 0 : "Violation of: quantity > 0";
+        assert this.containsItem(item) : "Violation of: item is in the chest";
+
+        int remaining;
+        if (this.table != null) {
+            remaining = this.table.decrement(item, quantity);
+            if (remaining == 0) {
+                this.demoteIfSmall();
+            }
+        } else {
+            int i = this.indexOf(item);
+            remaining = Math.max(0, this.counts[i] - quantity);
+            this.total -= this.counts[i] - remaining;
+            if (remaining > 0) {
+                this.counts[i] = remaining;
+            } else {
+                this.size--;
+                this.keys[i] = this.keys[this.size];
+                this.counts[i] = this.counts[this.size];
+                this.keys[this.size] = null;
+                this.counts[this.size] = 0;
+            }
+        }
+        return remaining;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean containsItem(String item) {
+        assert item != null : "Violation of: item is not null";
+        boolean contains;
+        if (this.table != null) {
+            contains = this.table.containsItem(item);
+        } else {
+            contains = this.indexOf(item) >= 0;
+        }
+        return contains;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int itemQuantity(String item) {
+        assert item != null : "Violation of: item is not null";
+        int quantity = 0;
+        if (this.table != null) {
+            quantity = this.table.itemQuantity(item);
+        } else {
+            int i = this.indexOf(item);
+            if (i >= 0) {
+                quantity = this.counts[i];
+            }
+        }
+        return quantity;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isFull() {
+        return this.totalItems() >= CapacityPolicy.LEGACY_ITEMS;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void clear() {
+        this.createNewRep();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void forEachItem(ObjIntConsumer<String> action) {
+        assert action != null : "Violation of: action is not null";
+        if (this.table != null) {
+            this.table.forEachItem(action);
+        } else {
+            for (int i = 0; i < this.size; i++) {
+                action.accept(this.keys[i], this.counts[i]);
+            }
+        }
+    }
+
+    /*
+     * Secondary methods overridden for efficiency ----------------------------
+     */
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int totalItems() {
+        int totalItems = this.total;
+        if (this.table != null) {
+            totalItems = this.table.totalItems();
+        }
+        return totalItems;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int distinctItems() {
+        int distinct = this.size;
+        if (this.table != null) {
+            distinct = this.table.distinctItems();
+        }
+        return distinct;
+    }
+
+    /**
+     * Reports whether the chest currently uses the hashed layout.
+     *
+     * @return true if the items are in a hash table
+     */
+    boolean isHashed() {
+        return this.table != null;
+    }
+
+    // Implementing Standard<MChest> methods
+
+    // CHECKSTYLE: ALLOW THIS METHOD TO BE OVERRIDDEN
+    @Override
+    public MChest newInstance() {
+        try {
+            return this.getClass().getConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new AssertionError(
+                    "Cannot construct object of type " + this.getClass());
+        }
+    }
+
+    // CHECKSTYLE: ALLOW THIS METHOD TO BE OVERRIDDEN
+    @Override
+    public void transferFrom(MChest other) {
+        assert other != null : "Violation of: other chest is not null";
+        AdaptiveMChest localSource = (AdaptiveMChest) other;
+        this.keys = localSource.keys;
+        this.counts = localSource.counts;
+        this.size = localSource.size;
+        this.total = localSource.total;
+        this.table = localSource.table;
+        localSource.createNewRep();
+    }
+
+    // Implementing Comparable<MChest> method
+
+    // CHECKSTYLE: ALLOW THIS METHOD TO BE OVERRIDDEN
+    @Override
+    public int compareTo(MChest other) {
+        return Integer.compare(this.totalItems(), other.totalItems());
+    }
+}
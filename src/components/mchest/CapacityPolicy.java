@@ -0,0 +1,81 @@
+package components.mchest;
+
+/**
+ * Decides how much a chest can hold. A chest has a number of slots, each
+ * holding one stack of a single item up to that item's stack size, and a
+ * weight limit on the sum of the weights of its items. Either limit can be
+ * {@link #UNLIMITED}.
+ *
+ * <p>
+ * The {@link #legacy()} policy is the original rule: unlimited slots, every
+ * item weighing 1 and a weight limit of 1000, so a chest is full once it
+ * holds 1000 items.
+ * </p>
+ *
+ * <p>
+ * A policy's answers must not change once a chest is using it, since chests
+ * keep their slot and weight usage up to date incrementally.
+ * </p>
+ *
+ * @author Yuvraj Atre
+ */
+public interface CapacityPolicy {
+
+    /**
+     * Value of a limit or stack size that never constrains the chest.
+     */
+    int UNLIMITED = Integer.MAX_VALUE;
+
+    /**
+     * Number of items a chest holds under the {@link #legacy()} policy.
+     */
+    int LEGACY_ITEMS = 1000;
+
+    /**
+     * Returns the number of slots in a chest.
+     *
+     * @return the number of slots, or {@code UNLIMITED}
+     * @ensures slotLimit > 0
+     */
+    int slotLimit();
+
+    /**
+     * Returns the number of {@code item}s that fit in one slot.
+     *
+     * @param item
+     *            the item name
+     * @return the stack size, or {@code UNLIMITED}
+     * @requires item != null
+     * @ensures stackSize > 0
+     */
+    int stackSize(String item);
+
+    /**
+     * Returns the largest total weight a chest can hold.
+     *
+     * @return the weight limit, or {@code UNLIMITED}
+     * @ensures weightLimit > 0
+     */
+    int weightLimit();
+
+    /**
+     * Returns the weight of one {@code item}.
+     *
+     * @param item
+     *            the item name
+     * @return the weight
+     * @requires item != null
+     * @ensures weight >= 0
+     */
+    int weight(String item);
+
+    /**
+     * Returns the original policy: a chest is full once it holds
+     * {@code LEGACY_ITEMS} items, whatever they are.
+     *
+     * @return the legacy policy
+     */
+    static CapacityPolicy legacy() {
+        return SlotCapacityPolicy.LEGACY;
+    }
+}
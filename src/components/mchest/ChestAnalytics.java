@@ -0,0 +1,151 @@
+package components.mchest;
+
+import java.util.Collection;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Computes a {@code ChestReport} over a large collection of chests in
+ * parallel. The collection's {@code Spliterator} is split into chunks on a
+ * {@code ForkJoinPool}; each worker reads its chunk with
+ * {@code forEachItem} into its own report of primitive per-item counters,
+ * and the reports are merged pairwise as the tasks complete. Workers share
+ * nothing but the {@code ItemRegistry}, so the work scales with the number
+ * of cores.
+ *
+ * <p>
+ * The chests must not change while they are analyzed.
+ * </p>
+ *
+ * @author Yuvraj Atre
+ */
+public final class ChestAnalytics {
+
+    /**
+     * Number of chunks per worker thread; more than one lets idle workers
+     * steal work from slow ones.
+     */
+    private static final int CHUNKS_PER_WORKER = 4;
+
+    /**
+     * The registry assigning item IDs to the report's counters.
+     */
+    private final ItemRegistry registry;
+
+    /**
+     * The pool running the aggregation.
+     */
+    private final ForkJoinPool pool;
+
+    /**
+     * Splits and aggregates one part of the chests.
+     */
+    private final class Aggregate extends RecursiveTask<ChestReport> {
+
+        /**
+         * Serial version UID, as {@code ForkJoinTask} is serializable.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * The chests of this part.
+         */
+        private final transient Spliterator<? extends MChest> chests;
+
+        /**
+         * Estimated size at or below which a part is not split further.
+         */
+        private final long chunkSize;
+
+        /**
+         * Constructs a task over {@code chests}.
+         *
+         * @param chests
+         *            the chests of this part
+         * @param chunkSize
+         *            the largest estimated size of an unsplit part
+         */
+        Aggregate(Spliterator<? extends MChest> chests, long chunkSize) {
+            this.chests = chests;
+            this.chunkSize = chunkSize;
+        }
+
+        @Override
+        protected ChestReport compute() {
+            Spliterator<? extends MChest> rest = this.chests;
+            Spliterator<? extends MChest> prefix = null;
+            if (rest.estimateSize() > this.chunkSize) {
+                prefix = rest.trySplit();
+            }
+            ChestReport report;
+            if (prefix == null) {
+                ChestReport leaf = new ChestReport(
+                        ChestAnalytics.this.registry);
+                rest.forEachRemaining(leaf::accumulate);
+                report = leaf;
+            } else {
+                Aggregate left = new Aggregate(prefix, this.chunkSize);
+                left.fork();
+                ChestReport right = new Aggregate(rest, this.chunkSize)
+                        .compute();
+                report = left.join();
+                report.merge(right);
+            }
+            return report;
+        }
+    }
+
+    /**
+     * Constructs an analytics engine counting items by their
+     * {@code ItemRegistry.shared()} IDs on the common pool.
+     */
+    public ChestAnalytics() {
+        this(ItemRegistry.shared(), ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Constructs an analytics engine counting items by their IDs in
+     * {@code registry} on {@code pool}.
+     *
+     * @param registry
+     *            the registry assigning item IDs
+     * @param pool
+     *            the pool to run on
+     * @requires registry != null and pool != null
+     */
+    public ChestAnalytics(ItemRegistry registry, ForkJoinPool pool) {
+        assert registry != null : "Violation of: registry is not null";
+        assert pool != null : "Violation of: pool is not null";
+        this.registry = registry;
+        this.pool = pool;
+    }
+
+    /**
+     * Returns the report over the chests of {@code chests}.
+     *
+     * @param chests
+     *            the chests to analyze
+     * @return the report
+     * @requires chests != null and every chest in chests is not null
+     */
+    public ChestReport analyze(Spliterator<? extends MChest> chests) {
+        assert chests != null : "Violation of: chests is not null";
+        long chunkSize = Math.max(1, chests.estimateSize()
+                / ((long) this.pool.getParallelism() * CHUNKS_PER_WORKER));
+        return this.pool.invoke(new Aggregate(chests, chunkSize));
+    }
+
+    /**
+     * Returns the report over {@code chests}.
+     *
+     * @param chests
+     *            the chests to analyze
+     * @return the report
+     * @requires chests != null and every chest in chests is not null
+     */
+    public ChestReport analyze(Collection<? extends MChest> chests) {
+        assert chests != null : "Violation of: chests is not null";
+        return this.analyze(chests.spliterator());
+    }
+}
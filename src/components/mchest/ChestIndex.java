@@ -0,0 +1,298 @@
+package components.mchest;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.TreeSet;
+
+import components.list.List;
+import components.list.List2;
+
+/**
+ * Inverted index from item names to the chests holding them, across any
+ * number of chests. For each item the index keeps the chests holding it
+ * ordered by quantity, largest first, so "which chests hold at least k of
+ * X" and "the n chests with the most X" walk only the chests they return,
+ * in O(log m + k) for k results among m chests holding the item.
+ *
+ * <p>
+ * The index registers itself as a listener of every chest it
+ * {@link #watch}es, so it follows {@code addItem}, {@code removeItem},
+ * {@code clear}, {@code transferFrom} and every other change as it happens.
+ * Chests are told apart by identity, since {@code MChest.equals} compares
+ * contents.
+ * </p>
+ *
+ * <p>
+ * The index is thread-safe: it may be queried from any thread, and the
+ * chests it watches may be changed on different threads. As with any read
+ * of an {@code MChestOnMap}, {@code watch} and {@code unwatch} read the
+ * chest's contents, so a chest must not be changed while it is being
+ * watched or unwatched.
+ * </p>
+ *
+ * @author Yuvraj Atre
+ */
+public final class ChestIndex implements MChestListener {
+
+    /**
+     * One chest's quantity of an item.
+     */
+    private static final class Entry {
+
+        /**
+         * The chest, or {@code null} in a search bound.
+         */
+        private final MChest chest;
+
+        /**
+         * Serial number of the chest, breaking ties between equal
+         * quantities.
+         */
+        private final int serial;
+
+        /**
+         * Quantity of the item in the chest.
+         */
+        private final int quantity;
+
+        /**
+         * Constructs an entry.
+         *
+         * @param chest
+         *            the chest
+         * @param serial
+         *            the chest's serial number
+         * @param quantity
+         *            the quantity
+         */
+        Entry(MChest chest, int serial, int quantity) {
+            this.chest = chest;
+            this.serial = serial;
+            this.quantity = quantity;
+        }
+    }
+
+    /**
+     * Orders entries by decreasing quantity, then by serial number.
+     */
+    private static final Comparator<Entry> ORDER = (a, b) -> {
+        int byQuantity = Integer.compare(b.quantity, a.quantity);
+        if (byQuantity != 0) {
+            return byQuantity;
+        }
+        return Integer.compare(a.serial, b.serial);
+    };
+
+    /**
+     * For each item held by a watched chest, the chests holding it.
+     */
+    private final HashMap<String, TreeSet<Entry>> byItem;
+
+    /**
+     * Serial numbers of the watched chests.
+     */
+    private final IdentityHashMap<MChest, Integer> serials;
+
+    /**
+     * Serial number of the next chest watched.
+     */
+    private int nextSerial;
+
+    /**
+     * No-argument constructor that initializes an empty index.
+     */
+    public ChestIndex() {
+        this.byItem = new HashMap<>();
+        this.serials = new IdentityHashMap<>();
+        this.nextSerial = 0;
+    }
+
+    /**
+     * Moves the entry of the chest with {@code serial} for {@code item} from
+     * {@code oldQuantity} to {@code newQuantity}; a quantity of 0 means no
+     * entry.
+     *
+     * @param chest
+     *            the chest
+     * @param serial
+     *            the chest's serial number
+     * @param item
+     *            the item name
+     * @param oldQuantity
+     *            the quantity before the change
+     * @param newQuantity
+     *            the quantity after the change
+     */
+    private void update(MChest chest, int serial, String item,
+            int oldQuantity, int newQuantity) {
+        TreeSet<Entry> chests = this.byItem.get(item);
+        if (oldQuantity > 0 && chests != null) {
+            chests.remove(new Entry(chest, serial, oldQuantity));
+            if (chests.isEmpty()) {
+                this.byItem.remove(item);
+            }
+        }
+        if (newQuantity > 0) {
+            chests = this.byItem.computeIfAbsent(item,
+                    k -> new TreeSet<>(ORDER));
+            chests.add(new Entry(chest, serial, newQuantity));
+        }
+    }
+
+    /**
+     * Copies the chests of up to {@code n} entries from {@code it} into a new
+     * list, in iteration order.
+     *
+     * @param it
+     *            the entries to copy
+     * @param n
+     *            the maximum number of chests to copy
+     * @return the chests
+     */
+    private static List<MChest> chests(Iterator<Entry> it, int n) {
+        List<MChest> result = new List2<>();
+        int count = 0;
+        while (count < n && it.hasNext()) {
+            result.addRightFront(it.next().chest);
+            result.advance();
+            count++;
+        }
+        result.moveToStart();
+        return result;
+    }
+
+    /**
+     * Starts indexing {@code chest}, including the items it already holds.
+     * Watching a chest twice has no effect.
+     *
+     * @param chest
+     *            the chest to index
+     * @requires chest != null
+     */
+    public void watch(MChestOnMap chest) {
+        assert chest != null : "Violation of: chest is not null";
+        synchronized (this) {
+            if (this.serials.containsKey(chest)) {
+                return;
+            }
+            this.serials.put(chest, this.nextSerial);
+            this.nextSerial++;
+        }
+        /*
+         * Listen before reading the contents, so no change is missed; a
+         * change seen both ways just re-adds the same entry. addListener
+         * publishes the listener safely, so changes made on other threads
+         * from here on reach the index too.
+         */
+        chest.addListener(this);
+        synchronized (this) {
+            int serial = this.serials.get(chest);
+            chest.forEachItem((item, quantity) -> this.update(chest, serial,
+                    item, 0, quantity));
+        }
+    }
+
+    /**
+     * Stops indexing {@code chest} and removes its items from the index.
+     *
+     * @param chest
+     *            the chest to stop indexing
+     * @requires chest != null
+     */
+    public void unwatch(MChestOnMap chest) {
+        assert chest != null : "Violation of: chest is not null";
+        chest.removeListener(this);
+        synchronized (this) {
+            Integer serial = this.serials.remove(chest);
+            if (serial != null) {
+                chest.forEachItem((item, quantity) -> this.update(chest,
+                        serial, item, quantity, 0));
+            }
+        }
+    }
+
+    @Override
+    public synchronized void itemChanged(MChest chest, String item,
+            int oldQuantity, int newQuantity) {
+        Integer serial = this.serials.get(chest);
+        if (serial != null) {
+            this.update(chest, serial, item, oldQuantity, newQuantity);
+        }
+    }
+
+    /**
+     * Returns the number of watched chests.
+     *
+     * @return the number of chests
+     */
+    public synchronized int chestCount() {
+        return this.serials.size();
+    }
+
+    /**
+     * Returns the number of watched chests holding {@code item}.
+     *
+     * @param item
+     *            the item name
+     * @return the number of chests holding item
+     * @requires item != null
+     */
+    public synchronized int chestsHolding(String item) {
+        assert item != null : "Violation of: item is not null";
+        TreeSet<Entry> chests = this.byItem.get(item);
+        int count = 0;
+        if (chests != null) {
+            count = chests.size();
+        }
+        return count;
+    }
+
+    /**
+     * Returns the watched chests holding at least {@code minQuantity} of
+     * {@code item}, largest quantity first.
+     *
+     * @param item
+     *            the item name
+     * @param minQuantity
+     *            the minimum quantity
+     * @return the chests
+     * @requires item != null and minQuantity > 0
+     */
+    public synchronized List<MChest> chestsWithAtLeast(String item,
+            int minQuantity) {
+        assert item != null : "Violation of: item is not null";
+        assert minQuantity > 0 : "Violation of: minQuantity > 0";
+        TreeSet<Entry> chests = this.byItem.get(item);
+        List<MChest> result = new List2<>();
+        if (chests != null) {
+            result = chests(chests.headSet(
+                    new Entry(null, Integer.MAX_VALUE, minQuantity), true)
+                    .iterator(), Integer.MAX_VALUE);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the {@code n} watched chests with the most {@code item},
+     * largest quantity first.
+     *
+     * @param item
+     *            the item name
+     * @param n
+     *            the maximum number of chests
+     * @return the chests
+     * @requires item != null and n >= 0
+     */
+    public synchronized List<MChest> topChests(String item, int n) {
+        assert item != null : "Violation of: item is not null";
+        assert n >= 0 : "n must be non-negative";
+        TreeSet<Entry> chests = this.byItem.get(item);
+        List<MChest> result = new List2<>();
+        if (chests != null) {
+            result = chests(chests.iterator(), n);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,267 @@
+package components.mchest;
+
+import java.util.Arrays;
+
+import components.list.List;
+import components.list.List2;
+
+/**
+ * Aggregate statistics over a collection of chests, built by
+ * {@code ChestAnalytics}. Per-item counters are primitive arrays indexed by
+ * the item's ID in the analytics' {@code ItemRegistry}, so accumulating an
+ * item costs a few array writes and no allocation, and merging two reports
+ * adds their arrays element by element.
+ *
+ * @author Yuvraj Atre
+ */
+public final class ChestReport {
+
+    /**
+     * Number of buckets in the fill histogram: one for empty chests and one
+     * per bit length of a positive total.
+     */
+    private static final int FILL_BUCKETS = Integer.SIZE + 1;
+
+    /**
+     * The registry assigning item IDs.
+     */
+    private final ItemRegistry registry;
+
+    /**
+     * Sum of all quantities of each item, by ID.
+     */
+    private long[] totals;
+
+    /**
+     * Number of chests holding each item, by ID.
+     */
+    private int[] holders;
+
+    /**
+     * Largest quantity of each item in one chest, by ID.
+     */
+    private int[] largest;
+
+    /**
+     * First chest holding the largest quantity of each item, by ID.
+     */
+    private MChest[] topHolders;
+
+    /**
+     * Number of chests by bit length of their total item count.
+     */
+    private final long[] fill;
+
+    /**
+     * Number of chests seen.
+     */
+    private long chests;
+
+    /**
+     * Constructs an empty report.
+     *
+     * @param registry
+     *            the registry assigning item IDs
+     */
+    ChestReport(ItemRegistry registry) {
+        this.registry = registry;
+        int capacity = registry.size();
+        this.totals = new long[capacity];
+        this.holders = new int[capacity];
+        this.largest = new int[capacity];
+        this.topHolders = new MChest[capacity];
+        this.fill = new long[FILL_BUCKETS];
+        this.chests = 0;
+    }
+
+    /**
+     * Grows the per-item arrays to hold at least {@code capacity} IDs.
+     *
+     * @param capacity
+     *            the number of IDs needed
+     */
+    private void ensureCapacity(int capacity) {
+        if (capacity > this.totals.length) {
+            int length = Math.max(capacity, this.totals.length * 2);
+            this.totals = Arrays.copyOf(this.totals, length);
+            this.holders = Arrays.copyOf(this.holders, length);
+            this.largest = Arrays.copyOf(this.largest, length);
+            this.topHolders = Arrays.copyOf(this.topHolders, length);
+        }
+    }
+
+    /**
+     * Adds {@code chest} to the report.
+     *
+     * @param chest
+     *            the chest to count
+     */
+    void accumulate(MChest chest) {
+        int[] chestTotal = new int[1];
+        chest.forEachItem((item, quantity) -> {
+            int id = this.registry.idOf(item);
+            this.ensureCapacity(id + 1);
+            this.totals[id] += quantity;
+            this.holders[id]++;
+            if (quantity > this.largest[id]) {
+                this.largest[id] = quantity;
+                this.topHolders[id] = chest;
+            }
+            chestTotal[0] += quantity;
+        });
+        int bucket = Integer.SIZE
+                - Integer.numberOfLeadingZeros(chestTotal[0]);
+        this.fill[bucket]++;
+        this.chests++;
+    }
+
+    /**
+     * Adds the counts of {@code other}, which covers chests after the ones
+     * in this report, to this report.
+     *
+     * @param other
+     *            the report to merge in
+     */
+    void merge(ChestReport other) {
+        this.ensureCapacity(other.totals.length);
+        for (int id = 0; id < other.totals.length; id++) {
+            this.totals[id] += other.totals[id];
+            this.holders[id] += other.holders[id];
+            if (other.largest[id] > this.largest[id]) {
+                this.largest[id] = other.largest[id];
+                this.topHolders[id] = other.topHolders[id];
+            }
+        }
+        for (int b = 0; b < FILL_BUCKETS; b++) {
+            this.fill[b] += other.fill[b];
+        }
+        this.chests += other.chests;
+    }
+
+    /**
+     * Returns the ID of {@code item} if this report has counters for it, or
+     * -1.
+     *
+     * @param item
+     *            the item name
+     * @return the ID, or -1
+     */
+    private int idIn(String item) {
+        int id = this.registry.find(item);
+        if (id >= this.totals.length) {
+            id = -1;
+        }
+        return id;
+    }
+
+    /**
+     * Returns the number of chests in the report.
+     *
+     * @return the number of chests
+     */
+    public long chestCount() {
+        return this.chests;
+    }
+
+    /**
+     * Returns the total quantity of {@code item} over all chests.
+     *
+     * @param item
+     *            the item name
+     * @return the total quantity
+     * @requires item != null
+     */
+    public long total(String item) {
+        assert item != null : "Violation of: item is not null";
+        int id = this.idIn(item);
+        long total = 0;
+        if (id >= 0) {
+            total = this.totals[id];
+        }
+        return total;
+    }
+
+    /**
+     * Returns the number of chests holding {@code item}.
+     *
+     * @param item
+     *            the item name
+     * @return the number of holders
+     * @requires item != null
+     */
+    public int holders(String item) {
+        assert item != null : "Violation of: item is not null";
+        int id = this.idIn(item);
+        int count = 0;
+        if (id >= 0) {
+            count = this.holders[id];
+        }
+        return count;
+    }
+
+    /**
+     * Returns the chest holding the most {@code item}; the first in
+     * encounter order if several hold the same amount.
+     *
+     * @param item
+     *            the item name
+     * @return the top holder, or {@code null} if no chest holds item
+     * @requires item != null
+     */
+    public MChest topHolder(String item) {
+        assert item != null : "Violation of: item is not null";
+        int id = this.idIn(item);
+        MChest holder = null;
+        if (id >= 0) {
+            holder = this.topHolders[id];
+        }
+        return holder;
+    }
+
+    /**
+     * Returns the names of the {@code n} items with the largest totals,
+     * largest first.
+     *
+     * @param n
+     *            the maximum number of items
+     * @return the item names
+     * @requires n >= 0
+     */
+    public List<String> topItems(int n) {
+        assert n >= 0 : "n must be non-negative";
+        int count = 0;
+        for (long total : this.totals) {
+            if (total > 0) {
+                count++;
+            }
+        }
+        Integer[] ids = new Integer[count];
+        count = 0;
+        for (int id = 0; id < this.totals.length; id++) {
+            if (this.totals[id] > 0) {
+                ids[count] = id;
+                count++;
+            }
+        }
+        Arrays.sort(ids, (a, b) -> Long.compare(this.totals[b],
+                this.totals[a]));
+        List<String> result = new List2<>();
+        for (int i = 0; i < Math.min(n, ids.length); i++) {
+            result.addRightFront(this.registry.name(ids[i]));
+            result.advance();
+        }
+        result.moveToStart();
+        return result;
+    }
+
+    /**
+     * Returns the distribution of chest fill: element 0 counts empty chests
+     * and element {@code b > 0} counts chests whose total item count is in
+     * [2<sup>b-1</sup>, 2<sup>b</sup>).
+     *
+     * @return a copy of the fill histogram
+     */
+    public long[] fillHistogram() {
+        return this.fill.clone();
+    }
+}
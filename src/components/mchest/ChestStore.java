@@ -0,0 +1,517 @@
+package components.mchest;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import components.map.Map;
+
+/**
+ * Persistent store for a whole world's chests, kept as fixed-size records in
+ * a memory-mapped file. Chest {@code i} lives in record {@code i}; each record
+ * holds the length of an {@code MChestCodec} ID encoding followed by the
+ * encoding itself. Item names are kept once, in a dictionary file next to
+ * the store ({@code <file>.names}).
+ *
+ * <p>
+ * Opening a store reads only its header and dictionary. A chest is decoded
+ * the first time {@link #chest(int)} asks for it, and the store holds on to
+ * it only weakly until it is changed; changed chests are held until
+ * {@link #flush()} writes them back, and unchanged chests are never
+ * rewritten. The file is mapped in segments as records are reached, so
+ * neither startup time nor heap use grows with the number of chests.
+ * </p>
+ *
+ * <p>
+ * A store is not thread-safe.
+ * </p>
+ *
+ * @author Yuvraj Atre
+ */
+public final class ChestStore implements Closeable {
+
+    /**
+     * Record size that fits any chest within the default capacity: 1000
+     * distinct items at up to 5 bytes each, plus the record and codec
+     * headers.
+     */
+    public static final int DEFAULT_RECORD_SIZE = 8192;
+
+    /**
+     * First four bytes of every store file ("MCHS").
+     */
+    private static final int MAGIC = 0x4D434853;
+
+    /**
+     * Version of the file layout.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * Size of the file header: magic, version, record size, chest count.
+     */
+    private static final int HEADER_SIZE = 16;
+
+    /**
+     * Offset of the version in the header.
+     */
+    private static final int VERSION_OFFSET = 4;
+
+    /**
+     * Offset of the record size in the header.
+     */
+    private static final int RECORD_SIZE_OFFSET = 8;
+
+    /**
+     * Offset of the chest count in the header.
+     */
+    private static final int COUNT_OFFSET = 12;
+
+    /**
+     * Number of records mapped together.
+     */
+    private static final int RECORDS_PER_SEGMENT = 1024;
+
+    /**
+     * Bytes in the length prefix of a record.
+     */
+    private static final int LENGTH_SIZE = 4;
+
+    /**
+     * A chest opened from the store, which registers itself as dirty the
+     * first time it is changed.
+     */
+    private static final class StoredChest extends MChestOnMap {
+
+        /**
+         * The store this chest belongs to.
+         */
+        private final ChestStore store;
+
+        /**
+         * The chest's record index.
+         */
+        private final int id;
+
+        /**
+         * Whether the chest changed since it was last written.
+         */
+        private boolean dirty;
+
+        /**
+         * Constructs an empty chest for record {@code id}. The chest starts
+         * out marked dirty, so decoding its record into it does not register
+         * it; the store marks it clean once it is loaded.
+         *
+         * @param store
+         *            the store
+         * @param id
+         *            the record index
+         */
+        StoredChest(ChestStore store, int id) {
+            this.store = store;
+            this.id = id;
+            this.dirty = true;
+        }
+
+        /**
+         * Marks the chest dirty and hands it to the store to keep until the
+         * next flush.
+         */
+        private void touch() {
+            if (!this.dirty) {
+                this.dirty = true;
+                this.store.dirty.add(this);
+            }
+        }
+
+        @Override
+        public void addItem(String item, int quantity) {
+            this.touch();
+            super.addItem(item, quantity);
+        }
+
+        @Override
+        public int decrement(String item, int quantity) {
+            this.touch();
+            return super.decrement(item, quantity);
+        }
+
+        @Override
+        public void clear() {
+            this.touch();
+            super.clear();
+        }
+
+        @Override
+        public boolean addAll(Map<String, Integer> batch) {
+            this.touch();
+            return super.addAll(batch);
+        }
+
+        @Override
+        public MChest newInstance() {
+            return new MChestOnMap();
+        }
+
+        @Override
+        public void transferFrom(MChest other) {
+            this.touch();
+            super.transferFrom(other);
+        }
+
+        @Override
+        protected void emptyAfterTransfer() {
+            this.touch();
+            super.emptyAfterTransfer();
+        }
+    }
+
+    /**
+     * The store file.
+     */
+    private final FileChannel channel;
+
+    /**
+     * The dictionary file.
+     */
+    private final Path namesFile;
+
+    /**
+     * The item names used by the records.
+     */
+    private final ItemRegistry names;
+
+    /**
+     * Number of names already saved in {@code namesFile}.
+     */
+    private int savedNames;
+
+    /**
+     * Encodes chests by their IDs in {@code names}.
+     */
+    private final MChestCodec codec;
+
+    /**
+     * Size of each record in bytes.
+     */
+    private final int recordSize;
+
+    /**
+     * The mapped header.
+     */
+    private final MappedByteBuffer header;
+
+    /**
+     * Mapped segments, {@code null} until first used.
+     */
+    private final ArrayList<MappedByteBuffer> segments;
+
+    /**
+     * Open chests by record index; clean chests may be collected.
+     */
+    private final HashMap<Integer, WeakReference<StoredChest>> open;
+
+    /**
+     * Chests changed since the last flush.
+     */
+    private final ArrayList<StoredChest> dirty;
+
+    /**
+     * Number of chests in the store.
+     */
+    private int count;
+
+    /**
+     * Constructs a store over an open channel; see {@link #open(Path, int)}.
+     *
+     * @param channel
+     *            the store file
+     * @param namesFile
+     *            the dictionary file
+     * @param recordSize
+     *            the record size for a new store
+     * @throws IOException
+     *             if the files cannot be read or are not a chest store
+     */
+    private ChestStore(FileChannel channel, Path namesFile, int recordSize)
+            throws IOException {
+        this.channel = channel;
+        this.namesFile = namesFile;
+        boolean isNew = channel.size() == 0;
+        this.header = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                HEADER_SIZE);
+        if (isNew) {
+            this.header.putInt(0, MAGIC);
+            this.header.putInt(VERSION_OFFSET, VERSION);
+            this.header.putInt(RECORD_SIZE_OFFSET, recordSize);
+            this.header.putInt(COUNT_OFFSET, 0);
+        } else if (this.header.getInt(0) != MAGIC
+                || this.header.getInt(VERSION_OFFSET) != VERSION) {
+            throw new IOException("Not a chest store");
+        }
+        this.recordSize = this.header.getInt(RECORD_SIZE_OFFSET);
+        this.count = this.header.getInt(COUNT_OFFSET);
+        this.names = new ItemRegistry();
+        this.savedNames = 0;
+        if (Files.exists(namesFile)) {
+            try (DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(Files.newInputStream(namesFile)))) {
+                int n = in.readInt();
+                for (int i = 0; i < n; i++) {
+                    this.names.idOf(in.readUTF());
+                }
+                this.savedNames = n;
+            }
+        }
+        this.codec = new MChestCodec(this.names);
+        this.segments = new ArrayList<>();
+        this.open = new HashMap<>();
+        this.dirty = new ArrayList<>();
+    }
+
+    /**
+     * Opens the store in {@code file}, creating it with records of
+     * {@code recordSize} bytes if it does not exist. An existing store keeps
+     * the record size it was created with.
+     *
+     * @param file
+     *            the store file
+     * @param recordSize
+     *            the record size for a new store
+     * @return the store
+     * @throws IOException
+     *             if the files cannot be opened or are not a chest store
+     * @requires recordSize > 4
+     */
+    public static ChestStore open(Path file, int recordSize)
+            throws IOException {
+        assert file != null : "Violation of: file is not null";
+        assert recordSize > LENGTH_SIZE : "Violation of: recordSize > 4";
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+        Path namesFile = file.resolveSibling(file.getFileName() + ".names");
+        try {
+            return new ChestStore(channel, namesFile, recordSize);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens the store in {@code file}, creating it with
+     * {@code DEFAULT_RECORD_SIZE} records if it does not exist.
+     *
+     * @param file
+     *            the store file
+     * @return the store
+     * @throws IOException
+     *             if the files cannot be opened or are not a chest store
+     */
+    public static ChestStore open(Path file) throws IOException {
+        return open(file, DEFAULT_RECORD_SIZE);
+    }
+
+    /**
+     * Returns the record of chest {@code id}, positioned at its start and
+     * limited to its end, mapping its segment if needed.
+     *
+     * @param id
+     *            the record index
+     * @return the record
+     * @throws IOException
+     *             if the segment cannot be mapped
+     */
+    private ByteBuffer record(int id) throws IOException {
+        int segment = id / RECORDS_PER_SEGMENT;
+        while (this.segments.size() <= segment) {
+            this.segments.add(null);
+        }
+        if (this.segments.get(segment) == null) {
+            long segmentBytes = (long) RECORDS_PER_SEGMENT * this.recordSize;
+            long start = HEADER_SIZE + segment * segmentBytes;
+            this.segments.set(segment, this.channel
+                    .map(FileChannel.MapMode.READ_WRITE, start, segmentBytes));
+        }
+        ByteBuffer record = this.segments.get(segment).duplicate();
+        int offset = (id % RECORDS_PER_SEGMENT) * this.recordSize;
+        record.limit(offset + this.recordSize);
+        record.position(offset);
+        return record;
+    }
+
+    /**
+     * Returns the number of chests in the store.
+     *
+     * @return the number of chests
+     */
+    public int size() {
+        return this.count;
+    }
+
+    /**
+     * Returns the number of chests changed since the last flush.
+     *
+     * @return the number of dirty chests
+     */
+    public int dirtyCount() {
+        return this.dirty.size();
+    }
+
+    /**
+     * Adds an empty chest to the store.
+     *
+     * @return the ID of the new chest
+     * @throws IOException
+     *             if the file cannot be extended
+     */
+    public int create() throws IOException {
+        int id = this.count;
+        this.record(id).putInt(0);
+        this.count++;
+        this.header.putInt(COUNT_OFFSET, this.count);
+        return id;
+    }
+
+    /**
+     * Returns chest {@code id}, decoding it from its record if it is not
+     * already open. Changes to the chest are written back by {@link #flush()}.
+     *
+     * @param id
+     *            the chest ID
+     * @return the chest
+     * @throws IOException
+     *             if the record cannot be read
+     * @requires 0 <= id < size()
+     */
+    public MChest chest(int id) throws IOException {
+        assert 0 <= id && id < this.count : "Violation of: 0 <= id < size()";
+        WeakReference<StoredChest> ref = this.open.get(id);
+        StoredChest chest = null;
+        if (ref != null) {
+            chest = ref.get();
+        }
+        if (chest == null) {
+            chest = new StoredChest(this, id);
+            ByteBuffer record = this.record(id);
+            int length = record.getInt();
+            if (length > 0) {
+                record.limit(record.position() + length);
+                this.codec.decode(record, chest);
+            }
+            chest.dirty = false;
+            this.open.put(id, new WeakReference<>(chest));
+        }
+        return chest;
+    }
+
+    /**
+     * Saves the names not yet in the dictionary file, replacing the file
+     * atomically.
+     *
+     * @throws IOException
+     *             if the file cannot be written
+     */
+    private void saveNames() throws IOException {
+        int n = this.names.size();
+        if (n == this.savedNames) {
+            return;
+        }
+        Path temp = this.namesFile
+                .resolveSibling(this.namesFile.getFileName() + ".tmp");
+        try (FileOutputStream file = new FileOutputStream(temp.toFile());
+                DataOutputStream out = new DataOutputStream(
+                        new BufferedOutputStream(file))) {
+            out.writeInt(n);
+            for (int i = 0; i < n; i++) {
+                out.writeUTF(this.names.name(i));
+            }
+            out.flush();
+            file.getFD().sync();
+        }
+        Files.move(temp, this.namesFile, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        this.savedNames = n;
+    }
+
+    /**
+     * Writes every changed chest back to its record and forces the file to
+     * disk. Unchanged chests are not touched. The dictionary, including any
+     * names the changed chests introduce, is saved and forced first, so the
+     * records on disk never use an ID the dictionary file lacks.
+     *
+     * @throws IOException
+     *             if the files cannot be written
+     * @throws IllegalStateException
+     *             if a chest does not fit in a record
+     */
+    public void flush() throws IOException {
+        /*
+         * Sizing a chest registers the IDs of its items, so every name the
+         * records will use is known before the dictionary is saved.
+         */
+        int[] lengths = new int[this.dirty.size()];
+        for (int i = 0; i < lengths.length; i++) {
+            StoredChest chest = this.dirty.get(i);
+            lengths[i] = this.codec.encodedSize(chest);
+            if (lengths[i] > this.recordSize - LENGTH_SIZE) {
+                throw new IllegalStateException(
+                        "Chest " + chest.id + " does not fit in a record");
+            }
+        }
+        this.saveNames();
+        for (int i = 0; i < lengths.length; i++) {
+            StoredChest chest = this.dirty.get(i);
+            ByteBuffer record = this.record(chest.id);
+            record.putInt(lengths[i]);
+            this.codec.encode(chest, record);
+            chest.dirty = false;
+        }
+        this.dirty.clear();
+        for (MappedByteBuffer segment : this.segments) {
+            if (segment != null) {
+                segment.force();
+            }
+        }
+        this.header.force();
+        this.prune();
+    }
+
+    /**
+     * Drops the entries of collected chests from {@code open}.
+     */
+    private void prune() {
+        this.open.values().removeIf(ref -> ref.get() == null);
+    }
+
+    /**
+     * Flushes the store and closes its file. Chests obtained from the store
+     * must not be used afterwards.
+     *
+     * @throws IOException
+     *             if the files cannot be written
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            this.flush();
+        } finally {
+            this.channel.close();
+        }
+    }
+}
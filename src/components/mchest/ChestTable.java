@@ -0,0 +1,371 @@
+package components.mchest;
+
+import java.util.Arrays;
+
+/**
+ * Many chests stored column-wise: one row per (chest, item) entry, with the
+ * chest IDs, item IDs and counts in three parallel {@code int[]} columns
+ * sorted by chest. Item IDs come from the table's {@code ItemRegistry};
+ * chest IDs are assigned by {@link #append(MChest)} in order, starting at 0.
+ *
+ * <p>
+ * Scans walk the columns sequentially with no objects in the way, so they
+ * run at memory bandwidth rather than at the speed of chasing the pointers
+ * of a map per chest. The sum and filter loops are written without branches
+ * in the loop body (an item ID test becomes a mask) so the JIT can compile
+ * them to SIMD instructions; the group-by loops scatter into a result array
+ * by ID.
+ * </p>
+ *
+ * <p>
+ * A table is not thread-safe, but any number of threads may scan it while
+ * nobody appends.
+ * </p>
+ *
+ * @author Yuvraj Atre
+ */
+public final class ChestTable {
+
+    /**
+     * Initial number of rows allocated.
+     */
+    private static final int INITIAL_ROWS = 64;
+
+    /**
+     * Shift moving the sign bit of an {@code int} into every bit.
+     */
+    private static final int SIGN_SHIFT = Integer.SIZE - 1;
+
+    /**
+     * The registry assigning item IDs.
+     */
+    private final ItemRegistry registry;
+
+    /**
+     * Chest ID of each row, non-decreasing.
+     */
+    private int[] chestIds;
+
+    /**
+     * Item ID of each row.
+     */
+    private int[] itemIds;
+
+    /**
+     * Count of each row, always positive.
+     */
+    private int[] counts;
+
+    /**
+     * Number of rows in use.
+     */
+    private int rows;
+
+    /**
+     * Number of chests appended; the next chest's ID.
+     */
+    private int chests;
+
+    /**
+     * Constructs an empty table with item IDs from
+     * {@code ItemRegistry.shared()}.
+     */
+    public ChestTable() {
+        this(ItemRegistry.shared());
+    }
+
+    /**
+     * Constructs an empty table with item IDs from {@code registry}.
+     *
+     * @param registry
+     *            the registry assigning item IDs
+     * @requires registry != null
+     */
+    public ChestTable(ItemRegistry registry) {
+        assert registry != null : "Violation of: registry is not null";
+        this.registry = registry;
+        this.chestIds = new int[INITIAL_ROWS];
+        this.itemIds = new int[INITIAL_ROWS];
+        this.counts = new int[INITIAL_ROWS];
+        this.rows = 0;
+        this.chests = 0;
+    }
+
+    /**
+     * Grows the columns to hold at least {@code capacity} rows.
+     *
+     * @param capacity
+     *            the number of rows needed
+     */
+    private void ensureCapacity(int capacity) {
+        if (capacity > this.counts.length) {
+            int length = Math.max(capacity, this.counts.length * 2);
+            this.chestIds = Arrays.copyOf(this.chestIds, length);
+            this.itemIds = Arrays.copyOf(this.itemIds, length);
+            this.counts = Arrays.copyOf(this.counts, length);
+        }
+    }
+
+    /**
+     * Returns the first row of chest {@code chestId}, or of the first chest
+     * after it if it has no rows.
+     *
+     * @param chestId
+     *            the chest ID
+     * @return the index of the first row with a chest ID >= chestId
+     */
+    private int firstRow(int chestId) {
+        int low = 0;
+        int high = this.rows;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (this.chestIds[mid] < chestId) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Returns the registry assigning this table's item IDs.
+     *
+     * @return the registry
+     */
+    public ItemRegistry registry() {
+        return this.registry;
+    }
+
+    /**
+     * Returns the number of rows, one per (chest, item) entry.
+     *
+     * @return the number of rows
+     */
+    public int rows() {
+        return this.rows;
+    }
+
+    /**
+     * Returns the number of chests appended, including empty ones.
+     *
+     * @return the number of chests
+     */
+    public int chestCount() {
+        return this.chests;
+    }
+
+    /*
+     * Import and export ------------------------------------------------------
+     */
+
+    /**
+     * Appends the contents of {@code chest} as the next chest of the table.
+     *
+     * @param chest
+     *            the chest to copy
+     * @return the ID of the new chest
+     * @requires chest != null
+     * @ensures append = #chestCount()
+     */
+    public int append(MChest chest) {
+        assert chest != null : "Violation of: chest is not null";
+        int chestId = this.chests;
+        this.ensureCapacity(this.rows + chest.distinctItems());
+        chest.forEachItem((item, quantity) -> {
+            this.ensureCapacity(this.rows + 1);
+            this.chestIds[this.rows] = chestId;
+            this.itemIds[this.rows] = this.registry.idOf(item);
+            this.counts[this.rows] = quantity;
+            this.rows++;
+        });
+        this.chests++;
+        return chestId;
+    }
+
+    /**
+     * Replaces the contents of {@code chest} with those of chest
+     * {@code chestId} of the table.
+     *
+     * @param chestId
+     *            the chest ID
+     * @param chest
+     *            receives the items
+     * @replaces chest
+     * @requires 0 <= chestId < chestCount() and chest != null
+     */
+    public void export(int chestId, MChest chest) {
+        assert 0 <= chestId
+                && chestId < this.chests : "Violation of: chestId is valid";
+        assert chest != null : "Violation of: chest is not null";
+        chest.clear();
+        for (int i = this.firstRow(chestId); i < this.rows
+                && this.chestIds[i] == chestId; i++) {
+            chest.addItem(this.registry.name(this.itemIds[i]),
+                    this.counts[i]);
+        }
+    }
+
+    /*
+     * Scans ------------------------------------------------------------------
+     */
+
+    /**
+     * Returns the sum of all counts in the table.
+     *
+     * @return the total number of items
+     */
+    public long sum() {
+        long total = 0;
+        for (int i = 0; i < this.rows; i++) {
+            total += this.counts[i];
+        }
+        return total;
+    }
+
+    /**
+     * Returns the sum of the counts of item {@code itemId} over all chests.
+     *
+     * @param itemId
+     *            the item ID
+     * @return the total quantity of the item
+     * @requires itemId >= 0
+     */
+    public long sumOf(int itemId) {
+        assert itemId >= 0 : "Violation of: itemId >= 0";
+        long total = 0;
+        for (int i = 0; i < this.rows; i++) {
+            /*
+             * IDs are non-negative, so the XOR is 0 exactly on a match and
+             * subtracting 1 makes only a match negative.
+             */
+            int match = ((this.itemIds[i] ^ itemId) - 1) >> SIGN_SHIFT;
+            total += this.counts[i] & match;
+        }
+        return total;
+    }
+
+    /**
+     * Returns the sum of the counts of {@code item} over all chests.
+     *
+     * @param item
+     *            the item name
+     * @return the total quantity of the item
+     * @requires item != null
+     */
+    public long sumOf(String item) {
+        assert item != null : "Violation of: item is not null";
+        int itemId = this.registry.find(item);
+        long total = 0;
+        if (itemId >= 0) {
+            total = this.sumOf(itemId);
+        }
+        return total;
+    }
+
+    /**
+     * Returns the number of chests with at least {@code minCount} of item
+     * {@code itemId}.
+     *
+     * @param itemId
+     *            the item ID
+     * @param minCount
+     *            the minimum count
+     * @return the number of matching chests
+     * @requires itemId >= 0 and minCount > 0
+     */
+    public int countAtLeast(int itemId, int minCount) {
+        assert itemId >= 0 : "Violation of: itemId >= 0";
+        assert minCount > 0 : "Violation of: minCount > 0";
+        int count = 0;
+        for (int i = 0; i < this.rows; i++) {
+            int match = ((this.itemIds[i] ^ itemId) - 1)
+                    & ~(this.counts[i] - minCount);
+            count -= match >> SIGN_SHIFT;
+        }
+        return count;
+    }
+
+    /**
+     * Returns the IDs of the chests with at least {@code minCount} of item
+     * {@code itemId}, in increasing order.
+     *
+     * @param itemId
+     *            the item ID
+     * @param minCount
+     *            the minimum count
+     * @return the matching chest IDs
+     * @requires itemId >= 0 and minCount > 0
+     */
+    public int[] chestsWithAtLeast(int itemId, int minCount) {
+        int[] result = new int[this.countAtLeast(itemId, minCount)];
+        int n = 0;
+        for (int i = 0; i < this.rows && n < result.length; i++) {
+            if (this.itemIds[i] == itemId && this.counts[i] >= minCount) {
+                result[n] = this.chestIds[i];
+                n++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the IDs of the chests with at least {@code minCount} of
+     * {@code item}, in increasing order.
+     *
+     * @param item
+     *            the item name
+     * @param minCount
+     *            the minimum count
+     * @return the matching chest IDs
+     * @requires item != null and minCount > 0
+     */
+    public int[] chestsWithAtLeast(String item, int minCount) {
+        assert item != null : "Violation of: item is not null";
+        int itemId = this.registry.find(item);
+        int[] result = new int[0];
+        if (itemId >= 0) {
+            result = this.chestsWithAtLeast(itemId, minCount);
+        }
+        return result;
+    }
+
+    /**
+     * Groups the rows by item and sums their counts.
+     *
+     * @return the total count of each item, indexed by item ID
+     */
+    public long[] totalsByItem() {
+        long[] totals = new long[this.registry.size()];
+        for (int i = 0; i < this.rows; i++) {
+            totals[this.itemIds[i]] += this.counts[i];
+        }
+        return totals;
+    }
+
+    /**
+     * Groups the rows by chest and sums their counts.
+     *
+     * @return the total number of items in each chest, indexed by chest ID
+     */
+    public int[] totalsByChest() {
+        int[] totals = new int[this.chests];
+        for (int i = 0; i < this.rows; i++) {
+            totals[this.chestIds[i]] += this.counts[i];
+        }
+        return totals;
+    }
+
+    /**
+     * Groups the rows by item and counts them.
+     *
+     * @return the number of chests holding each item, indexed by item ID
+     */
+    public int[] holdersByItem() {
+        int[] holders = new int[this.registry.size()];
+        for (int i = 0; i < this.rows; i++) {
+            holders[this.itemIds[i]]++;
+        }
+        return holders;
+    }
+}
@@ -0,0 +1,557 @@
+package components.mchest;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.ObjIntConsumer;
+
+import components.map.Map;
+import components.map.Map.Pair;
+
+/**
+ * {@code ConcurrentMChest} is a thread-safe Minecraft chest for chests shared
+ * between worker threads. Items are spread over a fixed number of
+ * {@code MChestOnIntTable} stripes by hash, each guarded by its own lock, so
+ * operations on items in different stripes run in parallel. The total item
+ * count is a separate atomic counter, so {@code isFull} and
+ * {@code totalItems} never lock.
+ *
+ * <p>
+ * Capacity is reserved on the atomic total before an item is inserted, so
+ * concurrent adds cannot push the chest past its limit between an
+ * {@code isFull} check and the add: see {@link #tryAddItem(String, int)}.
+ * Whole-chest operations ({@code clear}, {@code forEachItem}, {@code addAll},
+ * {@code removeAll}, {@code transferFrom}) lock every stripe in index order
+ * and see or produce a consistent state.
+ * </p>
+ *
+ * @convention <pre>
+ * |$this.stripes| = |$this.locks| = STRIPES and
+ * every item x in $this.stripes[i] has stripeOf(x) = i and
+ * $this.total = sum of $this.stripes[i].totalItems() plus the quantities
+ * reserved by adds that have not yet reached their stripe
+ * </pre>
+ * @correspondence <pre>
+ * this = union of the contents of $this.stripes
+ * </pre>
+ *
+ * @author Yuvraj Atre
+ */
+public class ConcurrentMChest extends MChestSecondary {
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * Number of stripes; a power of 2.
+     */
+    private static final int STRIPES = 16;
+
+    /**
+     * Lock taken while locking chests that have the same identity hash code
+     * and so cannot be ordered. Shared with {@code MChestTransaction}, so
+     * the two never order a tied pair differently at the same time.
+     */
+    static final Object TIE_LOCK = new Object();
+
+    /**
+     * The stripes holding the items.
+     */
+    private final MChestOnIntTable[] stripes;
+
+    /**
+     * The lock guarding the stripe at the same index.
+     */
+    private final ReentrantLock[] locks;
+
+    /**
+     * Total quantity in the chest, including reserved quantities.
+     */
+    private final AtomicInteger total;
+
+    /**
+     * Returns the stripe holding {@code item}.
+     *
+     * @param item
+     *            the item name
+     * @return the stripe index
+     */
+    private static int stripeOf(String item) {
+        final int halfWord = 16;
+        int h = item.hashCode();
+        return (h ^ (h >>> halfWord)) & (STRIPES - 1);
+    }
+
+    /**
+     * Locks every stripe, in index order. Also used by
+     * {@code MChestTransaction} to keep a committing transaction's changes
+     * invisible until they are complete.
+     */
+    void lockAll() {
+        for (ReentrantLock lock : this.locks) {
+            lock.lock();
+        }
+    }
+
+    /**
+     * Unlocks every stripe, in reverse index order.
+     */
+    void unlockAll() {
+        for (int i = STRIPES - 1; i >= 0; i--) {
+            this.locks[i].unlock();
+        }
+    }
+
+    /**
+     * Locks every stripe of two different chests, ordering the chests by
+     * identity hash code so that two threads locking the same pair cannot
+     * deadlock.
+     *
+     * @param a
+     *            one chest
+     * @param b
+     *            the other chest
+     * @return the two chests in the order they were locked; unlock them with
+     *         {@link #unlockPair(ConcurrentMChest[])}
+     */
+    private static ConcurrentMChest[] lockPair(ConcurrentMChest a,
+            ConcurrentMChest b) {
+        int aHash = System.identityHashCode(a);
+        int bHash = System.identityHashCode(b);
+        ConcurrentMChest[] order = { a, b };
+        if (bHash < aHash) {
+            order[0] = b;
+            order[1] = a;
+        }
+        if (aHash == bHash) {
+            synchronized (TIE_LOCK) {
+                order[0].lockAll();
+                order[1].lockAll();
+            }
+        } else {
+            order[0].lockAll();
+            order[1].lockAll();
+        }
+        return order;
+    }
+
+    /**
+     * Unlocks two chests locked by {@link #lockPair}.
+     *
+     * @param order
+     *            the chests in the order they were locked
+     */
+    private static void unlockPair(ConcurrentMChest[] order) {
+        order[1].unlockAll();
+        order[0].unlockAll();
+    }
+
+    /**
+     * Atomically reserves {@code quantity} on the total if all of it fits in
+     * the chest. Used by {@code addAll}, and by {@code MChestTransaction} to
+     * claim capacity before it starts applying changes.
+     *
+     * @param quantity
+     *            the quantity to reserve
+     * @return true if the quantity was reserved, false if it did not fit
+     */
+    boolean reserve(int quantity) {
+        int current = this.total.get();
+        while (quantity <= CapacityPolicy.LEGACY_ITEMS - current) {
+            if (this.total.compareAndSet(current, current + quantity)) {
+                return true;
+            }
+            current = this.total.get();
+        }
+        return false;
+    }
+
+    /**
+     * Atomically reserves {@code quantity} on the total if the chest is not
+     * full, which is all {@code addItem} requires.
+     *
+     * @param quantity
+     *            the quantity to reserve
+     * @return true if the quantity was reserved, false if the chest was full
+     */
+    private boolean reserveIfNotFull(int quantity) {
+        int current = this.total.get();
+        while (current < CapacityPolicy.LEGACY_ITEMS) {
+            if (this.total.compareAndSet(current, current + quantity)) {
+                return true;
+            }
+            current = this.total.get();
+        }
+        return false;
+    }
+
+    /**
+     * Returns a reservation made with {@link #reserve(int)} that will not be
+     * used.
+     *
+     * @param quantity
+     *            the quantity reserved
+     */
+    void release(int quantity) {
+        this.total.addAndGet(-quantity);
+    }
+
+    /**
+     * Adds {@code quantity} of {@code item} against capacity already claimed
+     * with {@link #reserve(int)}.
+     *
+     * @param item
+     *            the name of the item to add
+     * @param quantity
+     *            the quantity reserved for it
+     */
+    void addReserved(String item, int quantity) {
+        int s = stripeOf(item);
+        this.locks[s].lock();
+        try {
+            this.stripes[s].addItem(item, quantity);
+        } finally {
+            this.locks[s].unlock();
+        }
+    }
+
+    /*
+     * Constructors -----------------------------------------------------------
+     */
+
+    /**
+     * No-argument constructor that initializes an empty chest.
+     *
+     * @ensures this = {}
+     */
+    public ConcurrentMChest() {
+        this.stripes = new MChestOnIntTable[STRIPES];
+        this.locks = new ReentrantLock[STRIPES];
+        for (int i = 0; i < STRIPES; i++) {
+            this.stripes[i] = new MChestOnIntTable();
+            this.locks[i] = new ReentrantLock();
+        }
+        this.total = new AtomicInteger(0);
+    }
+
+    /*
+     * Public members ---------------------------------------------------------
+     */
+
+    /**
+     * Adds {@code quantity} of {@code item} if, at the moment of the call, the
+     * chest is not full. Unlike calling {@code isFull} and then
+     * {@code addItem}, the check and the reservation are one atomic step, so
+     * concurrent callers cannot overfill the chest.
+     *
+     * @param item
+     *            the name of the item to add
+     * @param quantity
+     *            the quantity of the item to add
+     * @return true if the item was added, false if the chest was full
+     * @updates this
+     * @requires item != null and quantity > 0
+     * @ensures if #isFull() then tryAddItem = false and this = #this, else
+     *          tryAddItem = true and the item is added to the chest with the
+     *          specified quantity
+     */
+    public boolean tryAddItem(String item, int quantity) {
+        assert item != null : "Violation of: item is not null";
+        assert quantity > 0 : "Violation of: quantity > 0";
+
+        if (!this.reserveIfNotFull(quantity)) {
+            return false;
+        }
+        this.addReserved(item, quantity);
+        return true;
+    }
+
+    /*
+     * Kernel methods ---------------------------------------------------------
+     */
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void addItem(String item, int quantity) {
+        if (!this.tryAddItem(item, quantity)) {
+            throw new IllegalStateException(
+                    "Chest filled up before " + item + " could be added");
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map.Pair<String, Integer> removeItem(String item, int quantity) {
+        assert item != null : "Violation of: item is not null";
+        assert quantity > 0 : "Violation of: quantity > 0";
+
+        int s = stripeOf(item);
+        Map.Pair<String, Integer> removed;
+        this.locks[s].lock();
+        try {
+            assert this.stripes[s]
+                    .containsItem(item) : "Violation of: item is in the chest";
+            removed = this.stripes[s].removeItem(item, quantity);
+        } finally {
+            this.locks[s].unlock();
+        }
+        this.total.addAndGet(-removed.value());
+        return removed;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int decrement(String item, int quantity) {
+        assert item != null : "Violation of: item is not null";
+        assert quantity > 0 : "Violation of: quantity > 0";
+
+        int s = stripeOf(item);
+        int before;
+        int remaining;
+        this.locks[s].lock();
+        try {
+            assert this.stripes[s]
+                    .containsItem(item) : "Violation of: item is in the chest";
+            before = this.stripes[s].itemQuantity(item);
+            remaining = this.stripes[s].decrement(item, quantity);
+        } finally {
+            this.locks[s].unlock();
+        }
+        this.total.addAndGet(remaining - before);
+        return remaining;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean containsItem(String item) {
+        assert item != null : "Violation of: item is not null";
+        int s = stripeOf(item);
+        this.locks[s].lock();
+        try {
+            return this.stripes[s].containsItem(item);
+        } finally {
+            this.locks[s].unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int itemQuantity(String item) {
+        assert item != null : "Violation of: item is not null";
+        int s = stripeOf(item);
+        this.locks[s].lock();
+        try {
+            return this.stripes[s].itemQuantity(item);
+        } finally {
+            this.locks[s].unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isFull() {
+        return this.total.get() >= CapacityPolicy.LEGACY_ITEMS;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void clear() {
+        this.lockAll();
+        try {
+            for (MChestOnIntTable stripe : this.stripes) {
+                this.total.addAndGet(-stripe.totalItems());
+                stripe.clear();
+            }
+        } finally {
+            this.unlockAll();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void forEachItem(ObjIntConsumer<String> action) {
+        assert action != null : "Violation of: action is not null";
+        this.lockAll();
+        try {
+            for (MChestOnIntTable stripe : this.stripes) {
+                stripe.forEachItem(action);
+            }
+        } finally {
+            this.unlockAll();
+        }
+    }
+
+    /*
+     * Secondary methods overridden for efficiency and atomicity --------------
+     */
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int totalItems() {
+        return this.total.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean addAll(Map<String, Integer> items) {
+        assert items != null : "Violation of: items is not null";
+        long sum = 0;
+        for (Pair<String, Integer> pair : items) {
+            assert pair.value() > 0 : "Violation of: quantity > 0";
+            sum += pair.value();
+        }
+        if (sum > CapacityPolicy.LEGACY_ITEMS || !this.reserve((int) sum)) {
+            return false;
+        }
+        this.lockAll();
+        try {
+            for (Pair<String, Integer> pair : items) {
+                this.stripes[stripeOf(pair.key())].addItem(pair.key(),
+                        pair.value());
+            }
+        } finally {
+            this.unlockAll();
+        }
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean removeAll(Map<String, Integer> items) {
+        assert items != null : "Violation of: items is not null";
+        int removed = 0;
+        this.lockAll();
+        try {
+            for (Pair<String, Integer> pair : items) {
+                if (this.stripes[stripeOf(pair.key())]
+                        .itemQuantity(pair.key()) < pair.value()) {
+                    return false;
+                }
+            }
+            for (Pair<String, Integer> pair : items) {
+                this.stripes[stripeOf(pair.key())].decrement(pair.key(),
+                        pair.value());
+                removed += pair.value();
+            }
+        } finally {
+            this.unlockAll();
+        }
+        this.total.addAndGet(-removed);
+        return true;
+    }
+
+    // Implementing Standard<MChest> methods
+
+    // CHECKSTYLE: ALLOW THIS METHOD TO BE OVERRIDDEN
+    @Override
+    public MChest newInstance() {
+        try {
+            return this.getClass().getConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new AssertionError(
+                    "Cannot construct object of type " + this.getClass());
+        }
+    }
+
+    /**
+     * Moves the stripes of {@code source} into this chest; both chests must
+     * already be fully locked.
+     *
+     * @param source
+     *            the chest to take the items from
+     */
+    private void takeStripes(ConcurrentMChest source) {
+        for (int i = 0; i < STRIPES; i++) {
+            int dropped = this.stripes[i].totalItems();
+            int moved = source.stripes[i].totalItems();
+            this.stripes[i].transferFrom(source.stripes[i]);
+            this.total.addAndGet(moved - dropped);
+            source.total.addAndGet(-moved);
+        }
+    }
+
+    // CHECKSTYLE: ALLOW THIS METHOD TO BE OVERRIDDEN
+    @Override
+    public void transferFrom(MChest other) {
+        assert other != null : "Violation of: other chest is not null";
+        assert other != this : "Violation of: other chest is not this";
+        ConcurrentMChest localSource = (ConcurrentMChest) other;
+
+        ConcurrentMChest[] order = lockPair(this, localSource);
+        try {
+            this.takeStripes(localSource);
+        } finally {
+            unlockPair(order);
+        }
+    }
+
+    // CHECKSTYLE: ALLOW THIS METHOD TO BE OVERRIDDEN
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this || !(obj instanceof ConcurrentMChest)) {
+            return super.equals(obj);
+        }
+        /*
+         * Comparing item by item would hold this chest's locks while taking
+         * the other's, deadlocking against a.equals(b) racing b.equals(a).
+         * Lock both in a fixed order instead; items of equal chests land in
+         * the same stripes, so the stripes can be compared pairwise.
+         */
+        ConcurrentMChest other = (ConcurrentMChest) obj;
+        ConcurrentMChest[] order = lockPair(this, other);
+        try {
+            boolean same = true;
+            for (int i = 0; i < STRIPES; i++) {
+                same = same && this.stripes[i].equals(other.stripes[i]);
+            }
+            return same;
+        } finally {
+            unlockPair(order);
+        }
+    }
+
+    // CHECKSTYLE: ALLOW THIS METHOD TO BE OVERRIDDEN
+    @Override
+    public int hashCode() {
+        this.lockAll();
+        try {
+            int hash = 0;
+            for (MChestOnIntTable stripe : this.stripes) {
+                hash += stripe.hashCode();
+            }
+            return hash;
+        } finally {
+            this.unlockAll();
+        }
+    }
+
+    // Implementing Comparable<MChest> method
+
+    // CHECKSTYLE: ALLOW THIS METHOD TO BE OVERRIDDEN
+    @Override
+    public int compareTo(MChest other) {
+        return Integer.compare(this.totalItems(), other.totalItems());
+    }
+}
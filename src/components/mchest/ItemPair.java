@@ -0,0 +1,67 @@
+package components.mchest;
+
+import components.map.Map;
+
+/**
+ * Immutable item/quantity pair returned by the {@code removeItem} methods of
+ * the {@code MChest} kernel implementations, so they can report what was
+ * removed without going through a temporary {@code Map}.
+ */
+final class ItemPair implements Map.Pair<String, Integer> {
+
+    /**
+     * The item name.
+     */
+    private final String item;
+
+    /**
+     * The item quantity.
+     */
+    private final int quantity;
+
+    /**
+     * Constructor from item name and quantity.
+     *
+     * @param item
+     *            the item name
+     * @param quantity
+     *            the item quantity
+     */
+    ItemPair(String item, int quantity) {
+        this.item = item;
+        this.quantity = quantity;
+    }
+
+    @Override
+    public String key() {
+        return this.item;
+    }
+
+    @Override
+    public Integer value() {
+        return this.quantity;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this) {
+            return true;
+        }
+        if (!(obj instanceof Map.Pair<?, ?>)) {
+            return false;
+        }
+        Map.Pair<?, ?> other = (Map.Pair<?, ?>) obj;
+        return this.item.equals(other.key())
+                && Integer.valueOf(this.quantity).equals(other.value());
+    }
+
+    @Override
+    public int hashCode() {
+        return this.item.hashCode() ^ this.quantity;
+    }
+
+    @Override
+    public String toString() {
+        return "(" + this.item + "," + this.quantity + ")";
+    }
+}
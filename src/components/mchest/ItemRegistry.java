@@ -0,0 +1,152 @@
+package components.mchest;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Assigns dense integer IDs (0, 1, 2, ...) to item names, so chests and other
+ * item-keyed structures can store and compare items as {@code int}s instead
+ * of hashing and comparing {@code String}s. IDs are never reused or
+ * reassigned.
+ *
+ * <p>
+ * Lookups are lock-free; registering a new name takes a lock, which happens
+ * once per distinct name for the lifetime of the registry.
+ * </p>
+ *
+ * @author Yuvraj Atre
+ */
+public final class ItemRegistry {
+
+    /**
+     * Initial length of the {@code names} array.
+     */
+    private static final int INITIAL_CAPACITY = 64;
+
+    /**
+     * The registry shared by all chests.
+     */
+    private static final ItemRegistry SHARED = new ItemRegistry();
+
+    /**
+     * Maps each registered name to its ID.
+     */
+    private final ConcurrentHashMap<String, Integer> ids;
+
+    /**
+     * Registered names indexed by ID. Replaced by a larger copy on growth;
+     * slots at or past {@code size} are {@code null}.
+     */
+    private volatile String[] names;
+
+    /**
+     * Number of registered names; only written while holding the lock on
+     * {@code this}.
+     */
+    private int size;
+
+    /**
+     * No-argument constructor that initializes an empty registry.
+     */
+    public ItemRegistry() {
+        this.ids = new ConcurrentHashMap<>();
+        this.names = new String[INITIAL_CAPACITY];
+        this.size = 0;
+    }
+
+    /**
+     * Returns the registry shared by all chests, whose IDs are the ones
+     * accepted by the {@code int}-keyed methods of {@code MChest}.
+     *
+     * @return the shared registry
+     */
+    public static ItemRegistry shared() {
+        return SHARED;
+    }
+
+    /**
+     * Registers {@code item} under the next free ID, unless another thread has
+     * registered it first.
+     *
+     * @param item
+     *            the item name
+     * @return the ID of {@code item}
+     */
+    private synchronized int register(String item) {
+        Integer existing = this.ids.get(item);
+        if (existing != null) {
+            return existing;
+        }
+        String[] current = this.names;
+        if (this.size == current.length) {
+            String[] larger = new String[current.length * 2];
+            System.arraycopy(current, 0, larger, 0, current.length);
+            current = larger;
+        }
+        int id = this.size;
+        current[id] = item;
+        this.names = current;
+        this.size++;
+        this.ids.put(item, id);
+        return id;
+    }
+
+    /**
+     * Returns the ID of {@code item}, registering it if it has not been seen
+     * before.
+     *
+     * @param item
+     *            the item name
+     * @return the ID of {@code item}
+     * @requires item != null
+     * @ensures name(idOf) = item
+     */
+    public int idOf(String item) {
+        assert item != null : "Violation of: item is not null";
+        Integer id = this.ids.get(item);
+        if (id == null) {
+            return this.register(item);
+        }
+        return id;
+    }
+
+    /**
+     * Returns the ID of {@code item} without registering it.
+     *
+     * @param item
+     *            the item name
+     * @return the ID of {@code item}, or -1 if it is not registered
+     * @requires item != null
+     */
+    public int find(String item) {
+        assert item != null : "Violation of: item is not null";
+        Integer id = this.ids.get(item);
+        if (id == null) {
+            return -1;
+        }
+        return id;
+    }
+
+    /**
+     * Returns the name registered under {@code id}.
+     *
+     * @param id
+     *            the item ID
+     * @return the item name
+     * @requires 0 <= id < size()
+     */
+    public String name(int id) {
+        String[] current = this.names;
+        assert 0 <= id && id < current.length
+                && current[id] != null : "Violation of: id is registered";
+        return current[id];
+    }
+
+    /**
+     * Returns the number of registered names; every ID is less than this.
+     *
+     * @return the number of registered names
+     */
+    public synchronized int size() {
+        return this.size;
+    }
+}
@@ -0,0 +1,502 @@
+package components.mchest;
+
+import java.util.Arrays;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Immutable node of a persistent hash array mapped trie from item names to
+ * positive quantities. Every update returns a new root that shares all
+ * untouched nodes with the old one, so an update copies only the O(log32 n)
+ * nodes on the path to the item, and any number of versions can be read
+ * concurrently without locking.
+ *
+ * <p>
+ * A node consumes 5 bits of the item's hash per level. Each of its 32
+ * branches is empty, an inline entry (a bit of {@code dataMap}) or a child
+ * node (a bit of {@code nodeMap}); entries and children are stored compactly
+ * in bit order. Names whose hashes are equal in all 32 bits end up in a
+ * collision node below the last level, searched linearly. Removal pulls a
+ * child that is down to one entry back into its parent, so the trie stays as
+ * shallow as the items in it require.
+ * </p>
+ *
+ * <p>
+ * The empty trie is {@code null}; the static methods accept and return it.
+ * </p>
+ *
+ * @author Yuvraj Atre
+ */
+final class ItemTrie {
+
+    /**
+     * Hash bits consumed per level.
+     */
+    private static final int BITS = 5;
+
+    /**
+     * Mask of the hash bits of one level.
+     */
+    private static final int MASK = (1 << BITS) - 1;
+
+    /**
+     * Branches with an inline entry.
+     */
+    private final int dataMap;
+
+    /**
+     * Branches with a child node.
+     */
+    private final int nodeMap;
+
+    /**
+     * Names of the inline entries, in branch order; in a collision node, all
+     * its names.
+     */
+    private final String[] keys;
+
+    /**
+     * Quantity of the entry at the same index of {@code keys}.
+     */
+    private final int[] values;
+
+    /**
+     * Child nodes, in branch order.
+     */
+    private final ItemTrie[] children;
+
+    /**
+     * Constructs a node; the arrays become the node's and must not be changed
+     * afterwards.
+     *
+     * @param dataMap
+     *            branches with an inline entry
+     * @param nodeMap
+     *            branches with a child node
+     * @param keys
+     *            entry names
+     * @param values
+     *            entry quantities
+     * @param children
+     *            child nodes
+     */
+    private ItemTrie(int dataMap, int nodeMap, String[] keys, int[] values,
+            ItemTrie[] children) {
+        this.dataMap = dataMap;
+        this.nodeMap = nodeMap;
+        this.keys = keys;
+        this.values = values;
+        this.children = children;
+    }
+
+    /**
+     * Returns the hash the trie uses for {@code item}.
+     *
+     * @param item
+     *            the item name
+     * @return the spread hash code
+     */
+    static int hash(String item) {
+        final int half = 16;
+        int h = item.hashCode();
+        return h ^ (h >>> half);
+    }
+
+    /**
+     * Returns the branch of {@code hash} at level {@code shift}.
+     *
+     * @param hash
+     *            the hash
+     * @param shift
+     *            the number of hash bits consumed above this level
+     * @return the branch bit
+     */
+    private static int branch(int hash, int shift) {
+        return 1 << ((hash >>> shift) & MASK);
+    }
+
+    /**
+     * Returns the index in the compact array of {@code map} of {@code bit}.
+     *
+     * @param map
+     *            the bitmap
+     * @param bit
+     *            the branch bit
+     * @return the number of set bits of map below bit
+     */
+    private static int index(int map, int bit) {
+        return Integer.bitCount(map & (bit - 1));
+    }
+
+    /**
+     * Reports whether {@code shift} is below the last level, where nodes are
+     * collision nodes.
+     *
+     * @param shift
+     *            the number of hash bits consumed above this level
+     * @return true if the node at shift is a collision node
+     */
+    private static boolean isCollision(int shift) {
+        return shift >= Integer.SIZE;
+    }
+
+    /**
+     * Returns the quantity of {@code item} in {@code root}.
+     *
+     * @param root
+     *            the trie, or {@code null}
+     * @param item
+     *            the item name
+     * @return the quantity, or 0 if item is not in the trie
+     */
+    static int get(ItemTrie root, String item) {
+        int hash = hash(item);
+        ItemTrie node = root;
+        int shift = 0;
+        int quantity = 0;
+        while (node != null && !isCollision(shift)) {
+            int bit = branch(hash, shift);
+            if ((node.dataMap & bit) != 0) {
+                int i = index(node.dataMap, bit);
+                if (node.keys[i].equals(item)) {
+                    quantity = node.values[i];
+                }
+                node = null;
+            } else if ((node.nodeMap & bit) != 0) {
+                node = node.children[index(node.nodeMap, bit)];
+                shift += BITS;
+            } else {
+                node = null;
+            }
+        }
+        if (node != null) {
+            for (int i = 0; i < node.keys.length; i++) {
+                if (node.keys[i].equals(item)) {
+                    quantity = node.values[i];
+                }
+            }
+        }
+        return quantity;
+    }
+
+    /**
+     * Calls {@code action} with every item in {@code root} and its quantity.
+     *
+     * @param root
+     *            the trie, or {@code null}
+     * @param action
+     *            the action to perform
+     */
+    static void forEach(ItemTrie root, ObjIntConsumer<String> action) {
+        if (root != null) {
+            for (int i = 0; i < root.keys.length; i++) {
+                action.accept(root.keys[i], root.values[i]);
+            }
+            for (ItemTrie child : root.children) {
+                forEach(child, action);
+            }
+        }
+    }
+
+    /**
+     * Returns a trie equal to {@code root} with the quantity of {@code item}
+     * set to {@code quantity}.
+     *
+     * @param root
+     *            the trie, or {@code null}
+     * @param item
+     *            the item name
+     * @param quantity
+     *            the new quantity
+     * @return the new trie
+     * @requires quantity > 0
+     */
+    static ItemTrie put(ItemTrie root, String item, int quantity) {
+        ItemTrie result;
+        if (root == null) {
+            int hash = hash(item);
+            result = new ItemTrie(branch(hash, 0), 0, new String[] { item },
+                    new int[] { quantity }, new ItemTrie[0]);
+        } else {
+            result = root.put(item, hash(item), quantity, 0);
+        }
+        return result;
+    }
+
+    /**
+     * Returns a trie equal to {@code root} without {@code item}.
+     *
+     * @param root
+     *            the trie
+     * @param item
+     *            the item name
+     * @return the new trie, or {@code null} if it is empty
+     * @requires item is in root
+     */
+    static ItemTrie remove(ItemTrie root, String item) {
+        return root.remove(item, hash(item), 0);
+    }
+
+    /**
+     * Returns this node with the quantity of {@code item} set.
+     *
+     * @param item
+     *            the item name
+     * @param hash
+     *            hash(item)
+     * @param quantity
+     *            the new quantity
+     * @param shift
+     *            the number of hash bits consumed above this node
+     * @return the new node
+     */
+    private ItemTrie put(String item, int hash, int quantity, int shift) {
+        ItemTrie result;
+        if (isCollision(shift)) {
+            int i = this.keys.length - 1;
+            while (i >= 0 && !this.keys[i].equals(item)) {
+                i--;
+            }
+            if (i >= 0) {
+                result = this.withValue(i, quantity);
+            } else {
+                result = new ItemTrie(0, 0,
+                        insert(this.keys, this.keys.length, item),
+                        insert(this.values, this.values.length, quantity),
+                        this.children);
+            }
+        } else {
+            int bit = branch(hash, shift);
+            if ((this.dataMap & bit) != 0) {
+                int i = index(this.dataMap, bit);
+                if (this.keys[i].equals(item)) {
+                    result = this.withValue(i, quantity);
+                } else {
+                    ItemTrie child = pair(this.keys[i], this.values[i],
+                            item, quantity, shift + BITS);
+                    result = this.withEntryAsChild(bit, i, child);
+                }
+            } else if ((this.nodeMap & bit) != 0) {
+                int i = index(this.nodeMap, bit);
+                ItemTrie[] children = this.children.clone();
+                children[i] = children[i].put(item, hash, quantity,
+                        shift + BITS);
+                result = new ItemTrie(this.dataMap, this.nodeMap, this.keys,
+                        this.values, children);
+            } else {
+                int i = index(this.dataMap, bit);
+                result = new ItemTrie(this.dataMap | bit, this.nodeMap,
+                        insert(this.keys, i, item),
+                        insert(this.values, i, quantity), this.children);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns this node without {@code item}.
+     *
+     * @param item
+     *            the item name
+     * @param hash
+     *            hash(item)
+     * @param shift
+     *            the number of hash bits consumed above this node
+     * @return the new node, or {@code null} if it is empty
+     */
+    private ItemTrie remove(String item, int hash, int shift) {
+        ItemTrie result;
+        if (isCollision(shift)) {
+            int i = this.keys.length - 1;
+            while (!this.keys[i].equals(item)) {
+                i--;
+            }
+            result = new ItemTrie(0, 0, delete(this.keys, i),
+                    delete(this.values, i), this.children);
+        } else {
+            int bit = branch(hash, shift);
+            if ((this.dataMap & bit) != 0) {
+                int i = index(this.dataMap, bit);
+                result = new ItemTrie(this.dataMap & ~bit, this.nodeMap,
+                        delete(this.keys, i), delete(this.values, i),
+                        this.children);
+            } else {
+                int i = index(this.nodeMap, bit);
+                ItemTrie child = this.children[i].remove(item, hash,
+                        shift + BITS);
+                if (child == null) {
+                    result = new ItemTrie(this.dataMap, this.nodeMap & ~bit,
+                            this.keys, this.values, delete(this.children, i));
+                } else if (child.nodeMap == 0 && child.keys.length == 1) {
+                    int at = index(this.dataMap, bit);
+                    result = new ItemTrie(this.dataMap | bit,
+                            this.nodeMap & ~bit,
+                            insert(this.keys, at, child.keys[0]),
+                            insert(this.values, at, child.values[0]),
+                            delete(this.children, i));
+                } else {
+                    ItemTrie[] children = this.children.clone();
+                    children[i] = child;
+                    result = new ItemTrie(this.dataMap, this.nodeMap,
+                            this.keys, this.values, children);
+                }
+            }
+        }
+        if (result.keys.length == 0 && result.children.length == 0) {
+            result = null;
+        }
+        return result;
+    }
+
+    /**
+     * Returns this node with the value of entry {@code i} replaced.
+     *
+     * @param i
+     *            the entry index
+     * @param quantity
+     *            the new quantity
+     * @return the new node
+     */
+    private ItemTrie withValue(int i, int quantity) {
+        int[] values = this.values.clone();
+        values[i] = quantity;
+        return new ItemTrie(this.dataMap, this.nodeMap, this.keys, values,
+                this.children);
+    }
+
+    /**
+     * Returns this node with the entry at branch {@code bit}, index
+     * {@code i}, replaced by {@code child}.
+     *
+     * @param bit
+     *            the branch bit
+     * @param i
+     *            the index of the entry
+     * @param child
+     *            the child node taking its place
+     * @return the new node
+     */
+    private ItemTrie withEntryAsChild(int bit, int i, ItemTrie child) {
+        int at = index(this.nodeMap, bit);
+        return new ItemTrie(this.dataMap & ~bit, this.nodeMap | bit,
+                delete(this.keys, i), delete(this.values, i),
+                insert(this.children, at, child));
+    }
+
+    /**
+     * Returns a node at level {@code shift} holding two entries with
+     * different names.
+     *
+     * @param item1
+     *            the first name
+     * @param quantity1
+     *            the first quantity
+     * @param item2
+     *            the second name
+     * @param quantity2
+     *            the second quantity
+     * @param shift
+     *            the number of hash bits consumed above the node
+     * @return the new node
+     */
+    private static ItemTrie pair(String item1, int quantity1, String item2,
+            int quantity2, int shift) {
+        ItemTrie result;
+        int hash1 = hash(item1);
+        int hash2 = hash(item2);
+        if (isCollision(shift)) {
+            result = new ItemTrie(0, 0, new String[] { item1, item2 },
+                    new int[] { quantity1, quantity2 }, new ItemTrie[0]);
+        } else {
+            int bit1 = branch(hash1, shift);
+            int bit2 = branch(hash2, shift);
+            if (bit1 == bit2) {
+                result = new ItemTrie(0, bit1, new String[0], new int[0],
+                        new ItemTrie[] { pair(item1, quantity1, item2,
+                                quantity2, shift + BITS) });
+            } else if (Integer.compareUnsigned(bit1, bit2) < 0) {
+                result = new ItemTrie(bit1 | bit2, 0,
+                        new String[] { item1, item2 },
+                        new int[] { quantity1, quantity2 }, new ItemTrie[0]);
+            } else {
+                result = new ItemTrie(bit1 | bit2, 0,
+                        new String[] { item2, item1 },
+                        new int[] { quantity2, quantity1 }, new ItemTrie[0]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns a copy of {@code array} with {@code value} inserted at
+     * {@code i}.
+     *
+     * @param <T>
+     *            the element type
+     * @param array
+     *            the array
+     * @param i
+     *            the insertion index
+     * @param value
+     *            the value to insert
+     * @return the new array
+     */
+    private static <T> T[] insert(T[] array, int i, T value) {
+        T[] result = Arrays.copyOf(array, array.length + 1);
+        System.arraycopy(array, i, result, i + 1, array.length - i);
+        result[i] = value;
+        return result;
+    }
+
+    /**
+     * Returns a copy of {@code array} with {@code value} inserted at
+     * {@code i}.
+     *
+     * @param array
+     *            the array
+     * @param i
+     *            the insertion index
+     * @param value
+     *            the value to insert
+     * @return the new array
+     */
+    private static int[] insert(int[] array, int i, int value) {
+        int[] result = new int[array.length + 1];
+        System.arraycopy(array, 0, result, 0, i);
+        System.arraycopy(array, i, result, i + 1, array.length - i);
+        result[i] = value;
+        return result;
+    }
+
+    /**
+     * Returns a copy of {@code array} without the element at {@code i}.
+     *
+     * @param <T>
+     *            the element type
+     * @param array
+     *            the array
+     * @param i
+     *            the index to remove
+     * @return the new array
+     */
+    private static <T> T[] delete(T[] array, int i) {
+        T[] result = Arrays.copyOf(array, array.length - 1);
+        System.arraycopy(array, i + 1, result, i, array.length - i - 1);
+        return result;
+    }
+
+    /**
+     * Returns a copy of {@code array} without the element at {@code i}.
+     *
+     * @param array
+     *            the array
+     * @param i
+     *            the index to remove
+     * @return the new array
+     */
+    private static int[] delete(int[] array, int i) {
+        int[] result = new int[array.length - 1];
+        System.arraycopy(array, 0, result, 0, i);
+        System.arraycopy(array, i + 1, result, i, array.length - i - 1);
+        return result;
+    }
+}
@@ -39,6 +39,32 @@ public interface MChest extends Comparable<MChest>, MChestKernel {
      */
     int totalItems();
 
+    /**
+     * Counts the distinct items in the chest.
+     *
+     * @return the number of distinct item names in the chest
+     * @ensures distinctItems = |this|
+     */
+    int distinctItems();
+
+    /**
+     * Reports how many more of {@code item} fit in the chest, so callers can
+     * fill it in one step instead of adding until {@code isFull()}.
+     *
+     * <p>
+     * Only {@code MChestOnMap} takes a {@code CapacityPolicy}; every other
+     * kernel holds {@code CapacityPolicy.LEGACY_ITEMS} items of any kind, as
+     * under {@code CapacityPolicy.legacy()}.
+     * </p>
+     *
+     * @param item
+     *            the item name
+     * @return the largest quantity of item that can be added
+     * @requires item != null
+     * @ensures remainingCapacity >= 0
+     */
+    int remainingCapacity(String item);
+
     /**
      * Returns the names of items in the chest that have a quantity greater than
      * or equal to the specified amount.
@@ -53,6 +79,142 @@ public interface MChest extends Comparable<MChest>, MChestKernel {
      */
     List<String> getItemsByQuantity(int minQuantity);
 
+    /**
+     * Returns the names of items in the chest that have a quantity less than
+     * or equal to the specified amount.
+     *
+     * @param maxQuantity
+     *            the maximum quantity of an item to retrieve
+     * @return a list of item names that have a quantity less than or equal to
+     *         the specified amount
+     * @requires maxQuantity >= 0
+     * @ensures the returned list contains exactly the items with quantities
+     *          <= {@code maxQuantity}
+     */
+    List<String> getItemsByQuantityAtMost(int maxQuantity);
+
+    /**
+     * Returns the names of the {@code n} items with the largest quantities,
+     * largest first. Items with equal quantities are ordered by name, and
+     * fewer than {@code n} names are returned if the chest holds fewer items.
+     *
+     * @param n
+     *            the maximum number of items to retrieve
+     * @return the item names, in decreasing order of quantity
+     * @requires n >= 0
+     * @ensures |topItems| = min(n, number of items in the chest)
+     */
+    List<String> topItems(int n);
+
+    /**
+     * Returns the names of the {@code n} items with the smallest quantities,
+     * smallest first. Items with equal quantities are ordered by name, and
+     * fewer than {@code n} names are returned if the chest holds fewer items.
+     *
+     * @param n
+     *            the maximum number of items to retrieve
+     * @return the item names, in increasing order of quantity
+     * @requires n >= 0
+     * @ensures |bottomItems| = min(n, number of items in the chest)
+     */
+    List<String> bottomItems(int n);
+
+    /**
+     * Reports whether the whole of {@code items} fits in the chest, that is,
+     * whether {@code addAll(items)} would add it.
+     *
+     * @param items
+     *            a map from item names to the quantities to add
+     * @return true if every item in items fits in the chest together
+     * @requires items != null and every quantity in items > 0
+     */
+    boolean fits(Map<String, Integer> items);
+
+    /**
+     * Adds every item in {@code items} to the chest as one batch. Capacity is
+     * checked once for the whole batch, before anything is added: if the
+     * batch does not fit nothing is added, otherwise all of it is.
+     *
+     * @param items
+     *            a map from item names to the quantities to add
+     * @return true if the items were added, false if they did not fit
+     * @updates this
+     * @requires items != null and every quantity in items > 0
+     * @ensures if #fits(items) then addAll = true and every item in items is
+     *          added to the chest with the specified quantity, else
+     *          addAll = false and this = #this
+     */
+    boolean addAll(Map<String, Integer> items);
+
+    /**
+     * Removes every item in {@code items} from the chest as one batch. Either
+     * the chest holds enough of every item and all of them are removed, or
+     * nothing is removed.
+     *
+     * @param items
+     *            a map from item names to the quantities to remove
+     * @return true if the items were removed, false if some item was missing
+     *         or short
+     * @updates this
+     * @requires items != null and every quantity in items > 0
+     * @ensures if every (x, y) in items has y <= #itemQuantity(x) then
+     *          removeAll = true and y of each x is removed from the chest,
+     *          else removeAll = false and this = #this
+     */
+    boolean removeAll(Map<String, Integer> items);
+
+    /**
+     * Adds an item, identified by its {@code ItemRegistry.shared()} ID, to the
+     * chest. If the item already exists, its quantity is increased.
+     *
+     * @param itemId
+     *            the ID of the item to add
+     * @param quantity
+     *            the quantity of the item to add
+     * @updates this
+     * @requires isFull() = false and itemId is registered in
+     *           ItemRegistry.shared()
+     * @ensures the item is added to the chest with the specified quantity
+     */
+    void addItem(int itemId, int quantity);
+
+    /**
+     * Removes a specified quantity of an item, identified by its
+     * {@code ItemRegistry.shared()} ID, from the chest.
+     *
+     * @param itemId
+     *            the ID of the item to remove
+     * @param quantity
+     *            the quantity of the item to remove
+     * @return a pair containing the item name and the quantity removed
+     * @updates this
+     * @requires item is in the chest and quantity > 0
+     * @ensures the item is removed or updated correctly
+     */
+    Map.Pair<String, Integer> removeItem(int itemId, int quantity);
+
+    /**
+     * Checks if the chest contains an item, identified by its
+     * {@code ItemRegistry.shared()} ID.
+     *
+     * @param itemId
+     *            the ID of the item to check for
+     * @return true if the chest contains the item, false otherwise
+     * @requires itemId is registered in ItemRegistry.shared()
+     */
+    boolean containsItem(int itemId);
+
+    /**
+     * Returns the quantity of an item, identified by its
+     * {@code ItemRegistry.shared()} ID, in the chest.
+     *
+     * @param itemId
+     *            the ID of the item to check for
+     * @return the quantity of the item in the chest
+     * @requires itemId is registered in ItemRegistry.shared()
+     */
+    int itemQuantity(int itemId);
+
     /**
      * Clears the chest of all items, resetting the chest to its default state.
      *
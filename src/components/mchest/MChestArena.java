@@ -0,0 +1,526 @@
+package components.mchest;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Off-heap storage for the contents of many small chests. Each chest owns a
+ * block of slots in a direct {@code ByteBuffer} slab; a slot holds an item's
+ * {@code ItemRegistry.shared()} ID and its quantity as two {@code int}s.
+ * The only per-chest state on the heap is four {@code int}s in the arena's
+ * offset tables (block address, block capacity, used slots and total
+ * quantity), so {@code MChestOnArena} handles stay a few bytes each and the
+ * garbage collector never walks chest contents.
+ *
+ * <p>
+ * A chest's block is allocated on its first item and doubled when it fills
+ * up; the old block is left behind as garbage. {@link #free(int)} returns a
+ * chest's handle for reuse and leaves its block as garbage too.
+ * {@link #compact()} copies every live block, trimmed to its used slots,
+ * into fresh slabs and drops the old ones, which reclaims all the garbage
+ * without changing any handle.
+ * </p>
+ *
+ * <p>
+ * An arena is not thread-safe.
+ * </p>
+ *
+ * @author Yuvraj Atre
+ */
+public final class MChestArena {
+
+    /**
+     * Bits of a block address holding the offset within its slab.
+     */
+    private static final int SLAB_BITS = 20;
+
+    /**
+     * Largest size of a slab in bytes.
+     */
+    private static final int SLAB_BYTES = 1 << SLAB_BITS;
+
+    /**
+     * Smallest size of a slab in bytes. Slabs start this small and double up
+     * to {@code SLAB_BYTES}, so an arena holding one chest stays small.
+     */
+    private static final int FIRST_SLAB_BYTES = 1 << 12;
+
+    /**
+     * Mask of the offset part of a block address.
+     */
+    private static final int OFFSET_MASK = SLAB_BYTES - 1;
+
+    /**
+     * Size of a slot in bytes: item ID and quantity.
+     */
+    private static final int SLOT_BYTES = 8;
+
+    /**
+     * Offset of the quantity within a slot.
+     */
+    private static final int COUNT_OFFSET = 4;
+
+    /**
+     * Largest number of slots in one block.
+     */
+    private static final int MAX_SLOTS = SLAB_BYTES / SLOT_BYTES;
+
+    /**
+     * Number of slots in a chest's first block.
+     */
+    private static final int FIRST_SLOTS = 4;
+
+    /**
+     * Initial length of the offset tables.
+     */
+    private static final int INITIAL_CHESTS = 64;
+
+    /**
+     * The slabs; block addresses index into this list.
+     */
+    private ArrayList<ByteBuffer> slabs;
+
+    /**
+     * Bytes already handed out from the last slab.
+     */
+    private int slabUsed;
+
+    /**
+     * Size of the last slab in bytes; 0 if there is none.
+     */
+    private int slabLimit;
+
+    /**
+     * Block address of each chest.
+     */
+    private int[] address;
+
+    /**
+     * Block capacity of each chest, in slots; 0 if it has no block yet, and
+     * -1 if the chest has been freed.
+     */
+    private int[] capacity;
+
+    /**
+     * Used slots of each chest.
+     */
+    private int[] size;
+
+    /**
+     * Sum of the quantities of each chest.
+     */
+    private int[] total;
+
+    /**
+     * Number of entries in use in the offset tables.
+     */
+    private int chests;
+
+    /**
+     * Freed chest handles, available for reuse, in the first
+     * {@code freeCount} entries.
+     */
+    private int[] freeHandles;
+
+    /**
+     * Number of freed chest handles.
+     */
+    private int freeCount;
+
+    /**
+     * Bytes in slabs that no live block uses.
+     */
+    private long wasted;
+
+    /**
+     * No-argument constructor that initializes an empty arena.
+     */
+    public MChestArena() {
+        this.slabs = new ArrayList<>();
+        this.slabUsed = 0;
+        this.slabLimit = 0;
+        this.address = new int[INITIAL_CHESTS];
+        this.capacity = new int[INITIAL_CHESTS];
+        this.size = new int[INITIAL_CHESTS];
+        this.total = new int[INITIAL_CHESTS];
+        this.chests = 0;
+        this.freeHandles = new int[INITIAL_CHESTS];
+        this.freeCount = 0;
+        this.wasted = 0;
+    }
+
+    /*
+     * Blocks -----------------------------------------------------------------
+     */
+
+    /**
+     * Allocates a block of {@code slots} slots, starting a new slab if the
+     * current one is too full.
+     *
+     * @param slots
+     *            the block size in slots
+     * @return the block address
+     */
+    private int allocateBlock(int slots) {
+        int bytes = slots * SLOT_BYTES;
+        if (this.slabLimit - this.slabUsed < bytes) {
+            this.wasted += this.slabLimit - this.slabUsed;
+            int slabBytes = Math.min(SLAB_BYTES, Math.max(FIRST_SLAB_BYTES,
+                    Math.max(bytes, this.slabLimit * 2)));
+            ByteBuffer slab = ByteBuffer.allocateDirect(slabBytes)
+                    .order(ByteOrder.nativeOrder());
+            this.slabs.add(slab);
+            this.slabUsed = 0;
+            this.slabLimit = slabBytes;
+        }
+        int result = ((this.slabs.size() - 1) << SLAB_BITS) | this.slabUsed;
+        this.slabUsed += bytes;
+        return result;
+    }
+
+    /**
+     * Returns the slab holding the block at {@code blockAddress}.
+     *
+     * @param blockAddress
+     *            the block address
+     * @return the slab
+     */
+    private ByteBuffer slab(int blockAddress) {
+        return this.slabs.get(blockAddress >>> SLAB_BITS);
+    }
+
+    /**
+     * Returns the byte offset of slot {@code slot} of {@code chest} within
+     * its slab.
+     *
+     * @param chest
+     *            the chest handle
+     * @param slot
+     *            the slot index
+     * @return the byte offset
+     */
+    private int slotOffset(int chest, int slot) {
+        return (this.address[chest] & OFFSET_MASK) + slot * SLOT_BYTES;
+    }
+
+    /**
+     * Copies the used slots of {@code chest} into a new block of
+     * {@code slots} slots and makes it the chest's block.
+     *
+     * @param chest
+     *            the chest handle
+     * @param slots
+     *            the new block size in slots
+     */
+    private void moveBlock(int chest, int slots) {
+        int newAddress = this.allocateBlock(slots);
+        if (this.size[chest] > 0) {
+            ByteBuffer from = this.slab(this.address[chest]);
+            ByteBuffer to = this.slab(newAddress);
+            int fromOffset = this.address[chest] & OFFSET_MASK;
+            int toOffset = newAddress & OFFSET_MASK;
+            for (int i = 0; i < this.size[chest] * 2; i++) {
+                to.putInt(toOffset + i * Integer.BYTES,
+                        from.getInt(fromOffset + i * Integer.BYTES));
+            }
+        }
+        this.wasted += (long) this.capacity[chest] * SLOT_BYTES;
+        this.address[chest] = newAddress;
+        this.capacity[chest] = slots;
+    }
+
+    /*
+     * Chests -----------------------------------------------------------------
+     */
+
+    /**
+     * Adds an empty chest to the arena.
+     *
+     * @return the new chest's handle
+     */
+    int allocate() {
+        int chest;
+        if (this.freeCount > 0) {
+            this.freeCount--;
+            chest = this.freeHandles[this.freeCount];
+        } else {
+            if (this.chests == this.address.length) {
+                int length = this.chests * 2;
+                this.address = Arrays.copyOf(this.address, length);
+                this.capacity = Arrays.copyOf(this.capacity, length);
+                this.size = Arrays.copyOf(this.size, length);
+                this.total = Arrays.copyOf(this.total, length);
+            }
+            chest = this.chests;
+            this.chests++;
+        }
+        this.address[chest] = 0;
+        this.capacity[chest] = 0;
+        this.size[chest] = 0;
+        this.total[chest] = 0;
+        return chest;
+    }
+
+    /**
+     * Frees {@code chest}: its block becomes garbage and its handle may be
+     * handed out again by a later allocation.
+     *
+     * @param chest
+     *            the chest handle
+     * @requires chest is a live handle of this arena
+     */
+    void free(int chest) {
+        assert this.capacity[chest] >= 0 : "Violation of: chest is live";
+        this.wasted += (long) this.capacity[chest] * SLOT_BYTES;
+        this.capacity[chest] = -1;
+        this.size[chest] = 0;
+        this.total[chest] = 0;
+        if (this.freeCount == this.freeHandles.length) {
+            this.freeHandles = Arrays.copyOf(this.freeHandles,
+                    this.freeCount * 2);
+        }
+        this.freeHandles[this.freeCount] = chest;
+        this.freeCount++;
+    }
+
+    /**
+     * Returns the number of used slots of {@code chest}.
+     *
+     * @param chest
+     *            the chest handle
+     * @return the number of distinct items
+     */
+    int size(int chest) {
+        return this.size[chest];
+    }
+
+    /**
+     * Returns the total quantity in {@code chest}.
+     *
+     * @param chest
+     *            the chest handle
+     * @return the total
+     */
+    int total(int chest) {
+        return this.total[chest];
+    }
+
+    /**
+     * Returns the slot of {@code chest} holding {@code itemId}, or -1.
+     *
+     * @param chest
+     *            the chest handle
+     * @param itemId
+     *            the item ID
+     * @return the slot index, or -1 if the chest does not hold the item
+     */
+    int find(int chest, int itemId) {
+        int n = this.size[chest];
+        if (n == 0) {
+            return -1;
+        }
+        ByteBuffer slab = this.slab(this.address[chest]);
+        int offset = this.slotOffset(chest, 0);
+        for (int slot = 0; slot < n; slot++) {
+            if (slab.getInt(offset + slot * SLOT_BYTES) == itemId) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the item ID in slot {@code slot} of {@code chest}.
+     *
+     * @param chest
+     *            the chest handle
+     * @param slot
+     *            the slot index
+     * @return the item ID
+     */
+    int itemAt(int chest, int slot) {
+        return this.slab(this.address[chest])
+                .getInt(this.slotOffset(chest, slot));
+    }
+
+    /**
+     * Returns the quantity in slot {@code slot} of {@code chest}.
+     *
+     * @param chest
+     *            the chest handle
+     * @param slot
+     *            the slot index
+     * @return the quantity
+     */
+    int countAt(int chest, int slot) {
+        return this.slab(this.address[chest])
+                .getInt(this.slotOffset(chest, slot) + COUNT_OFFSET);
+    }
+
+    /**
+     * Adds {@code quantity} of {@code itemId} to {@code chest}, appending a
+     * slot if the chest does not hold the item yet.
+     *
+     * @param chest
+     *            the chest handle
+     * @param itemId
+     *            the item ID
+     * @param quantity
+     *            the quantity to add
+     */
+    void add(int chest, int itemId, int quantity) {
+        int slot = this.find(chest, itemId);
+        if (slot < 0) {
+            if (this.size[chest] == this.capacity[chest]) {
+                int slots = Math.min(
+                        Math.max(FIRST_SLOTS, this.capacity[chest] * 2),
+                        MAX_SLOTS);
+                assert slots > this.size[chest] : "Chest exceeds one slab";
+                this.moveBlock(chest, slots);
+            }
+            slot = this.size[chest];
+            this.size[chest]++;
+            this.slab(this.address[chest])
+                    .putInt(this.slotOffset(chest, slot), itemId);
+            this.slab(this.address[chest]).putInt(
+                    this.slotOffset(chest, slot) + COUNT_OFFSET, quantity);
+        } else {
+            int offset = this.slotOffset(chest, slot) + COUNT_OFFSET;
+            ByteBuffer slab = this.slab(this.address[chest]);
+            slab.putInt(offset, slab.getInt(offset) + quantity);
+        }
+        this.total[chest] += quantity;
+    }
+
+    /**
+     * Removes up to {@code quantity} from slot {@code slot} of
+     * {@code chest}; an emptied slot is replaced by the chest's last slot.
+     *
+     * @param chest
+     *            the chest handle
+     * @param slot
+     *            the slot index
+     * @param quantity
+     *            the quantity to remove
+     * @return the quantity left in the slot's item
+     */
+    int decrementSlot(int chest, int slot, int quantity) {
+        ByteBuffer slab = this.slab(this.address[chest]);
+        int offset = this.slotOffset(chest, slot);
+        int current = slab.getInt(offset + COUNT_OFFSET);
+        int remaining = 0;
+        if (current <= quantity) {
+            int last = this.slotOffset(chest, this.size[chest] - 1);
+            slab.putInt(offset, slab.getInt(last));
+            slab.putInt(offset + COUNT_OFFSET,
+                    slab.getInt(last + COUNT_OFFSET));
+            this.size[chest]--;
+        } else {
+            remaining = current - quantity;
+            slab.putInt(offset + COUNT_OFFSET, remaining);
+        }
+        this.total[chest] -= current - remaining;
+        return remaining;
+    }
+
+    /**
+     * Empties {@code chest}, keeping its block for reuse.
+     *
+     * @param chest
+     *            the chest handle
+     */
+    void clear(int chest) {
+        this.size[chest] = 0;
+        this.total[chest] = 0;
+    }
+
+    /**
+     * Moves the contents of {@code source} to {@code target}, whose old
+     * block becomes garbage, and leaves {@code source} empty.
+     *
+     * @param target
+     *            the handle receiving the contents
+     * @param source
+     *            the handle giving them up
+     */
+    void move(int target, int source) {
+        this.wasted += (long) this.capacity[target] * SLOT_BYTES;
+        this.address[target] = this.address[source];
+        this.capacity[target] = this.capacity[source];
+        this.size[target] = this.size[source];
+        this.total[target] = this.total[source];
+        this.address[source] = 0;
+        this.capacity[source] = 0;
+        this.size[source] = 0;
+        this.total[source] = 0;
+    }
+
+    /*
+     * Maintenance ------------------------------------------------------------
+     */
+
+    /**
+     * Copies every live chest's used slots into fresh slabs and drops the old
+     * slabs, reclaiming all garbage. Handles stay valid.
+     */
+    public void compact() {
+        ArrayList<ByteBuffer> oldSlabs = this.slabs;
+        this.slabs = new ArrayList<>();
+        this.slabUsed = 0;
+        this.slabLimit = 0;
+        this.wasted = 0;
+        for (int chest = 0; chest < this.chests; chest++) {
+            int n = this.size[chest];
+            if (this.capacity[chest] > 0 && n == 0) {
+                this.address[chest] = 0;
+                this.capacity[chest] = 0;
+            } else if (this.capacity[chest] > 0) {
+                int oldAddress = this.address[chest];
+                ByteBuffer from = oldSlabs.get(oldAddress >>> SLAB_BITS);
+                int fromOffset = oldAddress & OFFSET_MASK;
+                int newAddress = this.allocateBlock(n);
+                ByteBuffer to = this.slab(newAddress);
+                int toOffset = newAddress & OFFSET_MASK;
+                for (int i = 0; i < n * 2; i++) {
+                    to.putInt(toOffset + i * Integer.BYTES,
+                            from.getInt(fromOffset + i * Integer.BYTES));
+                }
+                this.address[chest] = newAddress;
+                this.capacity[chest] = n;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of live chests.
+     *
+     * @return the number of chests allocated and not freed
+     */
+    public int liveChests() {
+        return this.chests - this.freeCount;
+    }
+
+    /**
+     * Returns the off-heap bytes held by the arena.
+     *
+     * @return the total size of the slabs
+     */
+    public long reservedBytes() {
+        long bytes = 0;
+        for (ByteBuffer slab : this.slabs) {
+            bytes += slab.capacity();
+        }
+        return bytes;
+    }
+
+    /**
+     * Returns the off-heap bytes that {@link #compact()} would reclaim.
+     *
+     * @return the bytes in slabs no live block uses
+     */
+    public long wastedBytes() {
+        return this.wasted;
+    }
+}
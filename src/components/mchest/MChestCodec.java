@@ -0,0 +1,534 @@
+package components.mchest;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Compact binary encoding of an {@code MChest}, written to and read from a
+ * {@code ByteBuffer} or a {@code DataOutput}/{@code DataInput} without
+ * building an intermediate map.
+ *
+ * <p>
+ * An encoded chest is a format byte, the number of distinct items as a
+ * varint, and then one entry per item: the item, and its quantity as a
+ * varint. Varints are unsigned LEB128, so quantities below 128 take one byte.
+ * In {@link #NAMES} format the item is its UTF-8 name prefixed by the byte
+ * length as a varint. In {@link #IDS} format, used by a codec constructed
+ * with an {@code ItemRegistry}, the item is its registry ID as a varint; the
+ * registry is the shared string dictionary and must map the same IDs when
+ * the chest is decoded, so callers that persist {@code IDS} encodings must
+ * persist the registry's names too.
+ * </p>
+ *
+ * <p>
+ * Decoding builds the chest in a fresh instance and transfers it to the
+ * given chest only once the whole encoding has been read, so malformed input,
+ * including a buffer that ends part way through a chest, is reported with an
+ * {@code IllegalArgumentException} and leaves the chest unchanged. A single
+ * {@code addItem} may take a chest past its capacity, so the entry with the
+ * largest quantity is added last: any chest whose other entries leave it
+ * below capacity round-trips exactly, whatever order its entries are in.
+ * </p>
+ *
+ * @author Yuvraj Atre
+ */
+public final class MChestCodec {
+
+    /**
+     * Format byte of an encoding with length-prefixed item names.
+     */
+    public static final int NAMES = 0;
+
+    /**
+     * Format byte of an encoding with registry item IDs.
+     */
+    public static final int IDS = 1;
+
+    /**
+     * Longest item name accepted when decoding, in UTF-8 bytes.
+     */
+    private static final int MAX_NAME_BYTES = 0xFFFF;
+
+    /**
+     * Bits of payload in each varint byte.
+     */
+    private static final int VARINT_SHIFT = 7;
+
+    /**
+     * Mask of the payload bits of a varint byte.
+     */
+    private static final int VARINT_PAYLOAD = 0x7F;
+
+    /**
+     * Continuation bit of a varint byte.
+     */
+    private static final int VARINT_MORE = 0x80;
+
+    /**
+     * Largest number of bytes in the varint encoding of an {@code int}.
+     */
+    private static final int VARINT_MAX_BYTES = 5;
+
+    /**
+     * A chest being decoded. Entries are added as they are read, except the
+     * one with the largest quantity so far, which is held back until a larger
+     * one replaces it or the end of the encoding is reached.
+     */
+    private static final class Decoded {
+
+        /**
+         * The chest receiving the entries.
+         */
+        private final MChest chest;
+
+        /**
+         * The held-back item, or {@code null} if no entry has been read.
+         */
+        private String largest;
+
+        /**
+         * Quantity of the held-back item.
+         */
+        private int largestQuantity;
+
+        /**
+         * Starts decoding into an empty chest of the same kind as
+         * {@code target}.
+         *
+         * @param target
+         *            the chest that will receive the result
+         */
+        Decoded(MChest target) {
+            this.chest = target.newInstance();
+            this.largest = null;
+            this.largestQuantity = 0;
+        }
+
+        /**
+         * Adds a decoded entry.
+         *
+         * @param item
+         *            the item name
+         * @param quantity
+         *            the quantity
+         */
+        void add(String item, int quantity) {
+            if (quantity <= 0) {
+                throw new IllegalArgumentException(
+                        "Non-positive quantity for " + item);
+            }
+            if (quantity > this.largestQuantity) {
+                if (this.largest != null) {
+                    this.addNow(this.largest, this.largestQuantity);
+                }
+                this.largest = item;
+                this.largestQuantity = quantity;
+            } else {
+                this.addNow(item, quantity);
+            }
+        }
+
+        /**
+         * Adds an entry to the chest, if it is not already full.
+         *
+         * @param item
+         *            the item name
+         * @param quantity
+         *            the quantity
+         */
+        private void addNow(String item, int quantity) {
+            if (this.chest.isFull()) {
+                throw new IllegalArgumentException(
+                        "Encoded chest does not fit in the chest");
+            }
+            this.chest.addItem(item, quantity);
+        }
+
+        /**
+         * Adds the held-back entry and moves the decoded contents into
+         * {@code target}.
+         *
+         * @param target
+         *            the chest receiving the result
+         */
+        void finishInto(MChest target) {
+            if (this.largest != null) {
+                this.addNow(this.largest, this.largestQuantity);
+            }
+            target.transferFrom(this.chest);
+            if (this.chest instanceof MChestOnArena) {
+                ((MChestOnArena) this.chest).release();
+            }
+        }
+    }
+
+    /**
+     * The dictionary for {@code IDS} encodings, or {@code null} to encode
+     * names.
+     */
+    private final ItemRegistry dictionary;
+
+    /**
+     * Constructs a codec that encodes item names.
+     */
+    public MChestCodec() {
+        this.dictionary = null;
+    }
+
+    /**
+     * Constructs a codec that encodes items by their IDs in
+     * {@code dictionary}, registering names as needed.
+     *
+     * @param dictionary
+     *            the registry mapping item names to IDs
+     * @requires dictionary != null
+     */
+    public MChestCodec(ItemRegistry dictionary) {
+        assert dictionary != null : "Violation of: dictionary is not null";
+        this.dictionary = dictionary;
+    }
+
+    /*
+     * Varints ----------------------------------------------------------------
+     */
+
+    /**
+     * Returns the number of bytes in the varint encoding of {@code value}.
+     *
+     * @param value
+     *            the value
+     * @return the encoded length
+     */
+    static int varintSize(int value) {
+        int size = 1;
+        int rest = value >>> VARINT_SHIFT;
+        while (rest != 0) {
+            size++;
+            rest >>>= VARINT_SHIFT;
+        }
+        return size;
+    }
+
+    /**
+     * Writes {@code value} to {@code out} as a varint.
+     *
+     * @param out
+     *            the buffer to write to
+     * @param value
+     *            the non-negative value
+     */
+    static void putVarint(ByteBuffer out, int value) {
+        int rest = value;
+        while ((rest & ~VARINT_PAYLOAD) != 0) {
+            out.put((byte) ((rest & VARINT_PAYLOAD) | VARINT_MORE));
+            rest >>>= VARINT_SHIFT;
+        }
+        out.put((byte) rest);
+    }
+
+    /**
+     * Writes {@code value} to {@code out} as a varint.
+     *
+     * @param out
+     *            the output to write to
+     * @param value
+     *            the non-negative value
+     * @throws IOException
+     *             if {@code out} fails
+     */
+    static void writeVarint(DataOutput out, int value) throws IOException {
+        int rest = value;
+        while ((rest & ~VARINT_PAYLOAD) != 0) {
+            out.writeByte((rest & VARINT_PAYLOAD) | VARINT_MORE);
+            rest >>>= VARINT_SHIFT;
+        }
+        out.writeByte(rest);
+    }
+
+    /**
+     * Reads a non-negative varint from {@code in}.
+     *
+     * @param in
+     *            the buffer to read from
+     * @return the value
+     * @throws IllegalArgumentException
+     *             if the varint is malformed or runs past the end of in
+     */
+    static int getVarint(ByteBuffer in) {
+        int value = 0;
+        int shift = 0;
+        int b = VARINT_MORE;
+        int count = 0;
+        while ((b & VARINT_MORE) != 0) {
+            if (count == VARINT_MAX_BYTES) {
+                throw new IllegalArgumentException("Malformed varint");
+            }
+            if (!in.hasRemaining()) {
+                throw new IllegalArgumentException("Truncated varint");
+            }
+            b = in.get();
+            value |= (b & VARINT_PAYLOAD) << shift;
+            shift += VARINT_SHIFT;
+            count++;
+        }
+        if (value < 0) {
+            throw new IllegalArgumentException("Malformed varint");
+        }
+        return value;
+    }
+
+    /**
+     * Reads a non-negative varint from {@code in}.
+     *
+     * @param in
+     *            the input to read from
+     * @return the value
+     * @throws IOException
+     *             if {@code in} fails
+     */
+    static int readVarint(DataInput in) throws IOException {
+        int value = 0;
+        int shift = 0;
+        int b = VARINT_MORE;
+        int count = 0;
+        while ((b & VARINT_MORE) != 0) {
+            if (count == VARINT_MAX_BYTES) {
+                throw new IllegalArgumentException("Malformed varint");
+            }
+            b = in.readUnsignedByte();
+            value |= (b & VARINT_PAYLOAD) << shift;
+            shift += VARINT_SHIFT;
+            count++;
+        }
+        if (value < 0) {
+            throw new IllegalArgumentException("Malformed varint");
+        }
+        return value;
+    }
+
+    /*
+     * Encoding ---------------------------------------------------------------
+     */
+
+    /**
+     * Returns the format byte this codec writes.
+     *
+     * @return {@code NAMES} or {@code IDS}
+     */
+    private int format() {
+        int format = NAMES;
+        if (this.dictionary != null) {
+            format = IDS;
+        }
+        return format;
+    }
+
+    /**
+     * Returns the number of bytes {@code encode} writes for {@code chest}.
+     *
+     * @param chest
+     *            the chest
+     * @return the encoded size in bytes
+     * @requires chest != null
+     */
+    public int encodedSize(MChest chest) {
+        assert chest != null : "Violation of: chest is not null";
+        int[] size = { 1 + varintSize(chest.distinctItems()) };
+        chest.forEachItem((item, quantity) -> {
+            if (this.dictionary != null) {
+                size[0] += varintSize(this.dictionary.idOf(item));
+            } else {
+                int length = item.getBytes(StandardCharsets.UTF_8).length;
+                size[0] += varintSize(length) + length;
+            }
+            size[0] += varintSize(quantity);
+        });
+        return size[0];
+    }
+
+    /**
+     * Writes {@code chest} to {@code out}, starting at its position.
+     *
+     * @param chest
+     *            the chest to encode
+     * @param out
+     *            the buffer to write to
+     * @updates out
+     * @requires chest != null and out != null and
+     *           out.remaining() >= encodedSize(chest)
+     */
+    public void encode(MChest chest, ByteBuffer out) {
+        assert chest != null : "Violation of: chest is not null";
+        assert out != null : "Violation of: out is not null";
+        out.put((byte) this.format());
+        putVarint(out, chest.distinctItems());
+        chest.forEachItem((item, quantity) -> {
+            if (this.dictionary != null) {
+                putVarint(out, this.dictionary.idOf(item));
+            } else {
+                byte[] name = item.getBytes(StandardCharsets.UTF_8);
+                putVarint(out, name.length);
+                out.put(name);
+            }
+            putVarint(out, quantity);
+        });
+    }
+
+    /**
+     * Writes {@code chest} to {@code out}.
+     *
+     * @param chest
+     *            the chest to encode
+     * @param out
+     *            the output to write to
+     * @throws IOException
+     *             if {@code out} fails
+     * @requires chest != null and out != null
+     */
+    public void write(MChest chest, DataOutput out) throws IOException {
+        assert chest != null : "Violation of: chest is not null";
+        assert out != null : "Violation of: out is not null";
+        out.writeByte(this.format());
+        writeVarint(out, chest.distinctItems());
+        try {
+            chest.forEachItem((item, quantity) -> {
+                try {
+                    if (this.dictionary != null) {
+                        writeVarint(out, this.dictionary.idOf(item));
+                    } else {
+                        byte[] name = item.getBytes(StandardCharsets.UTF_8);
+                        writeVarint(out, name.length);
+                        out.write(name);
+                    }
+                    writeVarint(out, quantity);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /*
+     * Decoding ---------------------------------------------------------------
+     */
+
+    /**
+     * Checks the format byte of an encoding.
+     *
+     * @param format
+     *            the format byte read
+     */
+    private void checkFormat(int format) {
+        if (format == IDS && this.dictionary == null) {
+            throw new IllegalArgumentException(
+                    "Item IDs encoded but codec has no dictionary");
+        }
+        if (format != NAMES && format != IDS) {
+            throw new IllegalArgumentException(
+                    "Unknown MChest format: " + format);
+        }
+    }
+
+    /**
+     * Returns the name of dictionary entry {@code id}.
+     *
+     * @param id
+     *            the encoded ID
+     * @return the item name
+     */
+    private String nameOf(int id) {
+        if (id >= this.dictionary.size()) {
+            throw new IllegalArgumentException("Unknown item ID: " + id);
+        }
+        return this.dictionary.name(id);
+    }
+
+    /**
+     * Reads a chest from {@code in}, starting at its position, replacing the
+     * contents of {@code chest}.
+     *
+     * @param in
+     *            the buffer to read from
+     * @param chest
+     *            receives the decoded items
+     * @throws IllegalArgumentException
+     *             if the encoding is malformed; chest is then unchanged
+     * @updates in
+     * @replaces chest
+     * @requires in != null and chest != null
+     * @ensures chest = the chest encoded at #in.position()
+     */
+    public void decode(ByteBuffer in, MChest chest) {
+        assert in != null : "Violation of: in is not null";
+        assert chest != null : "Violation of: chest is not null";
+        if (!in.hasRemaining()) {
+            throw new IllegalArgumentException("Truncated chest");
+        }
+        int format = in.get();
+        int count = getVarint(in);
+        this.checkFormat(format);
+        Decoded decoded = new Decoded(chest);
+        for (int i = 0; i < count; i++) {
+            String item;
+            if (format == IDS) {
+                item = this.nameOf(getVarint(in));
+            } else {
+                int length = getVarint(in);
+                if (length > MAX_NAME_BYTES || length > in.remaining()) {
+                    throw new IllegalArgumentException("Truncated item name");
+                }
+                byte[] name = new byte[length];
+                in.get(name);
+                item = new String(name, StandardCharsets.UTF_8);
+            }
+            decoded.add(item, getVarint(in));
+        }
+        decoded.finishInto(chest);
+    }
+
+    /**
+     * Reads a chest from {@code in}, replacing the contents of {@code chest}.
+     *
+     * @param in
+     *            the input to read from
+     * @param chest
+     *            receives the decoded items
+     * @throws IOException
+     *             if {@code in} fails or ends early
+     * @throws IllegalArgumentException
+     *             if the encoding is malformed; chest is then unchanged
+     * @replaces chest
+     * @requires in != null and chest != null
+     * @ensures chest = the chest encoded at the start of in
+     */
+    public void read(DataInput in, MChest chest) throws IOException {
+        assert in != null : "Violation of: in is not null";
+        assert chest != null : "Violation of: chest is not null";
+        int format = in.readUnsignedByte();
+        int count = readVarint(in);
+        this.checkFormat(format);
+        Decoded decoded = new Decoded(chest);
+        for (int i = 0; i < count; i++) {
+            String item;
+            if (format == IDS) {
+                item = this.nameOf(readVarint(in));
+            } else {
+                int length = readVarint(in);
+                if (length > MAX_NAME_BYTES) {
+                    throw new IllegalArgumentException("Item name too long");
+                }
+                byte[] name = new byte[length];
+                in.readFully(name);
+                item = new String(name, StandardCharsets.UTF_8);
+            }
+            decoded.add(item, readVarint(in));
+        }
+        decoded.finishInto(chest);
+    }
+}
@@ -0,0 +1,104 @@
+package components.mchest;
+
+/**
+ * The net change to the quantity of one item in a chest over a tick, as
+ * delivered by {@code MChestDeltaBatcher}. A quantity of 0 means the item is
+ * not in the chest.
+ *
+ * @author Yuvraj Atre
+ */
+public final class MChestDelta {
+
+    /**
+     * The item name.
+     */
+    private final String item;
+
+    /**
+     * The quantity at the start of the tick.
+     */
+    private final int oldQuantity;
+
+    /**
+     * The quantity at the end of the tick.
+     */
+    private final int newQuantity;
+
+    /**
+     * Constructs a delta.
+     *
+     * @param item
+     *            the item name
+     * @param oldQuantity
+     *            the quantity at the start of the tick
+     * @param newQuantity
+     *            the quantity at the end of the tick
+     * @requires item != null and oldQuantity >= 0 and newQuantity >= 0
+     */
+    public MChestDelta(String item, int oldQuantity, int newQuantity) {
+        assert item != null : "Violation of: item is not null";
+        this.item = item;
+        this.oldQuantity = oldQuantity;
+        this.newQuantity = newQuantity;
+    }
+
+    /**
+     * Returns the item name.
+     *
+     * @return the item
+     */
+    public String item() {
+        return this.item;
+    }
+
+    /**
+     * Returns the quantity at the start of the tick.
+     *
+     * @return the old quantity
+     */
+    public int oldQuantity() {
+        return this.oldQuantity;
+    }
+
+    /**
+     * Returns the quantity at the end of the tick.
+     *
+     * @return the new quantity
+     */
+    public int newQuantity() {
+        return this.newQuantity;
+    }
+
+    /**
+     * Returns how much the quantity grew, negative if it shrank.
+     *
+     * @return newQuantity - oldQuantity
+     */
+    public int difference() {
+        return this.newQuantity - this.oldQuantity;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof MChestDelta)) {
+            return false;
+        }
+        MChestDelta other = (MChestDelta) obj;
+        return this.item.equals(other.item)
+                && this.oldQuantity == other.oldQuantity
+                && this.newQuantity == other.newQuantity;
+    }
+
+    @Override
+    public int hashCode() {
+        final int prime = 31;
+        return (this.item.hashCode() * prime + this.oldQuantity) * prime
+                + this.newQuantity;
+    }
+
+    @Override
+    public String toString() {
+        return "(" + this.item + ", " + this.oldQuantity + " -> "
+                + this.newQuantity + ")";
+    }
+}
@@ -0,0 +1,148 @@
+package components.mchest;
+
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import components.list.List;
+import components.list.List2;
+
+/**
+ * Coalesces the change events of any number of chests into one
+ * {@code MChestDelta} per changed item and delivers them in batches, one
+ * batch per chest, each time {@link #flush()} is called. Calling
+ * {@code flush} once per game tick gives replication and UI sync exactly the
+ * items whose quantity differs from the previous tick, without diffing whole
+ * chests. Items that changed and changed back within a tick are dropped.
+ *
+ * <p>
+ * Events may arrive from any thread. Batches are delivered on the thread
+ * calling {@code flush}, outside the batcher's lock, so the receiver may
+ * read the chests or watch new ones.
+ * </p>
+ *
+ * @author Yuvraj Atre
+ */
+public final class MChestDeltaBatcher implements MChestListener {
+
+    /**
+     * Receives the batches of a flush.
+     */
+    @FunctionalInterface
+    public interface BatchListener {
+
+        /**
+         * Delivers the net changes to {@code chest} since the last flush.
+         *
+         * @param chest
+         *            the chest that changed
+         * @param deltas
+         *            one delta per changed item, in order of first change
+         */
+        void deltas(MChest chest, List<MChestDelta> deltas);
+    }
+
+    /**
+     * Receiver of the batches.
+     */
+    private final BatchListener receiver;
+
+    /**
+     * For each chest changed since the last flush, the quantities of each
+     * changed item at the last flush and now, as {@code {old, new}}. Chests
+     * are compared by identity, since {@code MChest.equals} compares
+     * contents.
+     */
+    private IdentityHashMap<MChest, LinkedHashMap<String, int[]>> pending;
+
+    /**
+     * Constructs a batcher delivering to {@code receiver}.
+     *
+     * @param receiver
+     *            the receiver of the batches
+     * @requires receiver != null
+     */
+    public MChestDeltaBatcher(BatchListener receiver) {
+        assert receiver != null : "Violation of: receiver is not null";
+        this.receiver = receiver;
+        this.pending = new IdentityHashMap<>();
+    }
+
+    /**
+     * Starts batching the changes to {@code chest}.
+     *
+     * @param chest
+     *            the chest to watch
+     * @requires chest != null
+     */
+    public void watch(MChestOnMap chest) {
+        assert chest != null : "Violation of: chest is not null";
+        chest.addListener(this);
+    }
+
+    /**
+     * Stops batching the changes to {@code chest}. Changes already pending
+     * are still delivered by the next flush.
+     *
+     * @param chest
+     *            the chest to stop watching
+     * @requires chest != null
+     */
+    public void unwatch(MChestOnMap chest) {
+        assert chest != null : "Violation of: chest is not null";
+        chest.removeListener(this);
+    }
+
+    @Override
+    public synchronized void itemChanged(MChest chest, String item,
+            int oldQuantity, int newQuantity) {
+        LinkedHashMap<String, int[]> items = this.pending.get(chest);
+        if (items == null) {
+            items = new LinkedHashMap<>();
+            this.pending.put(chest, items);
+        }
+        int[] change = items.get(item);
+        if (change == null) {
+            items.put(item, new int[] { oldQuantity, newQuantity });
+        } else {
+            change[1] = newQuantity;
+        }
+    }
+
+    /**
+     * Returns the number of chests with changes waiting for the next flush.
+     *
+     * @return the number of pending chests
+     */
+    public synchronized int pendingChests() {
+        return this.pending.size();
+    }
+
+    /**
+     * Delivers the net changes since the last flush, one batch per chest
+     * with at least one item whose quantity differs, and starts a new tick.
+     */
+    public void flush() {
+        IdentityHashMap<MChest, LinkedHashMap<String, int[]>> tick;
+        synchronized (this) {
+            tick = this.pending;
+            this.pending = new IdentityHashMap<>();
+        }
+        for (Map.Entry<MChest, LinkedHashMap<String, int[]>> chest : tick
+                .entrySet()) {
+            List<MChestDelta> deltas = new List2<>();
+            for (Map.Entry<String, int[]> item : chest.getValue().entrySet()) {
+                int[] change = item.getValue();
+                if (change[0] != change[1]) {
+                    deltas.addRightFront(new MChestDelta(item.getKey(),
+                            change[0], change[1]));
+                    deltas.advance();
+                }
+            }
+            if (deltas.leftLength() > 0) {
+                deltas.moveToStart();
+                this.receiver.deltas(chest.getKey(), deltas);
+            }
+        }
+    }
+}
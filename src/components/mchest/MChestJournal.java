@@ -0,0 +1,835 @@
+package components.mchest;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+import components.map.Map;
+import components.map.Map.Pair;
+
+/**
+ * Write-ahead journal for a set of chests. Every change to a chest obtained
+ * from {@link #chest(int)} is appended to an in-memory batch as a compact
+ * binary record; a background flusher writes the batch to the journal file
+ * and forces it to disk once per tick, so durability costs one
+ * {@code fsync} per tick however many changes were made. {@link #sync()}
+ * flushes immediately.
+ *
+ * <p>
+ * On {@link #open(Path, long, long)} the chests are rebuilt from the latest
+ * snapshot plus the journal written after it. When the journal grows past a
+ * threshold the flusher compacts it: it writes a new snapshot of every chest
+ * and starts an empty journal. Snapshots and journals carry a generation
+ * number, so a crash part way through compaction never replays a journal
+ * over a snapshot that already contains it. A crash loses at most the
+ * changes made since the last completed tick.
+ * </p>
+ *
+ * <p>
+ * Each journal record is its length, its payload (type, chest ID and
+ * operands, with varint numbers and length-prefixed UTF-8 names) and a CRC32
+ * of the payload. Replay stops at the first incomplete or corrupt record,
+ * which can only be the tail of the write a crash interrupted, and truncates
+ * the journal there.
+ * </p>
+ *
+ * <p>
+ * Journaled chests may be changed from any thread; each change and its
+ * record are made together while holding the journal's lock, so the journal
+ * order is the order changes were applied in. Reading a chest while another
+ * thread changes it needs the caller's own synchronization, as for
+ * {@code MChestOnMap}. If the flusher fails, later changes throw
+ * {@code UncheckedIOException} rather than being lost.
+ * </p>
+ *
+ * @author Yuvraj Atre
+ */
+public final class MChestJournal implements Closeable {
+
+    /**
+     * Journal size, in bytes, past which the flusher compacts it.
+     */
+    public static final long DEFAULT_COMPACT_BYTES = 64L << 20;
+
+    /**
+     * First four bytes of the journal and snapshot files ("MCHJ").
+     */
+    private static final int MAGIC = 0x4D43484A;
+
+    /**
+     * Size of the journal file header: magic and generation.
+     */
+    private static final int HEADER_SIZE = 12;
+
+    /**
+     * Record type: {@code addItem(item, quantity)}.
+     */
+    private static final int ADD = 1;
+
+    /**
+     * Record type: {@code decrement(item, quantity)}.
+     */
+    private static final int DECREMENT = 2;
+
+    /**
+     * Record type: {@code clear()}.
+     */
+    private static final int CLEAR = 3;
+
+    /**
+     * Record type: {@code transferFrom(source)} between two chests of this
+     * journal.
+     */
+    private static final int TRANSFER = 4;
+
+    /**
+     * Bytes in the length prefix of a record.
+     */
+    private static final int LENGTH_SIZE = 4;
+
+    /**
+     * Bytes in the CRC32 suffix of a record.
+     */
+    private static final int CRC_SIZE = 4;
+
+    /**
+     * Bits in a byte.
+     */
+    private static final int BYTE_BITS = 8;
+
+    /**
+     * Mask of the low byte of an {@code int}.
+     */
+    private static final int BYTE_MASK = 0xFF;
+
+    /**
+     * Source of {@code order} for new journals.
+     */
+    private static final AtomicLong NEXT_ORDER = new AtomicLong();
+
+    /**
+     * A chest whose changes are recorded in the journal.
+     */
+    private static final class JournaledChest extends MChestOnMap {
+
+        /**
+         * The journal recording this chest's changes.
+         */
+        private final MChestJournal journal;
+
+        /**
+         * The chest's ID in the journal.
+         */
+        private final int id;
+
+        /**
+         * Constructs an empty chest with ID {@code id}.
+         *
+         * @param journal
+         *            the journal
+         * @param id
+         *            the chest ID
+         */
+        JournaledChest(MChestJournal journal, int id) {
+            this.journal = journal;
+            this.id = id;
+        }
+
+        @Override
+        public void addItem(String item, int quantity) {
+            synchronized (this.journal.lock) {
+                this.journal.checkAppend();
+                super.addItem(item, quantity);
+                this.journal.record(ADD, this.id, item, quantity);
+            }
+        }
+
+        @Override
+        public int decrement(String item, int quantity) {
+            synchronized (this.journal.lock) {
+                this.journal.checkAppend();
+                int remaining = super.decrement(item, quantity);
+                this.journal.record(DECREMENT, this.id, item, quantity);
+                return remaining;
+            }
+        }
+
+        @Override
+        public void clear() {
+            synchronized (this.journal.lock) {
+                this.journal.checkAppend();
+                super.clear();
+                this.journal.record(CLEAR, this.id, null, 0);
+            }
+        }
+
+        @Override
+        public boolean addAll(Map<String, Integer> batch) {
+            synchronized (this.journal.lock) {
+                this.journal.checkAppend();
+                boolean added = super.addAll(batch);
+                if (added) {
+                    for (Pair<String, Integer> pair : batch) {
+                        this.journal.record(ADD, this.id, pair.key(),
+                                pair.value());
+                    }
+                }
+                return added;
+            }
+        }
+
+        @Override
+        public MChest newInstance() {
+            return new MChestOnMap();
+        }
+
+        @Override
+        public void transferFrom(MChest other) {
+            if (other instanceof JournaledChest
+                    && ((JournaledChest) other).journal != this.journal) {
+                /*
+                 * The source records its own reset in its journal, in
+                 * emptyAfterTransfer. Both journal locks are taken in a fixed
+                 * order, so the two records are made atomically with the
+                 * transfer and two journals never deadlock.
+                 */
+                JournaledChest source = (JournaledChest) other;
+                Object first = this.journal.lock;
+                Object second = source.journal.lock;
+                if (source.journal.order < this.journal.order) {
+                    first = source.journal.lock;
+                    second = this.journal.lock;
+                }
+                synchronized (first) {
+                    synchronized (second) {
+                        this.journal.checkAppend();
+                        source.journal.checkAppend();
+                        super.transferFrom(source);
+                        this.recordContents();
+                    }
+                }
+            } else {
+                synchronized (this.journal.lock) {
+                    this.journal.checkAppend();
+                    if (other instanceof JournaledChest) {
+                        /*
+                         * Recorded first, so the source's own reset record
+                         * follows it and replays as a no-op.
+                         */
+                        this.journal.record(TRANSFER, this.id, null,
+                                ((JournaledChest) other).id);
+                        super.transferFrom(other);
+                    } else {
+                        super.transferFrom(other);
+                        this.recordContents();
+                    }
+                }
+            }
+        }
+
+        @Override
+        protected void emptyAfterTransfer() {
+            synchronized (this.journal.lock) {
+                super.emptyAfterTransfer();
+                this.journal.record(CLEAR, this.id, null, 0);
+            }
+        }
+
+        /**
+         * Records this chest's whole contents as a reset followed by one add
+         * per item; the caller holds {@code journal.lock}.
+         */
+        private void recordContents() {
+            this.journal.record(CLEAR, this.id, null, 0);
+            this.forEachItem((item, quantity) -> this.journal.record(ADD,
+                    this.id, item, quantity));
+        }
+    }
+
+    /**
+     * Guards {@code chests}, {@code pending}, {@code generation} and every
+     * change to a journaled chest.
+     */
+    private final Object lock = new Object();
+
+    /**
+     * Position of this journal in the order journal locks are taken in when
+     * a chest is transferred between two journals.
+     */
+    private final long order = NEXT_ORDER.getAndIncrement();
+
+    /**
+     * Guards the files; held by whoever is writing them.
+     */
+    private final Object ioLock = new Object();
+
+    /**
+     * The journal file.
+     */
+    private final Path journalFile;
+
+    /**
+     * The snapshot file.
+     */
+    private final Path snapshotFile;
+
+    /**
+     * The open journal file, positioned at its end.
+     */
+    private final FileChannel channel;
+
+    /**
+     * The chests, by ID.
+     */
+    private final HashMap<Integer, JournaledChest> chests;
+
+    /**
+     * Records not yet written to the journal file.
+     */
+    private ByteArrayOutputStream pending;
+
+    /**
+     * Scratch buffer for the payload of the record being built.
+     */
+    private final ByteArrayOutputStream payload;
+
+    /**
+     * {@code payload} as a data output, for the varint encoder.
+     */
+    private final DataOutputStream payloadOut;
+
+    /**
+     * Checksum of the record being built.
+     */
+    private final CRC32 crc;
+
+    /**
+     * Generation of the current snapshot and journal.
+     */
+    private long generation;
+
+    /**
+     * Whether replay is applying records, which must not be recorded again.
+     */
+    private boolean replaying;
+
+    /**
+     * Journal size past which the flusher compacts it.
+     */
+    private final long compactBytes;
+
+    /**
+     * Runs the flusher.
+     */
+    private final ScheduledExecutorService flusher;
+
+    /**
+     * First failure of the flusher. Once set, every later change to a chest,
+     * {@code sync}, {@code compact} and {@code close} rethrow it; written
+     * while holding {@code ioLock}.
+     */
+    private volatile IOException failure;
+
+    /**
+     * Constructs a journal over the files in {@code directory}; see
+     * {@link #open(Path, long, long)}.
+     *
+     * @param directory
+     *            the directory holding the journal and snapshot
+     * @param compactBytes
+     *            the journal size past which it is compacted
+     * @throws IOException
+     *             if the files cannot be read
+     */
+    private MChestJournal(Path directory, long compactBytes)
+            throws IOException {
+        this.journalFile = directory.resolve("journal");
+        this.snapshotFile = directory.resolve("snapshot");
+        this.compactBytes = compactBytes;
+        this.chests = new HashMap<>();
+        this.pending = new ByteArrayOutputStream();
+        this.payload = new ByteArrayOutputStream();
+        this.payloadOut = new DataOutputStream(this.payload);
+        this.crc = new CRC32();
+        this.generation = 0;
+        this.replaying = true;
+        this.readSnapshot();
+        this.channel = FileChannel.open(this.journalFile,
+                StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            this.replayJournal();
+        } catch (IOException e) {
+            this.channel.close();
+            throw e;
+        }
+        this.replaying = false;
+        this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "MChestJournal flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Opens the journal in {@code directory}, creating it if needed, and
+     * rebuilds its chests. The flusher writes changes every
+     * {@code tickMillis} milliseconds and compacts the journal once it is
+     * larger than {@code compactBytes}.
+     *
+     * @param directory
+     *            the directory holding the journal and snapshot
+     * @param tickMillis
+     *            the flush interval in milliseconds
+     * @param compactBytes
+     *            the journal size past which it is compacted
+     * @return the journal
+     * @throws IOException
+     *             if the files cannot be read
+     * @requires directory is an existing directory and tickMillis > 0 and
+     *           compactBytes > 0
+     */
+    public static MChestJournal open(Path directory, long tickMillis,
+            long compactBytes) throws IOException {
+        assert directory != null : "Violation of: directory is not null";
+        assert tickMillis > 0 : "Violation of: tickMillis > 0";
+        assert compactBytes > 0 : "Violation of: compactBytes > 0";
+        MChestJournal journal = new MChestJournal(directory, compactBytes);
+        journal.flusher.scheduleWithFixedDelay(journal::tick, tickMillis,
+                tickMillis, TimeUnit.MILLISECONDS);
+        return journal;
+    }
+
+    /**
+     * Opens the journal in {@code directory}, compacting it once it is larger
+     * than {@code DEFAULT_COMPACT_BYTES}; see
+     * {@link #open(Path, long, long)}.
+     *
+     * @param directory
+     *            the directory holding the journal and snapshot
+     * @param tickMillis
+     *            the flush interval in milliseconds
+     * @return the journal
+     * @throws IOException
+     *             if the files cannot be read
+     */
+    public static MChestJournal open(Path directory, long tickMillis)
+            throws IOException {
+        return open(directory, tickMillis, DEFAULT_COMPACT_BYTES);
+    }
+
+    /*
+     * Recording --------------------------------------------------------------
+     */
+
+    /**
+     * Appends {@code value} to {@code out} as four big-endian bytes.
+     *
+     * @param out
+     *            the buffer to append to
+     * @param value
+     *            the value
+     */
+    private static void writeInt(ByteArrayOutputStream out, int value) {
+        for (int shift = 3 * BYTE_BITS; shift >= 0; shift -= BYTE_BITS) {
+            out.write((value >>> shift) & BYTE_MASK);
+        }
+    }
+
+    /**
+     * Appends a record to the pending batch; the caller holds {@code lock}.
+     *
+     * @param type
+     *            the record type
+     * @param id
+     *            the chest ID
+     * @param item
+     *            the item name, or {@code null} if the type has none
+     * @param operand
+     *            the quantity, or the source chest ID of a transfer
+     */
+    private void record(int type, int id, String item, int operand) {
+        if (this.replaying) {
+            return;
+        }
+        this.payload.reset();
+        this.payload.write(type);
+        try {
+            MChestCodec.writeVarint(this.payloadOut, id);
+            if (item != null) {
+                byte[] name = item.getBytes(StandardCharsets.UTF_8);
+                MChestCodec.writeVarint(this.payloadOut, name.length);
+                this.payloadOut.write(name, 0, name.length);
+            }
+            if (type != CLEAR) {
+                MChestCodec.writeVarint(this.payloadOut, operand);
+            }
+        } catch (IOException e) {
+            throw new AssertionError("Writing to memory cannot fail", e);
+        }
+        byte[] bytes = this.payload.toByteArray();
+        this.crc.reset();
+        this.crc.update(bytes, 0, bytes.length);
+        writeInt(this.pending, bytes.length);
+        this.pending.write(bytes, 0, bytes.length);
+        writeInt(this.pending, (int) this.crc.getValue());
+    }
+
+    /**
+     * Throws if the flusher has failed, so that no change is made to a chest
+     * that could not be journaled; the caller holds {@code lock}.
+     *
+     * @throws UncheckedIOException
+     *             if an earlier tick failed
+     */
+    private void checkAppend() {
+        IOException error = this.failure;
+        if (error != null) {
+            throw new UncheckedIOException("Journal flush failed", error);
+        }
+    }
+
+    /**
+     * Returns the chest with ID {@code id}, creating an empty one if there is
+     * none. Every change to it is journaled.
+     *
+     * @param id
+     *            the chest ID
+     * @return the chest
+     * @requires id >= 0
+     */
+    public MChest chest(int id) {
+        assert id >= 0 : "Violation of: id >= 0";
+        synchronized (this.lock) {
+            return this.chestFor(id);
+        }
+    }
+
+    /**
+     * Returns the chest with ID {@code id}, creating it if needed; the caller
+     * holds {@code lock} or is replaying.
+     *
+     * @param id
+     *            the chest ID
+     * @return the chest
+     */
+    private JournaledChest chestFor(int id) {
+        JournaledChest chest = this.chests.get(id);
+        if (chest == null) {
+            chest = new JournaledChest(this, id);
+            this.chests.put(id, chest);
+        }
+        return chest;
+    }
+
+    /*
+     * Replay -----------------------------------------------------------------
+     */
+
+    /**
+     * Loads the chests in the snapshot file, if there is one.
+     *
+     * @throws IOException
+     *             if the snapshot cannot be read
+     */
+    private void readSnapshot() throws IOException {
+        if (!Files.exists(this.snapshotFile)) {
+            return;
+        }
+        MChestCodec codec = new MChestCodec();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                Files.newInputStream(this.snapshotFile)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a chest snapshot");
+            }
+            this.generation = in.readLong();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                int id = MChestCodec.readVarint(in);
+                codec.read(in, this.chestFor(id));
+            }
+        }
+    }
+
+    /**
+     * Applies the records of the journal file written after the snapshot,
+     * truncating a torn tail, and leaves the channel at the end of the last
+     * good record. A journal older than the snapshot is discarded.
+     *
+     * @throws IOException
+     *             if the journal cannot be read
+     */
+    private void replayJournal() throws IOException {
+        long size = this.channel.size();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        boolean current = false;
+        if (size >= HEADER_SIZE) {
+            this.channel.read(header, 0);
+            header.flip();
+            current = header.getInt() == MAGIC
+                    && header.getLong() == this.generation;
+        }
+        if (!current) {
+            this.resetJournal();
+            return;
+        }
+        ByteBuffer body = ByteBuffer.allocate((int) (size - HEADER_SIZE));
+        int read = 0;
+        while (read >= 0 && body.hasRemaining()) {
+            read = this.channel.read(body, HEADER_SIZE + body.position());
+        }
+        body.flip();
+        int good = 0;
+        while (this.applyRecord(body)) {
+            good = body.position();
+        }
+        this.channel.truncate(HEADER_SIZE + good);
+        this.channel.position(HEADER_SIZE + good);
+    }
+
+    /**
+     * Reads one record from {@code body} and applies it.
+     *
+     * @param body
+     *            the journal records
+     * @return false if {@code body} held no complete, intact record
+     */
+    private boolean applyRecord(ByteBuffer body) {
+        if (body.remaining() < LENGTH_SIZE + CRC_SIZE) {
+            return false;
+        }
+        int length = body.getInt();
+        if (length < 0 || length > body.remaining() - CRC_SIZE) {
+            return false;
+        }
+        this.crc.reset();
+        this.crc.update(body.array(), body.position(), length);
+        int checksum = body.getInt(body.position() + length);
+        if (checksum != (int) this.crc.getValue()) {
+            return false;
+        }
+        ByteBuffer record = body.slice();
+        record.limit(length);
+        body.position(body.position() + length + CRC_SIZE);
+        int type = record.get();
+        JournaledChest chest = this.chestFor(MChestCodec.getVarint(record));
+        String item = null;
+        if (type == ADD || type == DECREMENT) {
+            byte[] name = new byte[MChestCodec.getVarint(record)];
+            record.get(name);
+            item = new String(name, StandardCharsets.UTF_8);
+        }
+        if (type == ADD) {
+            chest.addItem(item, MChestCodec.getVarint(record));
+        } else if (type == DECREMENT) {
+            int quantity = MChestCodec.getVarint(record);
+            if (chest.containsItem(item)) {
+                chest.decrement(item, quantity);
+            }
+        } else if (type == CLEAR) {
+            chest.clear();
+        } else if (type == TRANSFER) {
+            chest.transferFrom(this.chestFor(MChestCodec.getVarint(record)));
+        }
+        return true;
+    }
+
+    /**
+     * Empties the journal file and writes a header for the current
+     * generation; the caller holds {@code ioLock} or is constructing.
+     *
+     * @throws IOException
+     *             if the file cannot be written
+     */
+    private void resetJournal() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putLong(this.generation).flip();
+        this.channel.truncate(0);
+        this.channel.write(header, 0);
+        this.channel.force(true);
+        this.channel.position(HEADER_SIZE);
+    }
+
+    /*
+     * Flushing and compaction ------------------------------------------------
+     */
+
+    /**
+     * Writes the pending batch to the journal file and forces it to disk;
+     * the caller holds {@code ioLock}.
+     *
+     * @throws IOException
+     *             if the file cannot be written
+     */
+    private void flushPending() throws IOException {
+        ByteArrayOutputStream batch;
+        synchronized (this.lock) {
+            batch = this.pending;
+            if (batch.size() == 0) {
+                return;
+            }
+            this.pending = new ByteArrayOutputStream();
+        }
+        ByteBuffer bytes = ByteBuffer.wrap(batch.toByteArray());
+        while (bytes.hasRemaining()) {
+            this.channel.write(bytes);
+        }
+        this.channel.force(false);
+    }
+
+    /**
+     * Writes a snapshot of every chest and starts an empty journal for the
+     * next generation; the caller holds {@code ioLock}.
+     *
+     * @throws IOException
+     *             if the files cannot be written
+     */
+    private void compactNow() throws IOException {
+        ByteArrayOutputStream snapshot = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(snapshot);
+        MChestCodec codec = new MChestCodec();
+        synchronized (this.lock) {
+            /*
+             * The snapshot includes every pending record, so the pending
+             * batch is dropped rather than written to the old journal.
+             */
+            this.generation++;
+            out.writeInt(MAGIC);
+            out.writeLong(this.generation);
+            int count = 0;
+            for (JournaledChest chest : this.chests.values()) {
+                if (chest.distinctItems() > 0) {
+                    count++;
+                }
+            }
+            out.writeInt(count);
+            for (JournaledChest chest : this.chests.values()) {
+                if (chest.distinctItems() > 0) {
+                    MChestCodec.writeVarint(out, chest.id);
+                    codec.write(chest, out);
+                }
+            }
+            this.pending = new ByteArrayOutputStream();
+        }
+        Path temp = this.snapshotFile
+                .resolveSibling(this.snapshotFile.getFileName() + ".tmp");
+        try (FileChannel file = FileChannel.open(temp,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer bytes = ByteBuffer.wrap(snapshot.toByteArray());
+            while (bytes.hasRemaining()) {
+                file.write(bytes);
+            }
+            file.force(true);
+        }
+        Files.move(temp, this.snapshotFile, StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+        this.resetJournal();
+    }
+
+    /**
+     * One flusher tick: writes the pending batch, and compacts the journal
+     * if it has grown too large. A failure stops the flusher, since the
+     * batch it was writing may be lost, and is rethrown by every later
+     * change, {@code sync}, {@code compact} and {@code close}.
+     */
+    private void tick() {
+        synchronized (this.ioLock) {
+            if (this.failure != null) {
+                return;
+            }
+            try {
+                this.flushPending();
+                if (this.channel.size() > this.compactBytes) {
+                    this.compactNow();
+                }
+            } catch (IOException e) {
+                this.failure = e;
+            }
+        }
+    }
+
+    /**
+     * Rethrows a failure of the flusher, if there was one; the caller holds
+     * {@code ioLock}.
+     *
+     * @throws IOException
+     *             the failure
+     */
+    private void checkFailure() throws IOException {
+        if (this.failure != null) {
+            throw new IOException("Journal flush failed", this.failure);
+        }
+    }
+
+    /**
+     * Writes every change made so far to the journal and forces it to disk,
+     * without waiting for the next tick.
+     *
+     * @throws IOException
+     *             if the journal cannot be written, now or in an earlier tick
+     */
+    public void sync() throws IOException {
+        synchronized (this.ioLock) {
+            this.checkFailure();
+            this.flushPending();
+        }
+    }
+
+    /**
+     * Writes a snapshot of every chest and empties the journal, without
+     * waiting for it to grow past the threshold.
+     *
+     * @throws IOException
+     *             if the files cannot be written, now or in an earlier tick
+     */
+    public void compact() throws IOException {
+        synchronized (this.ioLock) {
+            this.checkFailure();
+            this.compactNow();
+        }
+    }
+
+    /**
+     * Stops the flusher, writes every remaining change and closes the
+     * journal file. Chests obtained from the journal must not be changed
+     * afterwards.
+     *
+     * @throws IOException
+     *             if the journal cannot be written, now or in an earlier tick
+     */
+    @Override
+    public void close() throws IOException {
+        this.flusher.shutdown();
+        try {
+            this.flusher.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this.ioLock) {
+            try {
+                this.checkFailure();
+                this.flushPending();
+            } finally {
+                this.channel.close();
+            }
+        }
+    }
+}
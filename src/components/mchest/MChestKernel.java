@@ -1,5 +1,7 @@
 package components.mchest;
 
+import java.util.function.ObjIntConsumer;
+
 import components.map.Map;
 import components.standard.Standard;
 
@@ -39,6 +41,24 @@ public interface MChestKernel extends Standard<MChest> {
      */
     Map.Pair<String, Integer> removeItem(String item, int quantity);
 
+    /**
+     * Removes a specified quantity of an item from the chest, like
+     * {@code removeItem}, but reports only how many are left instead of
+     * building a pair. If {@code quantity} is at least the current quantity,
+     * the item is removed entirely.
+     *
+     * @param item
+     *            the name of the item to remove
+     * @param quantity
+     *            the quantity of the item to remove
+     * @return the quantity of the item left in the chest
+     * @updates this
+     * @requires item is in the chest and quantity > 0
+     * @ensures decrement = max(#itemQuantity(item) - quantity, 0) and the
+     *          item is removed or updated correctly
+     */
+    int decrement(String item, int quantity);
+
     /**
      * Checks if the chest contains a specific item.
      *
@@ -64,4 +84,17 @@ public interface MChestKernel extends Standard<MChest> {
      * @return true if the chest is full, false otherwise
      */
     boolean isFull();
+
+    /**
+     * Calls {@code action} once for every item in the chest, with the item's
+     * name and quantity, in no particular order. Unlike {@code getItems}, no
+     * copy of the chest is made. {@code action} must not modify the chest.
+     *
+     * @param action
+     *            the action to call for each item
+     * @requires action != null and action does not modify this
+     * @ensures action has been called exactly once for every (name, quantity)
+     *          entry of this
+     */
+    void forEachItem(ObjIntConsumer<String> action);
 }
@@ -0,0 +1,33 @@
+package components.mchest;
+
+/**
+ * Receives a call for every change to the quantity of an item in a chest it
+ * is registered with. A quantity of 0 means the item is not in the chest, so
+ * {@code oldQuantity = 0} is an item being added and {@code newQuantity = 0}
+ * one being removed.
+ *
+ * <p>
+ * Listeners are called synchronously by the mutating method, after the chest
+ * has been updated, and must not modify the chest.
+ * </p>
+ *
+ * @author Yuvraj Atre
+ */
+@FunctionalInterface
+public interface MChestListener {
+
+    /**
+     * Reports that the quantity of {@code item} in {@code chest} changed.
+     *
+     * @param chest
+     *            the chest that changed
+     * @param item
+     *            the item name
+     * @param oldQuantity
+     *            the quantity before the change
+     * @param newQuantity
+     *            the quantity after the change
+     */
+    void itemChanged(MChest chest, String item, int oldQuantity,
+            int newQuantity);
+}
@@ -0,0 +1,290 @@
+package components.mchest;
+
+import java.util.function.ObjIntConsumer;
+
+import components.map.Map;
+
+/**
+ * {@code MChestOnArena} represents a Minecraft chest as a handle into an
+ * {@code MChestArena}, which keeps the chest's item IDs and quantities
+ * off-heap. The object itself holds only the arena and an {@code int}
+ * handle, so millions of small chests cost the garbage collector almost
+ * nothing. Items are found by a linear scan of the chest's slots, which is
+ * fast for the handful of distinct items most chests hold.
+ *
+ * <p>
+ * A chest in a shared arena that is no longer needed should be
+ * {@link #release()}d so its handle and slots can be reused; the arena's
+ * {@code compact} then reclaims the space. A chest made with the no-argument
+ * constructor has an arena of its own, which is reclaimed with the chest.
+ * </p>
+ *
+ * @convention <pre>
+ * $this.handle is a live handle of $this.arena and
+ * the slots of $this.handle hold distinct item IDs with quantities > 0 and
+ * $this.arena.total($this.handle) = sum of those quantities
+ * </pre>
+ * @correspondence <pre>
+ * this = {(ItemRegistry.shared().name(id), quantity):
+ *         (id, quantity) is a used slot of $this.handle in $this.arena}
+ * </pre>
+ *
+ * @author Yuvraj Atre
+ */
+public class MChestOnArena extends MChestSecondary {
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * The arena holding the chest's contents.
+     */
+    private final MChestArena arena;
+
+    /**
+     * The chest's handle in {@code arena}.
+     */
+    private final int handle;
+
+    /**
+     * Whether {@code arena} was created for this chest alone.
+     */
+    private final boolean ownArena;
+
+    /*
+     * Constructors -----------------------------------------------------------
+     */
+
+    /**
+     * No-argument constructor that initializes an empty chest in an arena of
+     * its own. Since arenas are not thread-safe, chests only share one when
+     * the caller passes it in explicitly.
+     *
+     * @ensures this = {}
+     */
+    public MChestOnArena() {
+        this.arena = new MChestArena();
+        this.handle = this.arena.allocate();
+        this.ownArena = true;
+    }
+
+    /**
+     * Constructor that initializes an empty chest in {@code arena}.
+     *
+     * @param arena
+     *            the arena to keep the chest's contents in
+     * @requires arena != null
+     * @ensures this = {}
+     */
+    public MChestOnArena(MChestArena arena) {
+        assert arena != null : "Violation of: arena is not null";
+        this.arena = arena;
+        this.handle = arena.allocate();
+        this.ownArena = false;
+    }
+
+    /**
+     * Frees the chest's slots in its arena. The chest must not be used
+     * afterwards.
+     */
+    public void release() {
+        this.arena.free(this.handle);
+    }
+
+    /*
+     * Kernel methods ---------------------------------------------------------
+     */
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void addItem(String item, int quantity) {
+        assert item != null : "Violation of: item is not null";
+        this.addItem(ItemRegistry.shared().idOf(item), quantity);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map.Pair<String, Integer> removeItem(String item, int quantity) {
+        assert item != null : "Violation of: item is not null";
+        assert this.containsItem(item) : "Violation of: item is in the chest";
+        return this.removeItem(ItemRegistry.shared().find(item), quantity);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int decrement(String item, int quantity) {
+        assert item != null : "Violation of: item is not null";
+        assert quantity > 0 : "Violation of: quantity > 0";
+        assert this.containsItem(item) : "Violation of: item is in the chest";
+
+        int slot = this.arena.find(this.handle,
+                ItemRegistry.shared().find(item));
+        return this.arena.decrementSlot(this.handle, slot, quantity);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean containsItem(String item) {
+        assert item != null : "Violation of: item is not null";
+        int itemId = ItemRegistry.shared().find(item);
+        return itemId >= 0 && this.containsItem(itemId);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int itemQuantity(String item) {
+        assert item != null : "Violation of: item is not null";
+        int itemId = ItemRegistry.shared().find(item);
+        int quantity = 0;
+        if (itemId >= 0) {
+            quantity = this.itemQuantity(itemId);
+        }
+        return quantity;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isFull() {
+        return this.arena.total(this.handle) >= CapacityPolicy.LEGACY_ITEMS;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void clear() {
+        this.arena.clear(this.handle);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void forEachItem(ObjIntConsumer<String> action) {
+        assert action != null : "Violation of: action is not null";
+        ItemRegistry registry = ItemRegistry.shared();
+        for (int slot = 0; slot < this.arena.size(this.handle); slot++) {
+            action.accept(registry.name(this.arena.itemAt(this.handle, slot)),
+                    this.arena.countAt(this.handle, slot));
+        }
+    }
+
+    /*
+     * Secondary methods overridden for efficiency ----------------------------
+     */
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void addItem(int itemId, int quantity) {
+        assert itemId >= 0 : "Violation of: itemId is registered";
+        assert quantity > 0 : "Violation of: quantity > 0";
+        this.arena.add(this.handle, itemId, quantity);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map.Pair<String, Integer> removeItem(int itemId, int quantity) {
+        assert quantity > 0 : "Violation of: quantity > 0";
+        assert this.containsItem(itemId) : "Violation of: item is in the chest";
+
+        int slot = this.arena.find(this.handle, itemId);
+        int current = this.arena.countAt(this.handle, slot);
+        int remaining = this.arena.decrementSlot(this.handle, slot, quantity);
+        return new ItemPair(ItemRegistry.shared().name(itemId),
+                current - remaining);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean containsItem(int itemId) {
+        assert itemId >= 0 : "Violation of: itemId is registered";
+        return this.arena.find(this.handle, itemId) >= 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int itemQuantity(int itemId) {
+        assert itemId >= 0 : "Violation of: itemId is registered";
+        int slot = this.arena.find(this.handle, itemId);
+        int quantity = 0;
+        if (slot >= 0) {
+            quantity = this.arena.countAt(this.handle, slot);
+        }
+        return quantity;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int totalItems() {
+        return this.arena.total(this.handle);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int distinctItems() {
+        return this.arena.size(this.handle);
+    }
+
+    // Implementing Standard<MChest> methods
+
+    // CHECKSTYLE: ALLOW THIS METHOD TO BE OVERRIDDEN
+    @Override
+    public MChest newInstance() {
+        if (this.ownArena) {
+            return new MChestOnArena();
+        }
+        return new MChestOnArena(this.arena);
+    }
+
+    // CHECKSTYLE: ALLOW THIS METHOD TO BE OVERRIDDEN
+    @Override
+    public void transferFrom(MChest other) {
+        assert other != null : "Violation of: other chest is not null";
+        MChestOnArena localSource = (MChestOnArena) other;
+        if (localSource.arena == this.arena) {
+            this.arena.move(this.handle, localSource.handle);
+        } else {
+            this.arena.clear(this.handle);
+            MChestArena from = localSource.arena;
+            for (int slot = 0; slot < from.size(localSource.handle); slot++) {
+                this.arena.add(this.handle,
+                        from.itemAt(localSource.handle, slot),
+                        from.countAt(localSource.handle, slot));
+            }
+            from.clear(localSource.handle);
+        }
+    }
+
+    // Implementing Comparable<MChest> method
+
+    // CHECKSTYLE: ALLOW THIS METHOD TO BE OVERRIDDEN
+    @Override
+    public int compareTo(MChest other) {
+        return Integer.compare(this.totalItems(), other.totalItems());
+    }
+}
@@ -0,0 +1,353 @@
+package components.mchest;
+
+import java.util.function.ObjIntConsumer;
+
+import components.map.Map;
+
+/**
+ * {@code MChestOnIntTable} represents a Minecraft chest using an
+ * open-addressing hash table with linear probing, where item names live in a
+ * {@code String[]} and their quantities in a parallel {@code int[]}. Adding to
+ * or removing from an existing item updates its count in place with a single
+ * probe and no boxing.
+ *
+ * @convention <pre>
+ * |$this.keys| = |$this.counts| and |$this.keys| is a power of 2 and
+ * $this.size = number of non-null entries in $this.keys and
+ * $this.size <= |$this.keys| * 3 / 4 and
+ * for all i where $this.keys[i] != null
+ *   ($this.counts[i] > 0 and
+ *    $this.keys[i] is reachable from its home slot by linear probing
+ *    without crossing a null entry) and
+ * for all i where $this.keys[i] = null  ($this.counts[i] = 0) and
+ * no item name appears twice in $this.keys and
+ * $this.total = sum of $this.counts
+ * </pre>
+ * @correspondence <pre>
+ * this = {(x, y): there is i with $this.keys[i] = x and $this.counts[i] = y}
+ * </pre>
+ *
+ * @author Yuvraj Atre
+ */
+public class MChestOnIntTable extends MChestSecondary {
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * Initial number of slots; must be a power of 2.
+     */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * Maximum number of slots.
+     */
+    private static final int MAX_CAPACITY = 1 << 30;
+
+    /**
+     * Item names, or {@code null} for an empty slot.
+     */
+    private String[] keys;
+
+    /**
+     * Quantity of the item in the matching slot of {@code keys}.
+     */
+    private int[] counts;
+
+    /**
+     * Number of occupied slots.
+     */
+    private int size;
+
+    /**
+     * Running sum of all quantities in {@code counts}.
+     */
+    private int total;
+
+    /**
+     * Creator of initial representation.
+     */
+    private void createNewRep() {
+        this.keys = new String[INITIAL_CAPACITY];
+        this.counts = new int[INITIAL_CAPACITY];
+        this.size = 0;
+        this.total = 0;
+    }
+
+    /**
+     * Returns the home slot of {@code item} in a table of the given length.
+     *
+     * @param item
+     *            the item name
+     * @param length
+     *            the table length, a power of 2
+     * @return the home slot of {@code item}
+     */
+    private static int homeSlot(String item, int length) {
+        final int halfWord = 16;
+        int h = item.hashCode();
+        return (h ^ (h >>> halfWord)) & (length - 1);
+    }
+
+    /**
+     * Returns the slot holding {@code item}, or the empty slot where it would
+     * be inserted if it is not in the table.
+     *
+     * @param item
+     *            the item name
+     * @return the slot for {@code item}
+     */
+    private int probe(String item) {
+        int mask = this.keys.length - 1;
+        int i = homeSlot(item, this.keys.length);
+        while (this.keys[i] != null && !this.keys[i].equals(item)) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    /**
+     * Doubles the table, rehashing every entry.
+     */
+    private void grow() {
+        assert this.keys.length < MAX_CAPACITY : "Violation of: table can grow";
+        String[] oldKeys = this.keys;
+        int[] oldCounts = this.counts;
+        this.keys = new String[oldKeys.length * 2];
+        this.counts = new int[oldKeys.length * 2];
+        int mask = this.keys.length - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldKeys[j] != null) {
+                int i = homeSlot(oldKeys[j], this.keys.length);
+                while (this.keys[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                this.keys[i] = oldKeys[j];
+                this.counts[i] = oldCounts[j];
+            }
+        }
+    }
+
+    /**
+     * Empties slot {@code i} and shifts later entries of the same probe run
+     * back so that no lookup ever has to skip over a deleted slot.
+     *
+     * @param i
+     *            the slot to empty
+     */
+    private void deleteSlot(int i) {
+        int mask = this.keys.length - 1;
+        int hole = i;
+        this.keys[hole] = null;
+        this.counts[hole] = 0;
+        int j = (hole + 1) & mask;
+        while (this.keys[j] != null) {
+            int home = homeSlot(this.keys[j], this.keys.length);
+            boolean homeInRange;
+            if (hole <= j) {
+                homeInRange = hole < home && home <= j;
+            } else {
+                homeInRange = hole < home || home <= j;
+            }
+            if (!homeInRange) {
+                this.keys[hole] = this.keys[j];
+                this.counts[hole] = this.counts[j];
+                this.keys[j] = null;
+                this.counts[j] = 0;
+                hole = j;
+            }
+            j = (j + 1) & mask;
+        }
+        this.size--;
+    }
+
+    /**
+     * Removes up to {@code quantity} from the item in slot {@code i}, emptying
+     * the slot if nothing is left.
+     *
+     * @param i
+     *            an occupied slot
+     * @param quantity
+     *            the quantity to remove
+     * @return the quantity left in the chest
+     */
+    private int decrementSlot(int i, int quantity) {
+        int remaining = 0;
+        if (this.counts[i] <= quantity) {
+            this.total -= this.counts[i];
+            this.deleteSlot(i);
+        } else {
+            this.counts[i] -= quantity;
+            this.total -= quantity;
+            remaining = this.counts[i];
+        }
+        return remaining;
+    }
+
+    /*
+     * Constructors -----------------------------------------------------------
+     */
+
+    /**
+     * No-argument constructor that initializes an empty chest.
+     *
+     * @ensures this = {}
+     */
+    public MChestOnIntTable() {
+        this.createNewRep();
+    }
+
+    /*
+     * Kernel methods ---------------------------------------------------------
+     */
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void addItem(String item, int quantity) {
+        assert item != null : "Violation of: item is not null";
+        assert quantity > 0 : "Violation of: quantity > 0";
+
+        int i = this.probe(item);
+        if (this.keys[i] == null) {
+            this.keys[i] = item;
+            this.counts[i] = quantity;
+            this.size++;
+            final int loadNumerator = 3;
+            final int loadDenominator = 4;
+            if (this.size * loadDenominator > this.keys.length
+                    * loadNumerator) {
+                this.grow();
+            }
+        } else {
+            this.counts[i] += quantity;
+        }
+        this.total += quantity;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map.Pair<String, Integer> removeItem(String item, int quantity) {
+        assert item != null : "Violation of: item is not null";
+        assert quantity > 0 : "Violation of: quantity > 0";
+        assert this.containsItem(item) : "Violation of: item is in the chest";
+
+        int i = this.probe(item);
+        int currentQuantity = this.counts[i];
+        int remaining = this.decrementSlot(i, quantity);
+
+        return new ItemPair(item, currentQuantity - remaining);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int decrement(String item, int quantity) {
+        assert item != null : "Violation of: item is not null";
+        assert quantity > 0 : "Violation of: quantity > 0";
+        assert this.containsItem(item) : "Violation of: item is in the chest";
+
+        return this.decrementSlot(this.probe(item), quantity);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean containsItem(String item) {
+        assert item != null : "Violation of: item is not null";
+        return this.keys[this.probe(item)] != null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int itemQuantity(String item) {
+        assert item != null : "Violation of: item is not null";
+        return this.counts[this.probe(item)];
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int totalItems() {
+        return this.total;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int distinctItems() {
+        return this.size;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isFull() {
+        return this.total >= CapacityPolicy.LEGACY_ITEMS;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void clear() {
+        this.createNewRep();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void forEachItem(ObjIntConsumer<String> action) {
+        assert action != null : "Violation of: action is not null";
+        for (int i = 0; i < this.keys.length; i++) {
+            if (this.keys[i] != null) {
+                action.accept(this.keys[i], this.counts[i]);
+            }
+        }
+    }
+
+    // Implementing Standard<MChest> methods
+
+    // CHECKSTYLE: ALLOW THIS METHOD TO BE OVERRIDDEN
+    @Override
+    public MChest newInstance() {
+        try {
+            return this.getClass().getConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new AssertionError(
+                    "Cannot construct object of type " + this.getClass());
+        }
+    }
+
+    // CHECKSTYLE: ALLOW THIS METHOD TO BE OVERRIDDEN
+    @Override
+    public void transferFrom(MChest other) {
+        assert other != null : "Violation of: other chest is not null";
+        MChestOnIntTable localSource = (MChestOnIntTable) other;
+        this.keys = localSource.keys;
+        this.counts = localSource.counts;
+        this.size = localSource.size;
+        this.total = localSource.total;
+        localSource.createNewRep();
+    }
+
+    // Implementing Comparable<MChest> method
+
+    // CHECKSTYLE: ALLOW THIS METHOD TO BE OVERRIDDEN
+    @Override
+    public int compareTo(MChest other) {
+        return Integer.compare(this.totalItems(), other.totalItems());
+    }
+}
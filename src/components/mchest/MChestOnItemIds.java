@@ -0,0 +1,278 @@
+package components.mchest;
+
+import java.util.function.ObjIntConsumer;
+
+import components.map.Map;
+
+/**
+ * {@code MChestOnItemIds} represents a Minecraft chest as a flat
+ * {@code int[]} of quantities indexed by the item IDs of
+ * {@code ItemRegistry.shared()}. The {@code int}-keyed methods are a single
+ * array access; the {@code String}-keyed methods look the name up in the
+ * registry first.
+ *
+ * <p>
+ * The array is as long as the largest item ID ever added, so this
+ * representation suits registries holding a few hundred names.
+ * </p>
+ *
+ * @convention <pre>
+ * for all i  ($this.counts[i] >= 0) and
+ * $this.total = sum of $this.counts and
+ * for all i where $this.counts[i] > 0  (i < ItemRegistry.shared().size())
+ * </pre>
+ * @correspondence <pre>
+ * this = {(ItemRegistry.shared().name(i), $this.counts[i]):
+ *         $this.counts[i] > 0}
+ * </pre>
+ *
+ * @author Yuvraj Atre
+ */
+public class MChestOnItemIds extends MChestSecondary {
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * Initial length of {@code counts}.
+     */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * Quantity of each item, indexed by item ID.
+     */
+    private int[] counts;
+
+    /**
+     * Running sum of all quantities in {@code counts}.
+     */
+    private int total;
+
+    /**
+     * Creator of initial representation.
+     */
+    private void createNewRep() {
+        this.counts = new int[INITIAL_CAPACITY];
+        this.total = 0;
+    }
+
+    /**
+     * Grows {@code counts} so that {@code itemId} is a valid index.
+     *
+     * @param itemId
+     *            the item ID to make room for
+     */
+    private void ensureCapacity(int itemId) {
+        if (itemId >= this.counts.length) {
+            int newLength = Math.max(itemId + 1, this.counts.length * 2);
+            int[] larger = new int[newLength];
+            System.arraycopy(this.counts, 0, larger, 0, this.counts.length);
+            this.counts = larger;
+        }
+    }
+
+    /*
+     * Constructors -----------------------------------------------------------
+     */
+
+    /**
+     * No-argument constructor that initializes an empty chest.
+     *
+     * @ensures this = {}
+     */
+    public MChestOnItemIds() {
+        this.createNewRep();
+    }
+
+    /*
+     * Kernel methods ---------------------------------------------------------
+     */
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void addItem(String item, int quantity) {
+        assert item != null : "Violation of: item is not null";
+        this.addItem(ItemRegistry.shared().idOf(item), quantity);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map.Pair<String, Integer> removeItem(String item, int quantity) {
+        assert item != null : "Violation of: item is not null";
+        assert this.containsItem(item) : "Violation of: item is in the chest";
+        return this.removeItem(ItemRegistry.shared().find(item), quantity);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int decrement(String item, int quantity) {
+        assert item != null : "Violation of: item is not null";
+        assert quantity > 0 : "Violation of: quantity > 0";
+        assert this.containsItem(item) : "Violation of: item is in the chest";
+
+        int itemId = ItemRegistry.shared().find(item);
+        int remaining = 0;
+        if (this.counts[itemId] <= quantity) {
+            this.total -= this.counts[itemId];
+            this.counts[itemId] = 0;
+        } else {
+            this.counts[itemId] -= quantity;
+            this.total -= quantity;
+            remaining = this.counts[itemId];
+        }
+        return remaining;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean containsItem(String item) {
+        assert item != null : "Violation of: item is not null";
+        int itemId = ItemRegistry.shared().find(item);
+        return itemId >= 0 && this.containsItem(itemId);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int itemQuantity(String item) {
+        assert item != null : "Violation of: item is not null";
+        int itemId = ItemRegistry.shared().find(item);
+        int quantity = 0;
+        if (itemId >= 0) {
+            quantity = this.itemQuantity(itemId);
+        }
+        return quantity;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isFull() {
+        return this.total >= CapacityPolicy.LEGACY_ITEMS;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void clear() {
+        this.createNewRep();
+    }
+
+    /*
+     * Secondary methods overridden for efficiency ----------------------------
+     */
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void addItem(int itemId, int quantity) {
+        assert itemId >= 0 : "Violation of: itemId is registered";
+        assert quantity > 0 : "Violation of: quantity > 0";
+
+        this.ensureCapacity(itemId);
+        this.counts[itemId] += quantity;
+        this.total += quantity;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map.Pair<String, Integer> removeItem(int itemId, int quantity) {
+        assert quantity > 0 : "Violation of: quantity > 0";
+        assert this.containsItem(itemId) : "Violation of: item is in the chest";
+
+        int removed = Math.min(this.counts[itemId], quantity);
+        this.counts[itemId] -= removed;
+        this.total -= removed;
+        return new ItemPair(ItemRegistry.shared().name(itemId), removed);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean containsItem(int itemId) {
+        assert itemId >= 0 : "Violation of: itemId is registered";
+        return itemId < this.counts.length && this.counts[itemId] > 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int itemQuantity(int itemId) {
+        assert itemId >= 0 : "Violation of: itemId is registered";
+        int quantity = 0;
+        if (itemId < this.counts.length) {
+            quantity = this.counts[itemId];
+        }
+        return quantity;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int totalItems() {
+        return this.total;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void forEachItem(ObjIntConsumer<String> action) {
+        assert action != null : "Violation of: action is not null";
+        ItemRegistry registry = ItemRegistry.shared();
+        for (int i = 0; i < this.counts.length; i++) {
+            if (this.counts[i] > 0) {
+                action.accept(registry.name(i), this.counts[i]);
+            }
+        }
+    }
+
+    // Implementing Standard<MChest> methods
+
+    // CHECKSTYLE: ALLOW THIS METHOD TO BE OVERRIDDEN
+    @Override
+    public MChest newInstance() {
+        try {
+            return this.getClass().getConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new AssertionError(
+                    "Cannot construct object of type " + this.getClass());
+        }
+    }
+
+    // CHECKSTYLE: ALLOW THIS METHOD TO BE OVERRIDDEN
+    @Override
+    public void transferFrom(MChest other) {
+        assert other != null : "Violation of: other chest is not null";
+        MChestOnItemIds localSource = (MChestOnItemIds) other;
+        this.counts = localSource.counts;
+        this.total = localSource.total;
+        localSource.createNewRep();
+    }
+
+    // Implementing Comparable<MChest> method
+
+    // CHECKSTYLE: ALLOW THIS METHOD TO BE OVERRIDDEN
+    @Override
+    public int compareTo(MChest other) {
+        return Integer.compare(this.totalItems(), other.totalItems());
+    }
+}
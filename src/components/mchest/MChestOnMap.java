@@ -1,5 +1,8 @@
 package components.mchest;
 
+import java.util.function.ObjIntConsumer;
+
+import components.list.List;
 import components.map.Map;
 import components.map.Map2;
 import components.map.Map.Pair;
@@ -10,12 +13,49 @@ import components.map.Map.Pair;
  * quantities. This class implements the primary methods for managing items in
  * the chest.
  *
+ * <p>
+ * A chest constructed with {@code new MChestOnMap(true)} also keeps a
+ * {@code QuantityIndex} ordered by quantity, so {@code getItemsByQuantity},
+ * {@code getItemsByQuantityAtMost}, {@code topItems} and {@code bottomItems}
+ * only visit the items they return. The index costs O(log n) per change, so
+ * it is off by default.
+ * </p>
+ *
+ * <p>
+ * The chest also keeps its hash code up to date on every change, so
+ * {@code hashCode} is O(1) and {@code equals} between two
+ * {@code MChestOnMap}s rejects most unequal chests without comparing entries.
+ * </p>
+ *
+ * <p>
+ * How much the chest holds is decided by its {@code CapacityPolicy}, the
+ * legacy 1000-item limit unless one is passed to the constructor. The chest
+ * keeps its used slots and weight up to date on every change, so
+ * {@code isFull} and {@code remainingCapacity} are O(1).
+ * </p>
+ *
+ * <p>
+ * Every change to an item's quantity, including those made by {@code clear}
+ * and {@code transferFrom}, is reported to the chest's
+ * {@code MChestListener}s. Listeners are not part of the chest's value: they
+ * are not copied by {@code newInstance} or moved by {@code transferFrom}.
+ * </p>
+ *
  * @convention <pre>
  * |$this.items| > 0 and
  * for all x: String, y: Integer in $this.items
  *   (x is the item name and y is the quantity)
  *   the map entries hold valid items and their quantities where
- *   x != null and y >= 0
+ *   x != null and y >= 0 and
+ * $this.total = sum of all quantities in $this.items and
+ * $this.hash = sum of (x.hashCode() XOR y) over all x, y in $this.items and
+ * $this.usedSlots = sum of ceiling(y / $this.policy.stackSize(x))
+ *   over all x, y in $this.items and
+ * $this.usedWeight = sum of y * $this.policy.weight(x)
+ *   over all x, y in $this.items and
+ * ($this.byQuantity = null iff not $this.indexed) and
+ * if $this.indexed then $this.byQuantity holds exactly the entries of
+ *   $this.items
  * </pre>
  * @correspondence <pre>
  * this = union of entries in $this.items where each entry represents
@@ -30,16 +70,181 @@ public class MChestOnMap extends MChestSecondary {
      * Private members --------------------------------------------------------
      */
 
+    /**
+     * Listeners of a chest nobody is listening to.
+     */
+    private static final MChestListener[] NO_LISTENERS = {};
+
     /**
      * Represents the chest's contents as a map of item names to quantities.
      */
     private Map<String, Integer> items;
 
+    /**
+     * Running sum of all quantities in {@code items}, kept up to date by every
+     * mutator so {@code totalItems} and {@code isFull} never scan the map.
+     */
+    private int total;
+
+    /**
+     * Sum of {@code name.hashCode() ^ quantity} over all entries of
+     * {@code items}, which is the value {@code MChestSecondary.hashCode}
+     * computes, kept up to date by every mutator.
+     */
+    private int hash;
+
+    /**
+     * Decides how much the chest can hold.
+     */
+    private final CapacityPolicy policy;
+
+    /**
+     * Number of slots the chest's stacks take up under {@code policy}.
+     */
+    private int usedSlots;
+
+    /**
+     * Total weight of the chest's items under {@code policy}.
+     */
+    private long usedWeight;
+
+    /**
+     * Listeners told about every change; replaced, never modified, so a
+     * listener may add or remove listeners while being called. Volatile,
+     * and only replaced while holding this chest's monitor, so listeners can
+     * be added and removed from any thread.
+     */
+    private volatile MChestListener[] listeners = NO_LISTENERS;
+
+    /**
+     * Whether this chest keeps a quantity index.
+     */
+    private final boolean indexed;
+
+    /**
+     * The items ordered by quantity, or {@code null} if not {@code indexed}.
+     */
+    private QuantityIndex byQuantity;
+
     /**
      * Creator of initial representation.
      */
     private void createNewRep() {
         this.items = new Map2<>();
+        this.total = 0;
+        this.hash = 0;
+        this.usedSlots = 0;
+        this.usedWeight = 0;
+        if (this.indexed) {
+            this.byQuantity = new QuantityIndex();
+        }
+    }
+
+    /**
+     * Updates the derived state after the quantity of {@code item} changed
+     * from {@code oldQuantity} to {@code newQuantity} in {@code items}; a
+     * quantity of 0 means the item is not in the chest. Every mutator calls
+     * this once per changed item.
+     *
+     * @param item
+     *            the item name
+     * @param oldQuantity
+     *            the quantity before the change
+     * @param newQuantity
+     *            the quantity after the change
+     */
+    private void itemChanged(String item, int oldQuantity, int newQuantity) {
+        this.total += newQuantity - oldQuantity;
+        int stack = this.policy.stackSize(item);
+        this.usedSlots += slots(newQuantity, stack) - slots(oldQuantity, stack);
+        this.usedWeight += (long) (newQuantity - oldQuantity)
+                * this.policy.weight(item);
+        int itemHash = item.hashCode();
+        if (oldQuantity > 0) {
+            this.hash -= itemHash ^ oldQuantity;
+        }
+        if (newQuantity > 0) {
+            this.hash += itemHash ^ newQuantity;
+        }
+        if (this.indexed) {
+            this.byQuantity.update(item, oldQuantity, newQuantity);
+        }
+        this.fireItemChanged(item, oldQuantity, newQuantity);
+    }
+
+    /**
+     * Tells every listener that the quantity of {@code item} changed.
+     *
+     * @param item
+     *            the item name
+     * @param oldQuantity
+     *            the quantity before the change
+     * @param newQuantity
+     *            the quantity after the change
+     */
+    private void fireItemChanged(String item, int oldQuantity,
+            int newQuantity) {
+        for (MChestListener listener : this.listeners) {
+            listener.itemChanged(this, item, oldQuantity, newQuantity);
+        }
+    }
+
+    /**
+     * Tells every listener that the contents changed from {@code before} to
+     * the current {@code items}.
+     *
+     * @param before
+     *            the contents before the change
+     */
+    private void fireContentsChanged(Map<String, Integer> before) {
+        if (this.listeners.length > 0) {
+            for (Pair<String, Integer> pair : before) {
+                int now = 0;
+                if (this.items.hasKey(pair.key())) {
+                    now = this.items.value(pair.key());
+                }
+                if (now != pair.value()) {
+                    this.fireItemChanged(pair.key(), pair.value(), now);
+                }
+            }
+            for (Pair<String, Integer> pair : this.items) {
+                if (!before.hasKey(pair.key())) {
+                    this.fireItemChanged(pair.key(), 0, pair.value());
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the number of slots {@code quantity} items take up when they
+     * stack to {@code stack}.
+     *
+     * @param quantity
+     *            the number of items
+     * @param stack
+     *            the stack size
+     * @return ceiling(quantity / stack)
+     */
+    private static int slots(int quantity, int stack) {
+        int slots = 0;
+        if (quantity > 0) {
+            slots = (quantity - 1) / stack + 1;
+        }
+        return slots;
+    }
+
+    /**
+     * Recomputes {@code usedSlots} and {@code usedWeight} from {@code items}.
+     */
+    private void recomputeUsage() {
+        this.usedSlots = 0;
+        this.usedWeight = 0;
+        for (Pair<String, Integer> pair : this.items) {
+            this.usedSlots += slots(pair.value(),
+                    this.policy.stackSize(pair.key()));
+            this.usedWeight += (long) pair.value()
+                    * this.policy.weight(pair.key());
+        }
     }
 
     /*
@@ -52,9 +257,101 @@ public class MChestOnMap extends MChestSecondary {
      * @ensures this = {}
      */
     public MChestOnMap() {
+        this(false);
+    }
+
+    /**
+     * Constructor that initializes an empty chest, with a quantity index if
+     * {@code indexed} is true.
+     *
+     * @param indexed
+     *            whether to keep a quantity index
+     * @ensures this = {}
+     */
+    public MChestOnMap(boolean indexed) {
+        this(indexed, CapacityPolicy.legacy());
+    }
+
+    /**
+     * Constructor that initializes an empty chest whose capacity is decided
+     * by {@code policy}.
+     *
+     * @param policy
+     *            the capacity policy
+     * @requires policy != null
+     * @ensures this = {}
+     */
+    public MChestOnMap(CapacityPolicy policy) {
+        this(false, policy);
+    }
+
+    /**
+     * Constructor that initializes an empty chest whose capacity is decided
+     * by {@code policy}, with a quantity index if {@code indexed} is true.
+     *
+     * @param indexed
+     *            whether to keep a quantity index
+     * @param policy
+     *            the capacity policy
+     * @requires policy != null
+     * @ensures this = {}
+     */
+    public MChestOnMap(boolean indexed, CapacityPolicy policy) {
+        assert policy != null : "Violation of: policy is not null";
+        this.indexed = indexed;
+        this.policy = policy;
         this.createNewRep();
     }
 
+    /**
+     * Registers {@code listener} to be told about every change to the
+     * chest's items.
+     *
+     * @param listener
+     *            the listener to add
+     * @requires listener != null
+     */
+    public final synchronized void addListener(MChestListener listener) {
+        assert listener != null : "Violation of: listener is not null";
+        MChestListener[] old = this.listeners;
+        MChestListener[] more = new MChestListener[old.length + 1];
+        System.arraycopy(old, 0, more, 0, old.length);
+        more[old.length] = listener;
+        this.listeners = more;
+    }
+
+    /**
+     * Unregisters one registration of {@code listener}, if there is one.
+     *
+     * @param listener
+     *            the listener to remove
+     * @requires listener != null
+     */
+    public final synchronized void removeListener(MChestListener listener) {
+        assert listener != null : "Violation of: listener is not null";
+        MChestListener[] old = this.listeners;
+        int index = old.length - 1;
+        while (index >= 0 && old[index] != listener) {
+            index--;
+        }
+        if (index >= 0) {
+            MChestListener[] fewer = new MChestListener[old.length - 1];
+            System.arraycopy(old, 0, fewer, 0, index);
+            System.arraycopy(old, index + 1, fewer, index,
+                    fewer.length - index);
+            this.listeners = fewer;
+        }
+    }
+
+    /**
+     * Returns the policy deciding how much this chest can hold.
+     *
+     * @return the capacity policy
+     */
+    public final CapacityPolicy capacityPolicy() {
+        return this.policy;
+    }
+
     /*
      * Kernel methods ---------------------------------------------------------
      */
@@ -67,13 +364,14 @@ public class MChestOnMap extends MChestSecondary {
         assert item != null : "Violation of: item is not null";
         assert quantity > 0 : "Violation of: quantity > 0";
 
+        int currentQty = 0;
         if (this.items.hasKey(item)) {
-            int currentQty = this.items.value(item);
-            this.items.remove(item);
-            this.items.add(item, currentQty + quantity);
+            currentQty = this.items.value(item);
+            this.items.replaceValue(item, currentQty + quantity);
         } else {
             this.items.add(item, quantity);
         }
+        this.itemChanged(item, currentQty, currentQty + quantity);
     }
 
     /**
@@ -85,20 +383,33 @@ public class MChestOnMap extends MChestSecondary {
         assert quantity > 0 : "Violation of: quantity > 0";
         assert this.containsItem(item) : "Violation of: item is in the chest";
 
-        int currentQuantity = this.itemQuantity(item);
-        Map.Pair<String, Integer> removedPair;
+        int currentQuantity = this.items.value(item);
+        int remaining = this.decrement(item, quantity);
+
+        return new ItemPair(item, currentQuantity - remaining);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int decrement(String item, int quantity) {
+        assert item != null : "Violation of: item is not null";
+        assert quantity > 0 : "Violation of: quantity > 0";
+        assert this.containsItem(item) : "Violation of: item is in the chest";
+
+        int currentQuantity = this.items.value(item);
+        int remaining = 0;
 
         if (currentQuantity <= quantity) {
-            removedPair = this.items.remove(item); // Fully remove the item
+            this.items.remove(item); // Fully remove the item
         } else {
-            Map.Pair<String, Integer> originalPair = this.items.remove(item);
-            this.items.add(originalPair.key(), currentQuantity - quantity);
-            Map<String, Integer> tempMap = new Map2<>();
-            tempMap.add(originalPair.key(), quantity);
-            removedPair = tempMap.remove(originalPair.key());
+            remaining = currentQuantity - quantity;
+            this.items.replaceValue(item, remaining);
         }
+        this.itemChanged(item, currentQuantity, remaining);
 
-        return removedPair;
+        return remaining;
     }
 
     /**
@@ -123,13 +434,59 @@ public class MChestOnMap extends MChestSecondary {
         }
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int totalItems() {
+        return this.total;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int distinctItems() {
+        return this.items.size();
+    }
+
     /**
      * {@inheritDoc}
      */
     @Override
     public boolean isFull() {
-        final int thousand = 1000;
-        return this.totalItems() >= thousand;
+        return this.usedSlots >= this.policy.slotLimit()
+                || this.usedWeight >= this.policy.weightLimit();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int remainingCapacity(String item) {
+        assert item != null : "Violation of: item is not null";
+        long room = CapacityPolicy.UNLIMITED;
+        int weight = this.policy.weight(item);
+        int weightLimit = this.policy.weightLimit();
+        if (weightLimit != CapacityPolicy.UNLIMITED && weight > 0) {
+            room = Math.max(0, (weightLimit - this.usedWeight) / weight);
+        }
+        int slotLimit = this.policy.slotLimit();
+        if (slotLimit != CapacityPolicy.UNLIMITED) {
+            int stack = this.policy.stackSize(item);
+            int quantity = this.itemQuantity(item);
+            long freeSlots = Math.max(0, slotLimit - this.usedSlots);
+            if (stack != CapacityPolicy.UNLIMITED) {
+                long partial = 0;
+                if (quantity % stack != 0) {
+                    partial = stack - quantity % stack;
+                }
+                room = Math.min(room, freeSlots * stack + partial);
+            } else if (quantity == 0 && freeSlots == 0) {
+                room = 0;
+            }
+        }
+        return (int) Math.min(room, CapacityPolicy.UNLIMITED);
     }
 
     /**
@@ -137,19 +494,141 @@ public class MChestOnMap extends MChestSecondary {
      */
     @Override
     public void clear() {
+        Map<String, Integer> before = this.items;
         this.createNewRep(); // Reset the chest to an empty state
+        this.fireContentsChanged(before);
     }
 
     /**
      * {@inheritDoc}
      */
     @Override
-    public Map<String, Integer> getItems() {
-        Map<String, Integer> copy = new Map2<>();
+    public boolean fits(Map<String, Integer> batch) {
+        assert batch != null : "Violation of: batch is not null";
+        long slots = this.usedSlots;
+        long weight = this.usedWeight;
+        for (Pair<String, Integer> pair : batch) {
+            assert pair.value() > 0 : "Violation of: quantity > 0";
+            int quantity = this.itemQuantity(pair.key());
+            int stack = this.policy.stackSize(pair.key());
+            slots += slots(quantity + pair.value(), stack)
+                    - slots(quantity, stack);
+            weight += (long) pair.value() * this.policy.weight(pair.key());
+        }
+        return slots <= this.policy.slotLimit()
+                && weight <= this.policy.weightLimit();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean addAll(Map<String, Integer> batch) {
+        assert batch != null : "Violation of: batch is not null";
+        if (!this.fits(batch)) {
+            return false;
+        }
+        for (Pair<String, Integer> pair : batch) {
+            assert pair.value() > 0 : "Violation of: quantity > 0";
+            int currentQty = 0;
+            if (this.items.hasKey(pair.key())) {
+                currentQty = this.items.value(pair.key());
+                this.items.replaceValue(pair.key(), currentQty + pair.value());
+            } else {
+                this.items.add(pair.key(), pair.value());
+            }
+            this.itemChanged(pair.key(), currentQty,
+                    currentQty + pair.value());
+        }
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void forEachItem(ObjIntConsumer<String> action) {
+        assert action != null : "Violation of: action is not null";
         for (Pair<String, Integer> pair : this.items) {
-            copy.add(pair.key(), pair.value());
+            action.accept(pair.key(), pair.value());
         }
-        return copy;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<String> getItemsByQuantity(int minQuantity) {
+        assert minQuantity >= 0 : "minQuantity must be non-negative";
+        if (!this.indexed) {
+            return super.getItemsByQuantity(minQuantity);
+        }
+        return this.byQuantity.atLeast(minQuantity);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<String> getItemsByQuantityAtMost(int maxQuantity) {
+        assert maxQuantity >= 0 : "maxQuantity must be non-negative";
+        if (!this.indexed) {
+            return super.getItemsByQuantityAtMost(maxQuantity);
+        }
+        return this.byQuantity.atMost(maxQuantity);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<String> topItems(int n) {
+        assert n >= 0 : "n must be non-negative";
+        if (!this.indexed) {
+            return super.topItems(n);
+        }
+        return this.byQuantity.top(n);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<String> bottomItems(int n) {
+        assert n >= 0 : "n must be non-negative";
+        if (!this.indexed) {
+            return super.bottomItems(n);
+        }
+        return this.byQuantity.bottom(n);
+    }
+
+    // CHECKSTYLE: ALLOW THIS METHOD TO BE OVERRIDDEN
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof MChestOnMap)) {
+            return super.equals(obj);
+        }
+        MChestOnMap other = (MChestOnMap) obj;
+        if (other == this) {
+            return true;
+        }
+        if (this.hash != other.hash || this.total != other.total
+                || this.items.size() != other.items.size()) {
+            return false;
+        }
+        for (Pair<String, Integer> pair : this.items) {
+            if (!other.items.hasKey(pair.key()) || !other.items
+                    .value(pair.key()).equals(pair.value())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // CHECKSTYLE: ALLOW THIS METHOD TO BE OVERRIDDEN
+    @Override
+    public int hashCode() {
+        return this.hash;
     }
 
     // Implementing Standard<MChest> methods
@@ -158,6 +637,15 @@ public class MChestOnMap extends MChestSecondary {
     @Override
     public MChest newInstance() {
         try {
+            if (this.policy != CapacityPolicy.legacy()) {
+                return this.getClass()
+                        .getConstructor(boolean.class, CapacityPolicy.class)
+                        .newInstance(this.indexed, this.policy);
+            }
+            if (this.indexed) {
+                return this.getClass().getConstructor(boolean.class)
+                        .newInstance(true);
+            }
             return this.getClass().getConstructor().newInstance();
         } catch (ReflectiveOperationException e) {
             throw new AssertionError(
@@ -165,13 +653,44 @@ public class MChestOnMap extends MChestSecondary {
         }
     }
 
+    /**
+     * Empties this chest after {@code transferFrom} has given its contents to
+     * another chest. Subclasses that track changes override this to see the
+     * source side of a transfer, which no other overridden method does.
+     *
+     * @ensures this = {}
+     */
+    // CHECKSTYLE: ALLOW THIS METHOD TO BE OVERRIDDEN
+    protected void emptyAfterTransfer() {
+        this.createNewRep();
+    }
+
     // CHECKSTYLE: ALLOW THIS METHOD TO BE OVERRIDDEN
     @Override
     public void transferFrom(MChest other) {
         assert other != null : "Violation of: other chest is not null";
         MChestOnMap localSource = (MChestOnMap) other;
+        Map<String, Integer> before = this.items;
         this.items = localSource.items;
-        localSource.createNewRep(); // Reset the source chest
+        this.total = localSource.total;
+        this.hash = localSource.hash;
+        if (this.policy == localSource.policy) {
+            this.usedSlots = localSource.usedSlots;
+            this.usedWeight = localSource.usedWeight;
+        } else {
+            this.recomputeUsage();
+        }
+        if (this.indexed && localSource.indexed) {
+            this.byQuantity = localSource.byQuantity;
+        } else if (this.indexed) {
+            this.byQuantity = new QuantityIndex();
+            for (Pair<String, Integer> pair : this.items) {
+                this.byQuantity.update(pair.key(), 0, pair.value());
+            }
+        }
+        localSource.emptyAfterTransfer(); // Reset the source chest
+        this.fireContentsChanged(before);
+        localSource.fireContentsChanged(this.items);
     }
 
     // Implementing Comparable<MChest> method
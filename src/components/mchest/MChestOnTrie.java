@@ -0,0 +1,385 @@
+package components.mchest;
+
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.ObjIntConsumer;
+
+import components.map.Map;
+import components.map.Map.Pair;
+
+/**
+ * {@code MChestOnTrie} represents a Minecraft chest as a persistent hash trie
+ * ({@code ItemTrie}) from item names to quantities. Every change builds a new
+ * immutable version that shares all untouched nodes with the previous one,
+ * and publishes it with a single write to an {@code AtomicReference}.
+ *
+ * <p>
+ * Because versions never change, {@link #snapshot()} is O(1): it returns an
+ * immutable chest holding the current version, which the save thread, a
+ * renderer or an auditor can read for as long as it likes, from any thread,
+ * without locking and without blocking or being disturbed by later changes.
+ * {@code forEachItem}, and so {@code getItems}, {@code toString} and the
+ * other secondary methods built on it, also read a single version. The
+ * mutators are meant to be called from one thread at a time, such as the
+ * game loop; {@code addAll} and {@code removeAll} publish their whole batch
+ * as one version.
+ * </p>
+ *
+ * @convention <pre>
+ * $this.current.get() != null and, for its version v,
+ * v.root holds only quantities > 0 and
+ * v.size = number of items in v.root and
+ * v.total = sum of the quantities in v.root
+ * </pre>
+ * @correspondence <pre>
+ * this = {(x, y): ItemTrie.get($this.current.get().root, x) = y > 0}
+ * </pre>
+ *
+ * @author Yuvraj Atre
+ */
+public class MChestOnTrie extends MChestSecondary {
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * One immutable version of the chest.
+     */
+    private static final class Version {
+
+        /**
+         * The items, or {@code null} if there are none.
+         */
+        private final ItemTrie root;
+
+        /**
+         * Number of distinct items.
+         */
+        private final int size;
+
+        /**
+         * Sum of all quantities.
+         */
+        private final int total;
+
+        /**
+         * Constructs a version.
+         *
+         * @param root
+         *            the items
+         * @param size
+         *            the number of distinct items
+         * @param total
+         *            the sum of all quantities
+         */
+        Version(ItemTrie root, int size, int total) {
+            this.root = root;
+            this.size = size;
+            this.total = total;
+        }
+
+        /**
+         * Returns the quantity of {@code item}.
+         *
+         * @param item
+         *            the item name
+         * @return the quantity, or 0 if item is absent
+         */
+        int quantity(String item) {
+            return ItemTrie.get(this.root, item);
+        }
+
+        /**
+         * Returns this version with the quantity of {@code item} changed
+         * from {@code oldQuantity} to {@code newQuantity}.
+         *
+         * @param item
+         *            the item name
+         * @param oldQuantity
+         *            the current quantity of item, 0 if absent
+         * @param newQuantity
+         *            the new quantity, 0 to remove item
+         * @return the new version
+         */
+        Version with(String item, int oldQuantity, int newQuantity) {
+            ItemTrie newRoot;
+            int newSize = this.size;
+            if (newQuantity > 0) {
+                newRoot = ItemTrie.put(this.root, item, newQuantity);
+                if (oldQuantity == 0) {
+                    newSize++;
+                }
+            } else {
+                newRoot = ItemTrie.remove(this.root, item);
+                newSize--;
+            }
+            return new Version(newRoot, newSize,
+                    this.total + newQuantity - oldQuantity);
+        }
+    }
+
+    /**
+     * The version of an empty chest.
+     */
+    private static final Version EMPTY = new Version(null, 0, 0);
+
+    /**
+     * The current version.
+     */
+    private final AtomicReference<Version> current;
+
+    /**
+     * Whether this chest is a snapshot, which cannot be changed.
+     */
+    private final boolean frozen;
+
+    /**
+     * Creator of initial representation.
+     */
+    private void createNewRep() {
+        this.current.set(EMPTY);
+    }
+
+    /**
+     * Throws if this chest is a snapshot.
+     */
+    private void checkMutable() {
+        if (this.frozen) {
+            throw new UnsupportedOperationException(
+                    "MChest snapshot cannot be changed");
+        }
+    }
+
+    /**
+     * Publishes {@code next} as the current version.
+     *
+     * @param next
+     *            the new version
+     */
+    private void publish(Version next) {
+        this.current.set(next);
+    }
+
+    /*
+     * Constructors -----------------------------------------------------------
+     */
+
+    /**
+     * No-argument constructor that initializes an empty chest.
+     *
+     * @ensures this = {}
+     */
+    public MChestOnTrie() {
+        this.current = new AtomicReference<>();
+        this.frozen = false;
+        this.createNewRep();
+    }
+
+    /**
+     * Constructor of a snapshot holding {@code version}.
+     *
+     * @param version
+     *            the version to hold
+     */
+    private MChestOnTrie(Version version) {
+        this.current = new AtomicReference<>(version);
+        this.frozen = true;
+    }
+
+    /**
+     * Returns an immutable chest equal to this chest now. It shares this
+     * chest's current version, so it costs O(1), and later changes to this
+     * chest do not affect it. Its mutators throw
+     * {@code UnsupportedOperationException}.
+     *
+     * @return the snapshot
+     * @ensures snapshot = this
+     */
+    public MChest snapshot() {
+        MChest snapshot = this;
+        if (!this.frozen) {
+            snapshot = new MChestOnTrie(this.current.get());
+        }
+        return snapshot;
+    }
+
+    /*
+     * Kernel methods ---------------------------------------------------------
+     */
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void addItem(String item, int quantity) {
+        assert item != null : "Violation of: item is not null";
+        assert quantity > 0 : "Violation of: quantity > 0";
+        this.checkMutable();
+        Version version = this.current.get();
+        int oldQuantity = version.quantity(item);
+        this.publish(version.with(item, oldQuantity, oldQuantity + quantity));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map.Pair<String, Integer> removeItem(String item, int quantity) {
+        assert item != null : "Violation of: item is not null";
+        assert quantity > 0 : "Violation of: quantity > 0";
+        assert this.containsItem(item) : "Violation of: item is in the chest";
+        int currentQuantity = this.current.get().quantity(item);
+        int remaining = this.decrement(item, quantity);
+        return new ItemPair(item, currentQuantity - remaining);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int decrement(String item, int quantity) {
+        assert item != null : "Violation of: item is not null";
+        assert quantity > 0 : "Violation of: quantity > 0";
+        assert this.containsItem(item) : "Violation of: item is in the chest";
+        this.checkMutable();
+        Version version = this.current.get();
+        int oldQuantity = version.quantity(item);
+        int remaining = Math.max(0, oldQuantity - quantity);
+        this.publish(version.with(item, oldQuantity, remaining));
+        return remaining;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean containsItem(String item) {
+        assert item != null : "Violation of: item is not null";
+        return this.current.get().quantity(item) > 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int itemQuantity(String item) {
+        assert item != null : "Violation of: item is not null";
+        return this.current.get().quantity(item);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isFull() {
+        return this.current.get().total >= CapacityPolicy.LEGACY_ITEMS;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void clear() {
+        this.checkMutable();
+        this.createNewRep();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void forEachItem(ObjIntConsumer<String> action) {
+        assert action != null : "Violation of: action is not null";
+        ItemTrie.forEach(this.current.get().root, action);
+    }
+
+    /*
+     * Secondary methods overridden for efficiency ----------------------------
+     */
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int totalItems() {
+        return this.current.get().total;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int distinctItems() {
+        return this.current.get().size;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean addAll(Map<String, Integer> batch) {
+        assert batch != null : "Violation of: batch is not null";
+        this.checkMutable();
+        if (!this.fits(batch)) {
+            return false;
+        }
+        Version version = this.current.get();
+        for (Pair<String, Integer> pair : batch) {
+            assert pair.value() > 0 : "Violation of: quantity > 0";
+            int oldQuantity = version.quantity(pair.key());
+            version = version.with(pair.key(), oldQuantity,
+                    oldQuantity + pair.value());
+        }
+        this.publish(version);
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean removeAll(Map<String, Integer> batch) {
+        assert batch != null : "Violation of: batch is not null";
+        this.checkMutable();
+        Version version = this.current.get();
+        for (Pair<String, Integer> pair : batch) {
+            if (version.quantity(pair.key()) < pair.value()) {
+                return false;
+            }
+        }
+        for (Pair<String, Integer> pair : batch) {
+            int oldQuantity = version.quantity(pair.key());
+            version = version.with(pair.key(), oldQuantity,
+                    oldQuantity - pair.value());
+        }
+        this.publish(version);
+        return true;
+    }
+
+    // Implementing Standard<MChest> methods
+
+    // CHECKSTYLE: ALLOW THIS METHOD TO BE OVERRIDDEN
+    @Override
+    public MChest newInstance() {
+        return new MChestOnTrie();
+    }
+
+    // CHECKSTYLE: ALLOW THIS METHOD TO BE OVERRIDDEN
+    @Override
+    public void transferFrom(MChest other) {
+        assert other != null : "Violation of: other chest is not null";
+        MChestOnTrie localSource = (MChestOnTrie) other;
+        this.checkMutable();
+        localSource.checkMutable();
+        this.publish(localSource.current.get());
+        localSource.createNewRep(); // Reset the source chest
+    }
+
+    // Implementing Comparable<MChest> method
+
+    // CHECKSTYLE: ALLOW THIS METHOD TO BE OVERRIDDEN
+    @Override
+    public int compareTo(MChest other) {
+        return Integer.compare(this.totalItems(), other.totalItems());
+    }
+}
@@ -4,12 +4,23 @@ import components.list.List;
 import components.list.List2;
 import components.map.Map;
 import components.map.Map.Pair;
+import components.map.Map2;
 
 /**
- * Abstract class that implements the secondary methods of MChest.
+ * Abstract class that implements the secondary methods of MChest. Read-only
+ * methods walk the chest with {@code forEachItem} and never copy it; only
+ * {@code getItems}, whose contract is to return a copy, builds a map.
  */
 public abstract class MChestSecondary implements MChest {
 
+    //CHECKSTYLE: ALLOW THIS METHOD TO BE OVERRIDDEN
+    @Override
+    public Map<String, Integer> getItems() {
+        Map<String, Integer> copy = new Map2<>();
+        this.forEachItem((item, quantity) -> copy.add(item, quantity));
+        return copy;
+    }
+
     //CHECKSTYLE: ALLOW THIS METHOD TO BE OVERRIDDEN
     @Override
     public boolean canCraft(String... items) {
@@ -26,12 +37,39 @@ public abstract class MChestSecondary implements MChest {
     //CHECKSTYLE: ALLOW THIS METHOD TO BE OVERRIDDEN
     @Override
     public int totalItems() {
-        int total = 0;
-        for (Pair<String, Integer> pair : this.getItems()) {
-            total += pair.value();
-        }
+        int[] total = new int[1];
+        this.forEachItem((item, quantity) -> total[0] += quantity);
+
+        return total[0];
+    }
+
+    //CHECKSTYLE: ALLOW THIS METHOD TO BE OVERRIDDEN
+    @Override
+    public int distinctItems() {
+        int[] count = new int[1];
+        this.forEachItem((item, quantity) -> count[0]++);
 
-        return total;
+        return count[0];
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>
+     * Kernels without a {@code CapacityPolicy} use the legacy limit of
+     * {@code CapacityPolicy.LEGACY_ITEMS} items.
+     * </p>
+     */
+    // CHECKSTYLE: ALLOW THIS METHOD TO BE OVERRIDDEN
+    @Override
+    public int remainingCapacity(String item) {
+        assert item != null : "Violation of: item is not null";
+        int room = 0;
+        if (!this.isFull()) {
+            room = Math.max(0,
+                    CapacityPolicy.LEGACY_ITEMS - this.totalItems());
+        }
+        return room;
     }
 
     // CHECKSTYLE: ALLOW THIS METHOD TO BE OVERRIDDEN
@@ -39,43 +77,166 @@ public abstract class MChestSecondary implements MChest {
     public List<String> getItemsByQuantity(int minQuantity) {
         assert minQuantity >= 0 : "minQuantity must be non-negative";
         List<String> result = new List2<>();
-        for (Pair<String, Integer> pair : this.getItems()) {
-            if (pair.value() >= minQuantity) {
-                result.addRightFront(pair.key());
+        this.forEachItem((item, quantity) -> {
+            if (quantity >= minQuantity) {
+                result.addRightFront(item);
             }
-        }
+        });
+        return result;
+    }
+
+    // CHECKSTYLE: ALLOW THIS METHOD TO BE OVERRIDDEN
+    @Override
+    public List<String> getItemsByQuantityAtMost(int maxQuantity) {
+        assert maxQuantity >= 0 : "maxQuantity must be non-negative";
+        List<String> result = new List2<>();
+        this.forEachItem((item, quantity) -> {
+            if (quantity <= maxQuantity) {
+                result.addRightFront(item);
+            }
+        });
         return result;
     }
 
+    // CHECKSTYLE: ALLOW THIS METHOD TO BE OVERRIDDEN
+    @Override
+    public List<String> topItems(int n) {
+        assert n >= 0 : "n must be non-negative";
+        QuantityIndex index = new QuantityIndex();
+        this.forEachItem((item, quantity) -> index.update(item, 0, quantity));
+        return index.top(n);
+    }
+
+    // CHECKSTYLE: ALLOW THIS METHOD TO BE OVERRIDDEN
+    @Override
+    public List<String> bottomItems(int n) {
+        assert n >= 0 : "n must be non-negative";
+        QuantityIndex index = new QuantityIndex();
+        this.forEachItem((item, quantity) -> index.update(item, 0, quantity));
+        return index.bottom(n);
+    }
+
+    // CHECKSTYLE: ALLOW THIS METHOD TO BE OVERRIDDEN
+    @Override
+    public boolean fits(Map<String, Integer> items) {
+        assert items != null : "Violation of: items is not null";
+        long sum = 0;
+        for (Pair<String, Integer> pair : items) {
+            assert pair.value() > 0 : "Violation of: quantity > 0";
+            sum += pair.value();
+        }
+        return sum <= CapacityPolicy.LEGACY_ITEMS - this.totalItems();
+    }
+
+    // CHECKSTYLE: ALLOW THIS METHOD TO BE OVERRIDDEN
+    @Override
+    public boolean addAll(Map<String, Integer> items) {
+        assert items != null : "Violation of: items is not null";
+        if (!this.fits(items)) {
+            return false;
+        }
+        for (Pair<String, Integer> pair : items) {
+            this.addItem(pair.key(), pair.value());
+        }
+        return true;
+    }
+
+    // CHECKSTYLE: ALLOW THIS METHOD TO BE OVERRIDDEN
+    @Override
+    public boolean removeAll(Map<String, Integer> items) {
+        assert items != null : "Violation of: items is not null";
+        for (Pair<String, Integer> pair : items) {
+            if (this.itemQuantity(pair.key()) < pair.value()) {
+                return false;
+            }
+        }
+        for (Pair<String, Integer> pair : items) {
+            this.decrement(pair.key(), pair.value());
+        }
+        return true;
+    }
+
+    // CHECKSTYLE: ALLOW THIS METHOD TO BE OVERRIDDEN
+    @Override
+    public void addItem(int itemId, int quantity) {
+        this.addItem(ItemRegistry.shared().name(itemId), quantity);
+    }
+
+    // CHECKSTYLE: ALLOW THIS METHOD TO BE OVERRIDDEN
+    @Override
+    public Map.Pair<String, Integer> removeItem(int itemId, int quantity) {
+        return this.removeItem(ItemRegistry.shared().name(itemId), quantity);
+    }
+
+    // CHECKSTYLE: ALLOW THIS METHOD TO BE OVERRIDDEN
+    @Override
+    public boolean containsItem(int itemId) {
+        return this.containsItem(ItemRegistry.shared().name(itemId));
+    }
+
+    // CHECKSTYLE: ALLOW THIS METHOD TO BE OVERRIDDEN
+    @Override
+    public int itemQuantity(int itemId) {
+        return this.itemQuantity(ItemRegistry.shared().name(itemId));
+    }
+
     // CHECKSTYLE: ALLOW THIS METHOD TO BE OVERRIDDEN
     @Override
     public void clear() {
-        Map<String, Integer> itemsCopy = this.getItems();
-        for (Pair<String, Integer> pair : itemsCopy) {
-            this.removeItem(pair.key(), pair.value());
+        /*
+         * The chest cannot be changed while forEachItem walks it, so collect
+         * the names first.
+         */
+        List<String> names = new List2<>();
+        this.forEachItem((item, quantity) -> names.addRightFront(item));
+        for (String item : names) {
+            this.decrement(item, Integer.MAX_VALUE);
         }
     }
 
     // CHECKSTYLE: ALLOW THIS METHOD TO BE OVERRIDDEN
     @Override
     public String toString() {
-        String result = "MChest: ";
-        for (Pair<String, Integer> pair : this.getItems()) {
-            result += "[" + pair.key() + ", " + pair.value() + "] ";
-        }
-        return result.trim();
+        StringBuilder result = new StringBuilder("MChest:");
+        this.forEachItem((item, quantity) -> result.append(" [").append(item)
+                .append(", ").append(quantity).append(']'));
+        return result.toString();
     }
 
     // CHECKSTYLE: ALLOW THIS METHOD TO BE OVERRIDDEN
     @Override
     public boolean equals(Object obj) {
-        return obj == this || (obj instanceof MChest
-                && this.getItems().equals(((MChest) obj).getItems()));
+        if (obj == this) {
+            return true;
+        }
+        if (!(obj instanceof MChest)) {
+            return false;
+        }
+        MChest other = (MChest) obj;
+        if (this.totalItems() != other.totalItems()) {
+            return false;
+        }
+        /*
+         * Every item here must have the same quantity there, and there must
+         * be no other items there: with equal totals, the second condition
+         * follows from the first.
+         */
+        boolean[] same = { true };
+        this.forEachItem((item, quantity) -> same[0] = same[0]
+                && other.itemQuantity(item) == quantity);
+        return same[0];
     }
 
     // CHECKSTYLE: ALLOW THIS METHOD TO BE OVERRIDDEN
     @Override
     public int hashCode() {
-        return this.getItems().hashCode();
+        /*
+         * Same as java.util.Map: the sum over entries of key hash XOR value
+         * hash, so the order forEachItem visits items in does not matter.
+         */
+        int[] hash = new int[1];
+        this.forEachItem(
+                (item, quantity) -> hash[0] += item.hashCode() ^ quantity);
+        return hash[0];
     }
 }
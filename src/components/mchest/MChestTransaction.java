@@ -0,0 +1,298 @@
+package components.mchest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import components.map.Map;
+import components.map.Map.Pair;
+import components.map.Map2;
+
+/**
+ * Stages item additions and removals across any number of {@code MChest}s and
+ * applies them all at once, or not at all.
+ *
+ * <p>
+ * {@link #commit()} locks every participating chest (its monitor, and for a
+ * {@code ConcurrentMChest} also all of its stripes) in a fixed global order,
+ * so concurrent transactions over overlapping chests cannot deadlock and no
+ * global lock is needed. While holding the locks it checks every quantity
+ * and capacity once, then applies all removals followed by all additions.
+ * The items a chest gains must all fit in it as it was before the commit;
+ * space freed by the chest's own removals is not counted.
+ * Other threads therefore never see a partially applied transaction, provided
+ * they read plain (non-concurrent) chests while synchronized on them;
+ * {@code ConcurrentMChest}s need no extra care.
+ * </p>
+ *
+ * <p>
+ * Changes to the same item of the same chest are netted before the commit,
+ * so moving 5 wood out of a chest and 3 back in only removes 2.
+ * </p>
+ *
+ * @author Yuvraj Atre
+ */
+public final class MChestTransaction {
+
+    /**
+     * The participating chests, each listed once.
+     */
+    private final ArrayList<MChest> chests;
+
+    /**
+     * Net staged change per item for the chest at the same index.
+     */
+    private final ArrayList<Map<String, Integer>> deltas;
+
+    /**
+     * No-argument constructor that initializes an empty transaction.
+     */
+    public MChestTransaction() {
+        this.chests = new ArrayList<>();
+        this.deltas = new ArrayList<>();
+    }
+
+    /**
+     * Adds {@code change} to the staged net change of {@code item} in
+     * {@code chest}.
+     *
+     * @param chest
+     *            the chest
+     * @param item
+     *            the item name
+     * @param change
+     *            the quantity to add (positive) or remove (negative)
+     */
+    private void stage(MChest chest, String item, int change) {
+        int index = 0;
+        while (index < this.chests.size() && this.chests.get(index) != chest) {
+            index++;
+        }
+        if (index == this.chests.size()) {
+            this.chests.add(chest);
+            this.deltas.add(new Map2<>());
+        }
+        Map<String, Integer> delta = this.deltas.get(index);
+        if (delta.hasKey(item)) {
+            delta.replaceValue(item, delta.value(item) + change);
+        } else {
+            delta.add(item, change);
+        }
+    }
+
+    /**
+     * Stages adding {@code quantity} of {@code item} to {@code chest}.
+     *
+     * @param chest
+     *            the chest to add to
+     * @param item
+     *            the name of the item to add
+     * @param quantity
+     *            the quantity to add
+     * @return this transaction
+     * @updates this
+     * @requires chest != null and item != null and quantity > 0
+     */
+    public MChestTransaction add(MChest chest, String item, int quantity) {
+        assert chest != null : "Violation of: chest is not null";
+        assert item != null : "Violation of: item is not null";
+        assert quantity > 0 : "Violation of: quantity > 0";
+        this.stage(chest, item, quantity);
+        return this;
+    }
+
+    /**
+     * Stages removing {@code quantity} of {@code item} from {@code chest}.
+     *
+     * @param chest
+     *            the chest to remove from
+     * @param item
+     *            the name of the item to remove
+     * @param quantity
+     *            the quantity to remove
+     * @return this transaction
+     * @updates this
+     * @requires chest != null and item != null and quantity > 0
+     */
+    public MChestTransaction remove(MChest chest, String item, int quantity) {
+        assert chest != null : "Violation of: chest is not null";
+        assert item != null : "Violation of: item is not null";
+        assert quantity > 0 : "Violation of: quantity > 0";
+        this.stage(chest, item, -quantity);
+        return this;
+    }
+
+    /**
+     * Stages moving {@code quantity} of {@code item} from {@code source} to
+     * {@code target}.
+     *
+     * @param source
+     *            the chest to take the item from
+     * @param target
+     *            the chest to put the item in
+     * @param item
+     *            the name of the item to move
+     * @param quantity
+     *            the quantity to move
+     * @return this transaction
+     * @updates this
+     * @requires source != null and target != null and item != null and
+     *           quantity > 0
+     */
+    public MChestTransaction move(MChest source, MChest target, String item,
+            int quantity) {
+        this.remove(source, item, quantity);
+        this.add(target, item, quantity);
+        return this;
+    }
+
+    /**
+     * Checks, with every participant locked, that each chest holds enough of
+     * every item it loses and has room for the items it gains. Room in a
+     * {@code ConcurrentMChest} is reserved here, since other threads can add
+     * to it without taking its locks.
+     *
+     * @param reserved
+     *            receives the quantity reserved in the chest at each index
+     * @return true if the transaction can be applied
+     */
+    private boolean validate(int[] reserved) {
+        for (int i = 0; i < this.chests.size(); i++) {
+            MChest chest = this.chests.get(i);
+            for (Pair<String, Integer> pair : this.deltas.get(i)) {
+                if (pair.value() < 0
+                        && chest.itemQuantity(pair.key()) < -pair.value()) {
+                    return false;
+                }
+            }
+        }
+        boolean valid = true;
+        int i = 0;
+        while (valid && i < this.chests.size()) {
+            MChest chest = this.chests.get(i);
+            int gain = 0;
+            Map<String, Integer> gains = new Map2<>();
+            for (Pair<String, Integer> pair : this.deltas.get(i)) {
+                if (pair.value() > 0) {
+                    gain += pair.value();
+                    gains.add(pair.key(), pair.value());
+                }
+            }
+            if (gain > 0 && chest instanceof ConcurrentMChest) {
+                valid = ((ConcurrentMChest) chest).reserve(gain);
+                if (valid) {
+                    reserved[i] = gain;
+                }
+            } else if (gain > 0) {
+                valid = chest.fits(gains);
+            }
+            i++;
+        }
+        if (!valid) {
+            for (int j = 0; j < reserved.length; j++) {
+                if (reserved[j] > 0) {
+                    ConcurrentMChest striped = (ConcurrentMChest) this.chests
+                            .get(j);
+                    striped.release(reserved[j]);
+                }
+            }
+        }
+        return valid;
+    }
+
+    /**
+     * Applies every staged change, removals first; participants must be
+     * locked and the transaction validated.
+     *
+     * @param reserved
+     *            the quantity reserved in the chest at each index
+     */
+    private void apply(int[] reserved) {
+        for (int i = 0; i < this.chests.size(); i++) {
+            for (Pair<String, Integer> pair : this.deltas.get(i)) {
+                if (pair.value() < 0) {
+                    this.chests.get(i).decrement(pair.key(), -pair.value());
+                }
+            }
+        }
+        for (int i = 0; i < this.chests.size(); i++) {
+            MChest chest = this.chests.get(i);
+            for (Pair<String, Integer> pair : this.deltas.get(i)) {
+                if (pair.value() > 0 && reserved[i] > 0) {
+                    ((ConcurrentMChest) chest).addReserved(pair.key(),
+                            pair.value());
+                } else if (pair.value() > 0) {
+                    chest.addItem(pair.key(), pair.value());
+                }
+            }
+        }
+    }
+
+    /**
+     * Locks {@code ordered[k]} and every later chest, then validates and
+     * applies the transaction.
+     *
+     * @param ordered
+     *            the participants in lock order
+     * @param k
+     *            the first participant not yet locked
+     * @return true if the transaction was applied
+     */
+    private boolean commitFrom(MChest[] ordered, int k) {
+        if (k == ordered.length) {
+            int[] reserved = new int[this.chests.size()];
+            boolean valid = this.validate(reserved);
+            if (valid) {
+                this.apply(reserved);
+            }
+            return valid;
+        }
+        MChest chest = ordered[k];
+        synchronized (chest) {
+            ConcurrentMChest striped = null;
+            if (chest instanceof ConcurrentMChest) {
+                striped = (ConcurrentMChest) chest;
+                striped.lockAll();
+            }
+            try {
+                return this.commitFrom(ordered, k + 1);
+            } finally {
+                if (striped != null) {
+                    striped.unlockAll();
+                }
+            }
+        }
+    }
+
+    /**
+     * Applies every staged change if all of them can be applied, and leaves
+     * every chest unchanged otherwise. Either way the transaction is empty
+     * afterwards and can be reused.
+     *
+     * @return true if the changes were applied, false if some chest was short
+     *         of an item or full
+     * @updates this, every participating chest
+     * @ensures this is empty and, if commit = true, every staged change was
+     *          applied, else every participating chest is unchanged
+     */
+    public boolean commit() {
+        MChest[] ordered = this.chests.toArray(new MChest[0]);
+        Arrays.sort(ordered, (a, b) -> Integer.compare(
+                System.identityHashCode(a), System.identityHashCode(b)));
+        boolean tie = false;
+        for (int i = 1; i < ordered.length; i++) {
+            tie = tie || System.identityHashCode(ordered[i - 1]) == System
+                    .identityHashCode(ordered[i]);
+        }
+        boolean committed;
+        if (tie) {
+            synchronized (ConcurrentMChest.TIE_LOCK) {
+                committed = this.commitFrom(ordered, 0);
+            }
+        } else {
+            committed = this.commitFrom(ordered, 0);
+        }
+        this.chests.clear();
+        this.deltas.clear();
+        return committed;
+    }
+}
@@ -0,0 +1,146 @@
+package components.mchest;
+
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+
+import components.list.List;
+import components.list.List2;
+import components.map.Map;
+
+/**
+ * Secondary index over the items of a chest, ordered by quantity and then by
+ * name. Range and top/bottom queries walk only the entries they return, so
+ * they run in O(log n + k) for k results instead of scanning the chest.
+ *
+ * <p>
+ * The index does not observe a chest by itself: its owner must call
+ * {@link #update(String, int, int)} for every quantity change.
+ * </p>
+ */
+final class QuantityIndex {
+
+    /**
+     * Orders entries by quantity, then by name.
+     */
+    private static final Comparator<Map.Pair<String, Integer>> ORDER = (a,
+            b) -> {
+        int byQuantity = Integer.compare(a.value(), b.value());
+        if (byQuantity != 0) {
+            return byQuantity;
+        }
+        return a.key().compareTo(b.key());
+    };
+
+    /**
+     * The indexed (name, quantity) entries.
+     */
+    private final TreeSet<Map.Pair<String, Integer>> entries;
+
+    /**
+     * No-argument constructor that initializes an empty index.
+     */
+    QuantityIndex() {
+        this.entries = new TreeSet<>(ORDER);
+    }
+
+    /**
+     * Records that the quantity of {@code item} changed from
+     * {@code oldQuantity} to {@code newQuantity}; a quantity of 0 means the
+     * item is not in the chest.
+     *
+     * @param item
+     *            the item name
+     * @param oldQuantity
+     *            the quantity before the change
+     * @param newQuantity
+     *            the quantity after the change
+     */
+    void update(String item, int oldQuantity, int newQuantity) {
+        if (oldQuantity > 0) {
+            this.entries.remove(new ItemPair(item, oldQuantity));
+        }
+        if (newQuantity > 0) {
+            this.entries.add(new ItemPair(item, newQuantity));
+        }
+    }
+
+    /**
+     * Copies up to {@code n} names from {@code it} into a new list, in
+     * iteration order.
+     *
+     * @param it
+     *            the entries to copy
+     * @param n
+     *            the maximum number of names to copy
+     * @return the names
+     */
+    private static List<String> names(Iterator<Map.Pair<String, Integer>> it,
+            int n) {
+        List<String> result = new List2<>();
+        int count = 0;
+        while (count < n && it.hasNext()) {
+            result.addRightFront(it.next().key());
+            result.advance();
+            count++;
+        }
+        result.moveToStart();
+        return result;
+    }
+
+    /**
+     * Returns the names of the items with a quantity of at least
+     * {@code minQuantity}, in increasing order of quantity.
+     *
+     * @param minQuantity
+     *            the minimum quantity
+     * @return the item names
+     */
+    List<String> atLeast(int minQuantity) {
+        NavigableSet<Map.Pair<String, Integer>> range = this.entries
+                .tailSet(new ItemPair("", minQuantity), true);
+        return names(range.iterator(), Integer.MAX_VALUE);
+    }
+
+    /**
+     * Returns the names of the items with a quantity of at most
+     * {@code maxQuantity}, in increasing order of quantity.
+     *
+     * @param maxQuantity
+     *            the maximum quantity
+     * @return the item names
+     */
+    List<String> atMost(int maxQuantity) {
+        Iterator<Map.Pair<String, Integer>> it = this.entries.iterator();
+        if (maxQuantity < Integer.MAX_VALUE) {
+            it = this.entries.headSet(new ItemPair("", maxQuantity + 1), false)
+                    .iterator();
+        }
+        return names(it, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Returns the names of the {@code n} items with the largest quantities,
+     * largest first.
+     *
+     * @param n
+     *            the maximum number of items
+     * @return the item names
+     */
+    List<String> top(int n) {
+        return names(this.entries.descendingIterator(), n);
+    }
+
+    /**
+     * Returns the names of the {@code n} items with the smallest quantities,
+     * smallest first.
+     *
+     * @param n
+     *            the maximum number of items
+     * @return the item names
+     */
+    List<String> bottom(int n) {
+        return names(this.entries.iterator(), n);
+    }
+}
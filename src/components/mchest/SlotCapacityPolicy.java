@@ -0,0 +1,151 @@
+package components.mchest;
+
+import java.util.HashMap;
+
+/**
+ * Immutable {@code CapacityPolicy} with a fixed number of slots, a default
+ * stack size and weight, and per-item overrides of both. The
+ * {@code with...} methods return a changed copy, so a policy can be built up
+ * and then shared by any number of chests.
+ *
+ * <p>
+ * For example, a 27-slot chest where most items stack to 64, ender pearls to
+ * 16 and swords to 1:
+ * </p>
+ *
+ * <pre>
+ * new SlotCapacityPolicy(27, 64, CapacityPolicy.UNLIMITED)
+ *         .withStackSize("ender_pearl", 16).withStackSize("sword", 1)
+ * </pre>
+ *
+ * @author Yuvraj Atre
+ */
+public final class SlotCapacityPolicy implements CapacityPolicy {
+
+    /**
+     * The policy returned by {@code CapacityPolicy.legacy()}.
+     */
+    static final SlotCapacityPolicy LEGACY = new SlotCapacityPolicy(
+            UNLIMITED, UNLIMITED, LEGACY_ITEMS);
+
+    /**
+     * Number of slots.
+     */
+    private final int slotLimit;
+
+    /**
+     * Stack size of items without an override.
+     */
+    private final int defaultStackSize;
+
+    /**
+     * Largest total weight.
+     */
+    private final int weightLimit;
+
+    /**
+     * Stack size overrides, by item name.
+     */
+    private final HashMap<String, Integer> stackSizes;
+
+    /**
+     * Weight overrides, by item name; other items weigh 1.
+     */
+    private final HashMap<String, Integer> weights;
+
+    /**
+     * Constructs a policy in which every item stacks to
+     * {@code defaultStackSize} and weighs 1.
+     *
+     * @param slotLimit
+     *            the number of slots, or {@code UNLIMITED}
+     * @param defaultStackSize
+     *            the stack size of every item, or {@code UNLIMITED}
+     * @param weightLimit
+     *            the largest total weight, or {@code UNLIMITED}
+     * @requires slotLimit > 0 and defaultStackSize > 0 and weightLimit > 0
+     */
+    public SlotCapacityPolicy(int slotLimit, int defaultStackSize,
+            int weightLimit) {
+        assert slotLimit > 0 : "Violation of: slotLimit > 0";
+        assert defaultStackSize > 0 : "Violation of: defaultStackSize > 0";
+        assert weightLimit > 0 : "Violation of: weightLimit > 0";
+        this.slotLimit = slotLimit;
+        this.defaultStackSize = defaultStackSize;
+        this.weightLimit = weightLimit;
+        this.stackSizes = new HashMap<>();
+        this.weights = new HashMap<>();
+    }
+
+    /**
+     * Copy constructor used by the {@code with...} methods.
+     *
+     * @param other
+     *            the policy to copy
+     */
+    private SlotCapacityPolicy(SlotCapacityPolicy other) {
+        this.slotLimit = other.slotLimit;
+        this.defaultStackSize = other.defaultStackSize;
+        this.weightLimit = other.weightLimit;
+        this.stackSizes = new HashMap<>(other.stackSizes);
+        this.weights = new HashMap<>(other.weights);
+    }
+
+    /**
+     * Returns a copy of this policy in which {@code item} stacks to
+     * {@code size}.
+     *
+     * @param item
+     *            the item name
+     * @param size
+     *            the stack size of item
+     * @return the new policy
+     * @requires item != null and size > 0
+     */
+    public SlotCapacityPolicy withStackSize(String item, int size) {
+        assert item != null : "Violation of: item is not null";
+        assert size > 0 : "Violation of: size > 0";
+        SlotCapacityPolicy result = new SlotCapacityPolicy(this);
+        result.stackSizes.put(item, size);
+        return result;
+    }
+
+    /**
+     * Returns a copy of this policy in which one {@code item} weighs
+     * {@code weight}.
+     *
+     * @param item
+     *            the item name
+     * @param weight
+     *            the weight of one item
+     * @return the new policy
+     * @requires item != null and weight >= 0
+     */
+    public SlotCapacityPolicy withWeight(String item, int weight) {
+        assert item != null : "Violation of: item is not null";
+        assert weight >= 0 : "Violation of: weight >= 0";
+        SlotCapacityPolicy result = new SlotCapacityPolicy(this);
+        result.weights.put(item, weight);
+        return result;
+    }
+
+    @Override
+    public int slotLimit() {
+        return this.slotLimit;
+    }
+
+    @Override
+    public int stackSize(String item) {
+        return this.stackSizes.getOrDefault(item, this.defaultStackSize);
+    }
+
+    @Override
+    public int weightLimit() {
+        return this.weightLimit;
+    }
+
+    @Override
+    public int weight(String item) {
+        return this.weights.getOrDefault(item, 1);
+    }
+}
@@ -0,0 +1,280 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import components.map.Map;
+import components.map.Map2;
+import components.mchest.MChest;
+import components.mchest.MChestOnMap;
+
+/**
+ * Unit tests for the Recipe, RecipeBook and CraftingSystem classes.
+ */
+public class CraftingSystemTest {
+
+    /**
+     * Tests that repeated ingredients are merged into one requirement.
+     */
+    @Test
+    public void testRecipeMergesRepeatedIngredients() {
+        Recipe recipe = new Recipe("stick", "planks", "planks");
+        assertEquals(1, recipe.ingredientCount());
+        assertEquals("planks", recipe.ingredient(0));
+        assertEquals(2, recipe.required(0));
+    }
+
+    /**
+     * Tests that canCraftFrom checks quantities, not just presence.
+     */
+    @Test
+    public void testCanCraftFromChecksQuantity() {
+        MChest chest = new MChestOnMap();
+        chest.addItem("planks", 1);
+        Recipe recipe = new Recipe("stick", "planks", "planks");
+        assertFalse(recipe.canCraftFrom(chest));
+        chest.addItem("planks", 1);
+        assertTrue(recipe.canCraftFrom(chest));
+    }
+
+    /**
+     * Tests that a successful craft consumes the ingredients and adds the
+     * output.
+     */
+    @Test
+    public void testCraftConsumesAndProduces() {
+        final int three = 3;
+        final int four = 4;
+        MChest chest = new MChestOnMap();
+        chest.addItem("planks", three);
+        Map<String, Integer> ingredients = new Map2<>();
+        ingredients.add("planks", 2);
+        CraftingSystem system = new CraftingSystem(chest);
+        assertTrue(system.craft(new Recipe("stick", four, ingredients)));
+        assertEquals(1, chest.itemQuantity("planks"));
+        assertEquals(four, chest.itemQuantity("stick"));
+    }
+
+    /**
+     * Tests that a failed craft leaves the chest unchanged.
+     */
+    @Test
+    public void testCraftItemMissingComponent() {
+        MChest chest = new MChestOnMap();
+        chest.addItem("wood", 2);
+        chest.addItem("stick", 1);
+        CraftingSystem system = new CraftingSystem(chest);
+        assertFalse(system.craftItem("pickaxe", "wood", "stick", "stone"));
+        assertEquals(2, chest.itemQuantity("wood"));
+        assertEquals(1, chest.itemQuantity("stick"));
+        assertFalse(chest.containsItem("pickaxe"));
+    }
+
+    /**
+     * Tests crafting by name from a recipe book.
+     */
+    @Test
+    public void testCraftByName() {
+        MChest chest = new MChestOnMap();
+        chest.addItem("wood", 1);
+        chest.addItem("stick", 1);
+        RecipeBook book = new RecipeBook();
+        book.add(new Recipe("sword", "wood", "stick"));
+        CraftingSystem system = new CraftingSystem(chest, book);
+        assertTrue(system.craft("sword"));
+        assertEquals(1, chest.itemQuantity("sword"));
+        assertEquals(1, chest.totalItems());
+    }
+
+    /**
+     * Builds a small recipe book for the craftable index tests.
+     *
+     * @return the recipe book
+     */
+    private static RecipeBook toolRecipes() {
+        RecipeBook book = new RecipeBook();
+        book.add(new Recipe("sword", "planks", "planks", "stick"));
+        book.add(new Recipe("torch", "coal", "stick"));
+        book.add(new Recipe("chest", "planks", "planks", "planks", "planks",
+                "planks", "planks", "planks", "planks"));
+        return book;
+    }
+
+    /**
+     * Tests that the index starts with the recipes craftable from the initial
+     * chest contents.
+     */
+    @Test
+    public void testCraftableIndexInitial() {
+        MChest chest = new MChestOnMap();
+        chest.addItem("planks", 2);
+        chest.addItem("stick", 1);
+        CraftableIndex index = new CraftableIndex(toolRecipes(), chest);
+        assertEquals(1, index.craftableCount());
+        assertTrue(index.isCraftable("sword"));
+        assertFalse(index.isCraftable("torch"));
+        assertFalse(index.isCraftable("bow"));
+    }
+
+    /**
+     * Tests that reported changes add and remove recipes from the craftable
+     * set.
+     */
+    @Test
+    public void testCraftableIndexItemChanged() {
+        final int eight = 8;
+        MChest chest = new MChestOnMap();
+        chest.addItem("stick", 1);
+        CraftableIndex index = new CraftableIndex(toolRecipes(), chest);
+        assertEquals(0, index.craftableCount());
+
+        chest.addItem("coal", 1);
+        index.itemChanged("coal");
+        assertTrue(index.isCraftable("torch"));
+
+        chest.addItem("planks", eight);
+        index.itemChanged("planks");
+        final int three = 3;
+        assertEquals(three, index.craftableCount());
+
+        chest.removeItem("stick", 1);
+        index.itemChanged("stick");
+        assertEquals(1, index.craftableCount());
+        assertTrue(index.isCraftable("chest"));
+    }
+
+    /**
+     * Tests that crafting through the system keeps its craftable list current.
+     */
+    @Test
+    public void testCraftableRecipesAfterCraft() {
+        MChest chest = new MChestOnMap();
+        chest.addItem("planks", 2);
+        chest.addItem("stick", 2);
+        chest.addItem("coal", 1);
+        CraftingSystem system = new CraftingSystem(chest, toolRecipes());
+        assertEquals(2, system.craftableRecipes().rightLength());
+        assertTrue(system.craft("torch"));
+        assertEquals(1, system.craftableRecipes().rightLength());
+        assertTrue(system.craft("sword"));
+        assertEquals(0, system.craftableRecipes().rightLength());
+    }
+
+    /**
+     * Builds a recipe book with intermediate recipes: log to planks to sticks
+     * to a pickaxe.
+     *
+     * @return the recipe book
+     */
+    private static RecipeBook woodRecipes() {
+        final int four = 4;
+        RecipeBook book = new RecipeBook();
+        Map<String, Integer> planks = new Map2<>();
+        planks.add("log", 1);
+        book.add(new Recipe("planks", four, planks));
+        Map<String, Integer> sticks = new Map2<>();
+        sticks.add("planks", 2);
+        book.add(new Recipe("stick", four, sticks));
+        book.add(new Recipe("pickaxe", "planks", "planks", "planks", "stick",
+                "stick"));
+        return book;
+    }
+
+    /**
+     * Tests maxCraftable when everything must be crafted from raw materials.
+     */
+    @Test
+    public void testMaxCraftableThroughIntermediates() {
+        final int three = 3;
+        MChest chest = new MChestOnMap();
+        chest.addItem("log", three);
+        CraftingSystem system = new CraftingSystem(chest, woodRecipes());
+        /*
+         * 3 logs = 12 planks. Each pickaxe needs 3 planks and 2 sticks; 2
+         * planks make 4 sticks. 3 pickaxes need 9 planks + 6 sticks (4 more
+         * planks) = 13 planks, so only 2 fit.
+         */
+        assertEquals(2, system.maxCraftable("pickaxe"));
+    }
+
+    /**
+     * Tests that items in the chest are used before crafting more.
+     */
+    @Test
+    public void testMaxCraftableUsesStockFirst() {
+        final int six = 6;
+        final int three = 3;
+        MChest chest = new MChestOnMap();
+        chest.addItem("planks", six);
+        chest.addItem("stick", six);
+        CraftingSystem system = new CraftingSystem(chest, woodRecipes());
+        assertEquals(2, system.maxCraftable("pickaxe"));
+        chest.addItem("log", 1);
+        assertEquals(three, system.maxCraftable("pickaxe"));
+    }
+
+    /**
+     * Tests that a plan executes to the expected chest contents.
+     */
+    @Test
+    public void testCraftWithPlan() {
+        final int three = 3;
+        MChest chest = new MChestOnMap();
+        chest.addItem("log", three);
+        CraftingSystem system = new CraftingSystem(chest, woodRecipes());
+        CraftingPlan plan = system.plan("pickaxe", 2);
+        assertEquals(three, plan.stepCount());
+        assertEquals("pickaxe", plan.recipe(2).output());
+        assertTrue(system.craft("pickaxe", 2));
+        assertEquals(2, chest.itemQuantity("pickaxe"));
+        assertEquals(1, chest.itemQuantity("log"));
+        assertFalse(chest.containsItem("planks"));
+        assertFalse(chest.containsItem("stick"));
+        assertFalse(system.craft("pickaxe", 1));
+        assertEquals(null, system.plan("pickaxe", 1));
+    }
+
+    /**
+     * Tests that a cycle between two recipes does not loop forever.
+     */
+    @Test
+    public void testMaxCraftableWithCycle() {
+        final int nine = 9;
+        final int eighteen = 18;
+        RecipeBook book = new RecipeBook();
+        Map<String, Integer> ingots = new Map2<>();
+        ingots.add("block", 1);
+        book.add(new Recipe("ingot", nine, ingots));
+        Map<String, Integer> block = new Map2<>();
+        block.add("ingot", nine);
+        book.add(new Recipe("block", 1, block));
+        MChest chest = new MChestOnMap();
+        chest.addItem("ingot", eighteen);
+        CraftingSystem system = new CraftingSystem(chest, book);
+        assertEquals(2, system.maxCraftable("block"));
+    }
+
+    /**
+     * Tests that a plan whose outputs would not fit leaves the chest
+     * unchanged.
+     */
+    @Test
+    public void testCraftWithPlanTooLargeForChest() {
+        final int nine = 9;
+        final int filler = 985;
+        RecipeBook book = new RecipeBook();
+        Map<String, Integer> ingots = new Map2<>();
+        ingots.add("block", 1);
+        book.add(new Recipe("ingot", nine, ingots));
+        MChest chest = new MChestOnMap();
+        chest.addItem("block", 2);
+        chest.addItem("stone", filler);
+        CraftingSystem system = new CraftingSystem(chest, book);
+        assertFalse(system.craft("ingot", 2));
+        assertEquals(2, chest.itemQuantity("block"));
+        assertFalse(chest.containsItem("ingot"));
+        assertTrue(system.craft("ingot", 1));
+        assertEquals(nine, chest.itemQuantity("ingot"));
+    }
+}
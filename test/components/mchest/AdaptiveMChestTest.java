@@ -0,0 +1,87 @@
+package components.mchest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Runs the full {@code MChest} test suite against {@code AdaptiveMChest},
+ * plus tests that it switches layout at the right sizes without losing
+ * items.
+ */
+public class AdaptiveMChestTest extends MChestTest {
+
+    @Override
+    protected MChest constructorTest() {
+        return new AdaptiveMChest();
+    }
+
+    /**
+     * Tests that the chest stays inline up to the inline capacity and is
+     * hashed past it.
+     */
+    @Test
+    public void testPromotesPastInlineCapacity() {
+        AdaptiveMChest chest = new AdaptiveMChest();
+        for (int i = 0; i < AdaptiveMChest.INLINE_CAPACITY; i++) {
+            chest.addItem("item" + i, i + 1);
+        }
+        assertFalse(chest.isHashed());
+        chest.addItem("item0", 1);
+        assertFalse(chest.isHashed());
+        chest.addItem("extra", 1);
+        assertTrue(chest.isHashed());
+        assertEquals(2, chest.itemQuantity("item0"));
+        assertEquals(1, chest.itemQuantity("extra"));
+        assertEquals(AdaptiveMChest.INLINE_CAPACITY + 1,
+                chest.distinctItems());
+    }
+
+    /**
+     * Tests that a hashed chest goes back inline only once it has shrunk to
+     * the demotion size, keeping every item.
+     */
+    @Test
+    public void testDemotesWithHysteresis() {
+        AdaptiveMChest chest = new AdaptiveMChest();
+        final int itemCount = 20;
+        for (int i = 0; i < itemCount; i++) {
+            chest.addItem("item" + i, 2);
+        }
+        int removed = 0;
+        while (itemCount - removed > AdaptiveMChest.DEMOTE_SIZE + 1) {
+            chest.decrement("item" + removed, 2);
+            removed++;
+        }
+        chest.decrement("item" + removed, 1);
+        assertTrue(chest.isHashed());
+        chest.decrement("item" + removed, 1);
+        removed++;
+        assertFalse(chest.isHashed());
+        for (int i = removed; i < itemCount; i++) {
+            assertEquals(2, chest.itemQuantity("item" + i));
+        }
+        assertEquals(2 * AdaptiveMChest.DEMOTE_SIZE, chest.totalItems());
+        chest.addItem("again", 1);
+        assertFalse(chest.isHashed());
+    }
+
+    /**
+     * Tests that removing an inline item keeps the others reachable.
+     */
+    @Test
+    public void testInlineRemovalKeepsOthers() {
+        MChest chest = this.constructorTest();
+        final int three = 3;
+        chest.addItem("wood", 1);
+        chest.addItem("stone", 2);
+        chest.addItem("iron", three);
+        chest.removeItem("wood", 1);
+        assertFalse(chest.containsItem("wood"));
+        assertEquals(2, chest.itemQuantity("stone"));
+        assertEquals(three, chest.itemQuantity("iron"));
+        assertEquals(2, chest.distinctItems());
+    }
+}
@@ -0,0 +1,87 @@
+package components.mchest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+import components.list.List;
+
+/**
+ * Tests {@code ChestAnalytics} and {@code ChestReport}.
+ */
+public class ChestAnalyticsTest {
+
+    /**
+     * Tests that totals, holders and top holders match a sequential count
+     * over enough chests to be split across workers.
+     */
+    @Test
+    public void testMatchesSequentialCount() {
+        final int chestCount = 10000;
+        final int kinds = 7;
+        ArrayList<MChest> chests = new ArrayList<>();
+        long expectedStone = 0;
+        int stoneHolders = 0;
+        for (int i = 0; i < chestCount; i++) {
+            MChest chest = new MChestOnMap();
+            chest.addItem("dirt", 1);
+            if (i % kinds == 0) {
+                chest.addItem("stone", i % (kinds * 2) + 1);
+                expectedStone += i % (kinds * 2) + 1;
+                stoneHolders++;
+            }
+            chests.add(chest);
+        }
+        final int four = 4;
+        ChestReport report = new ChestAnalytics(new ItemRegistry(),
+                new ForkJoinPool(four)).analyze(chests);
+        assertEquals(chestCount, report.chestCount());
+        assertEquals(chestCount, report.total("dirt"));
+        assertEquals(chestCount, report.holders("dirt"));
+        assertEquals(expectedStone, report.total("stone"));
+        assertEquals(stoneHolders, report.holders("stone"));
+        assertSame(chests.get(kinds), report.topHolder("stone"));
+        assertEquals(kinds + 1,
+                report.topHolder("stone").itemQuantity("stone"));
+        assertEquals(0, report.total("gold"));
+        assertNull(report.topHolder("gold"));
+    }
+
+    /**
+     * Tests the item ranking and the fill histogram.
+     */
+    @Test
+    public void testTopItemsAndFillHistogram() {
+        ArrayList<MChest> chests = new ArrayList<>();
+        final int three = 3;
+        final int five = 5;
+        MChest empty = new MChestOnMap();
+        MChest one = new MChestOnMap();
+        one.addItem("wood", 1);
+        MChest stone = new MChestOnMap();
+        stone.addItem("stone", five);
+        MChest mixed = new MChestOnMap();
+        mixed.addItem("stone", three);
+        mixed.addItem("wood", 2);
+        chests.add(empty);
+        chests.add(one);
+        chests.add(stone);
+        chests.add(mixed);
+        ChestReport report = new ChestAnalytics().analyze(chests);
+        List<String> top = report.topItems(2);
+        assertEquals("stone", top.rightFront());
+        top.advance();
+        assertEquals("wood", top.rightFront());
+        long[] fill = report.fillHistogram();
+        assertEquals(Integer.SIZE + 1, fill.length);
+        assertEquals(1, fill[0]);
+        assertEquals(1, fill[1]);
+        assertEquals(0, fill[2]);
+        assertEquals(2, fill[three]);
+    }
+}
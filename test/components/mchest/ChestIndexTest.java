@@ -0,0 +1,115 @@
+package components.mchest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+import components.list.List;
+
+/**
+ * Tests {@code ChestIndex}.
+ */
+public class ChestIndexTest {
+
+    /**
+     * Tests that chestsWithAtLeast returns the chests holding enough of an
+     * item, largest quantity first.
+     */
+    @Test
+    public void testChestsWithAtLeast() {
+        ChestIndex index = new ChestIndex();
+        MChestOnMap small = new MChestOnMap();
+        MChestOnMap large = new MChestOnMap();
+        MChestOnMap none = new MChestOnMap();
+        final int five = 5;
+        final int nine = 9;
+        small.addItem("iron", 2);
+        index.watch(small);
+        index.watch(large);
+        index.watch(none);
+        large.addItem("iron", nine);
+        none.addItem("wood", nine);
+        List<MChest> found = index.chestsWithAtLeast("iron", 2);
+        assertEquals(2, found.rightLength());
+        assertSame(large, found.rightFront());
+        found.advance();
+        assertSame(small, found.rightFront());
+        assertEquals(1, index.chestsWithAtLeast("iron", five).rightLength());
+        assertEquals(0, index.chestsWithAtLeast("gold", 1).rightLength());
+        assertEquals(2, index.chestsHolding("iron"));
+    }
+
+    /**
+     * Tests that the index follows removals, clear and transferFrom.
+     */
+    @Test
+    public void testFollowsChanges() {
+        ChestIndex index = new ChestIndex();
+        MChestOnMap first = new MChestOnMap();
+        MChestOnMap second = new MChestOnMap();
+        index.watch(first);
+        index.watch(second);
+        final int three = 3;
+        final int four = 4;
+        first.addItem("iron", four);
+        second.addItem("iron", 2);
+        first.removeItem("iron", three);
+        assertSame(second, index.topChests("iron", 1).rightFront());
+        first.transferFrom(second);
+        assertSame(first, index.topChests("iron", 2).rightFront());
+        assertEquals(1, index.chestsHolding("iron"));
+        first.clear();
+        assertEquals(0, index.chestsHolding("iron"));
+    }
+
+    /**
+     * Tests that equal chests are indexed separately and that unwatch drops
+     * a chest's items.
+     */
+    @Test
+    public void testEqualChestsAndUnwatch() {
+        ChestIndex index = new ChestIndex();
+        MChestOnMap first = new MChestOnMap();
+        MChestOnMap second = new MChestOnMap();
+        first.addItem("iron", 1);
+        second.addItem("iron", 1);
+        index.watch(first);
+        index.watch(second);
+        index.watch(first);
+        assertEquals(2, index.chestCount());
+        assertEquals(2, index.chestsHolding("iron"));
+        index.unwatch(first);
+        first.addItem("iron", 1);
+        assertEquals(1, index.chestsHolding("iron"));
+        assertSame(second, index.topChests("iron", 2).rightFront());
+    }
+
+    /**
+     * Tests that indexes watching one chest from several threads at once
+     * all follow its changes.
+     *
+     * @throws InterruptedException
+     *             if interrupted while waiting
+     */
+    @Test
+    public void testWatchFromManyThreads() throws InterruptedException {
+        final int threadCount = 8;
+        MChestOnMap chest = new MChestOnMap();
+        ChestIndex[] indexes = new ChestIndex[threadCount];
+        Thread[] threads = new Thread[threadCount];
+        for (int t = 0; t < threadCount; t++) {
+            ChestIndex index = new ChestIndex();
+            indexes[t] = index;
+            threads[t] = new Thread(() -> index.watch(chest));
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        chest.addItem("torch", 2);
+        for (ChestIndex index : indexes) {
+            assertEquals(1, index.chestsWithAtLeast("torch", 2).rightLength());
+        }
+    }
+}
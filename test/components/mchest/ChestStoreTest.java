@@ -0,0 +1,162 @@
+package components.mchest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for the ChestStore class.
+ */
+public class ChestStoreTest {
+
+    /**
+     * Returns a path for a new store file in a fresh temporary directory.
+     *
+     * @return the store file path
+     * @throws IOException
+     *             if the directory cannot be created
+     */
+    private static Path newStoreFile() throws IOException {
+        return Files.createTempDirectory("chest-store").resolve("world.dat");
+    }
+
+    /**
+     * Tests that chests written before closing are read back after
+     * reopening.
+     *
+     * @throws IOException
+     *             if the store fails
+     */
+    @Test
+    public void testReopenKeepsChests() throws IOException {
+        Path file = newStoreFile();
+        final int five = 5;
+        try (ChestStore store = ChestStore.open(file)) {
+            int first = store.create();
+            int second = store.create();
+            store.chest(first).addItem("wood", five);
+            store.chest(second).addItem("stone", 1);
+            store.chest(second).addItem("wood", 2);
+        }
+        try (ChestStore store = ChestStore.open(file)) {
+            assertEquals(2, store.size());
+            MChest first = store.chest(0);
+            MChest second = store.chest(1);
+            assertEquals(five, first.itemQuantity("wood"));
+            assertEquals(1, first.distinctItems());
+            assertEquals(1, second.itemQuantity("stone"));
+            assertEquals(2, second.itemQuantity("wood"));
+        }
+    }
+
+    /**
+     * Tests that only changed chests are held as dirty, and that a flush
+     * writes them back and leaves none dirty.
+     *
+     * @throws IOException
+     *             if the store fails
+     */
+    @Test
+    public void testOnlyChangedChestsAreDirty() throws IOException {
+        Path file = newStoreFile();
+        final int chests = 3;
+        try (ChestStore store = ChestStore.open(file)) {
+            for (int i = 0; i < chests; i++) {
+                store.create();
+            }
+            store.chest(0);
+            store.chest(2).addItem("torch", 1);
+            store.chest(2).addItem("coal", 1);
+            assertEquals(1, store.dirtyCount());
+            store.flush();
+            assertEquals(0, store.dirtyCount());
+            store.chest(2).decrement("coal", 1);
+            assertEquals(1, store.dirtyCount());
+        }
+        try (ChestStore store = ChestStore.open(file)) {
+            assertEquals(0, store.chest(0).totalItems());
+            assertEquals(1, store.chest(2).totalItems());
+        }
+    }
+
+    /**
+     * Tests that an open chest is returned again while it is in use, and
+     * that chests in later segments work.
+     *
+     * @throws IOException
+     *             if the store fails
+     */
+    @Test
+    public void testChestIdentityAndLaterSegments() throws IOException {
+        Path file = newStoreFile();
+        final int chests = 1500;
+        final int recordSize = 64;
+        try (ChestStore store = ChestStore.open(file, recordSize)) {
+            for (int i = 0; i < chests; i++) {
+                store.create();
+            }
+            MChest last = store.chest(chests - 1);
+            last.addItem("diamond", chests);
+            assertSame(last, store.chest(chests - 1));
+        }
+        try (ChestStore store = ChestStore.open(file)) {
+            assertEquals(chests,
+                    store.chest(chests - 1).itemQuantity("diamond"));
+        }
+    }
+
+    /**
+     * Tests that a chest too large for its record is reported on flush.
+     *
+     * @throws IOException
+     *             if the store fails
+     */
+    @Test
+    public void testChestTooLargeForRecord() throws IOException {
+        final int recordSize = 16;
+        final int items = 10;
+        ChestStore store = ChestStore.open(newStoreFile(), recordSize);
+        MChest chest = store.chest(store.create());
+        for (int i = 0; i < items; i++) {
+            chest.addItem("item" + i, 1);
+        }
+        boolean rejected = false;
+        try {
+            store.flush();
+        } catch (IllegalStateException e) {
+            rejected = true;
+        }
+        assertTrue(rejected);
+    }
+
+    /**
+     * Tests that a stored chest drained into a chest outside the store is
+     * written back empty.
+     *
+     * @throws IOException
+     *             if the store fails
+     */
+    @Test
+    public void testTransferToPlainChest() throws IOException {
+        Path file = newStoreFile();
+        final int five = 5;
+        try (ChestStore store = ChestStore.open(file)) {
+            store.chest(store.create()).addItem("wood", five);
+        }
+        MChest plain = new MChestOnMap();
+        try (ChestStore store = ChestStore.open(file)) {
+            plain.transferFrom(store.chest(0));
+            assertEquals(1, store.dirtyCount());
+        }
+        assertEquals(five, plain.itemQuantity("wood"));
+        try (ChestStore store = ChestStore.open(file)) {
+            assertEquals(0, store.chest(0).totalItems());
+        }
+    }
+}
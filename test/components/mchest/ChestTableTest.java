@@ -0,0 +1,131 @@
+package components.mchest;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Tests {@code ChestTable}.
+ */
+public class ChestTableTest {
+
+    /**
+     * Returns a table of three chests: {wood 3, stone 5}, {} and
+     * {stone 1, iron 2}, with a registry of its own.
+     *
+     * @return the table
+     */
+    private static ChestTable sampleTable() {
+        final int three = 3;
+        final int five = 5;
+        ChestTable table = new ChestTable(new ItemRegistry());
+        MChest chest = new MChestOnMap();
+        chest.addItem("wood", three);
+        chest.addItem("stone", five);
+        table.append(chest);
+        table.append(new MChestOnMap());
+        chest.clear();
+        chest.addItem("stone", 1);
+        chest.addItem("iron", 2);
+        table.append(chest);
+        return table;
+    }
+
+    /**
+     * Tests that chests round-trip through append and export.
+     */
+    @Test
+    public void testAppendAndExport() {
+        ChestTable table = sampleTable();
+        assertEquals(2 + 2, table.rows());
+        assertEquals(2 + 1, table.chestCount());
+        MChest chest = new MChestOnMap();
+        chest.addItem("gold", 1);
+        table.export(0, chest);
+        MChest expected = new MChestOnMap();
+        final int three = 3;
+        final int five = 5;
+        expected.addItem("wood", three);
+        expected.addItem("stone", five);
+        assertEquals(expected, chest);
+        table.export(1, chest);
+        assertEquals(0, chest.totalItems());
+        table.export(2, chest);
+        assertEquals(2, chest.itemQuantity("iron"));
+        assertEquals(1, chest.itemQuantity("stone"));
+    }
+
+    /**
+     * Tests the sums.
+     */
+    @Test
+    public void testSums() {
+        ChestTable table = sampleTable();
+        final int eleven = 11;
+        final int six = 6;
+        assertEquals(eleven, table.sum());
+        assertEquals(six, table.sumOf("stone"));
+        assertEquals(2, table.sumOf("iron"));
+        assertEquals(0, table.sumOf("gold"));
+    }
+
+    /**
+     * Tests the quantity filters.
+     */
+    @Test
+    public void testFilters() {
+        ChestTable table = sampleTable();
+        int stone = table.registry().find("stone");
+        assertEquals(2, table.countAtLeast(stone, 1));
+        assertEquals(1, table.countAtLeast(stone, 2));
+        assertArrayEquals(new int[] { 0, 2 },
+                table.chestsWithAtLeast("stone", 1));
+        final int five = 5;
+        assertArrayEquals(new int[] { 0 },
+                table.chestsWithAtLeast("stone", five));
+        assertArrayEquals(new int[0],
+                table.chestsWithAtLeast("stone", five + 1));
+        assertArrayEquals(new int[0], table.chestsWithAtLeast("gold", 1));
+    }
+
+    /**
+     * Tests the group-bys.
+     */
+    @Test
+    public void testGroupBys() {
+        ChestTable table = sampleTable();
+        ItemRegistry registry = table.registry();
+        long[] totals = table.totalsByItem();
+        final int three = 3;
+        final int six = 6;
+        assertEquals(three, totals[registry.find("wood")]);
+        assertEquals(six, totals[registry.find("stone")]);
+        assertEquals(2, totals[registry.find("iron")]);
+        int[] holders = table.holdersByItem();
+        assertEquals(2, holders[registry.find("stone")]);
+        assertEquals(1, holders[registry.find("iron")]);
+        final int eight = 8;
+        assertArrayEquals(new int[] { eight, 0, three },
+                table.totalsByChest());
+    }
+
+    /**
+     * Tests that the columns grow past their initial size.
+     */
+    @Test
+    public void testGrows() {
+        ChestTable table = new ChestTable(new ItemRegistry());
+        final int chestCount = 300;
+        MChest chest = new MChestOnMap();
+        chest.addItem("wood", 1);
+        chest.addItem("stone", 2);
+        for (int i = 0; i < chestCount; i++) {
+            table.append(chest);
+        }
+        assertEquals(2 * chestCount, table.rows());
+        assertEquals(2 * chestCount, table.sumOf("stone"));
+        table.export(chestCount - 1, chest);
+        assertEquals(2, chest.itemQuantity("stone"));
+    }
+}
@@ -0,0 +1,167 @@
+package components.mchest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+
+import org.junit.Test;
+
+/**
+ * Runs the full {@code MChest} test suite against {@code ConcurrentMChest},
+ * plus tests that mutate one chest from several threads.
+ */
+public class ConcurrentMChestTest extends MChestTest {
+
+    /**
+     * Number of worker threads in the concurrency tests.
+     */
+    private static final int THREADS = 8;
+
+    @Override
+    protected MChest constructorTest() {
+        return new ConcurrentMChest();
+    }
+
+    /**
+     * Runs {@code task} on {@code THREADS} threads, passing each its index, and
+     * waits for all of them.
+     *
+     * @param task
+     *            the work for each thread
+     * @throws InterruptedException
+     *             if interrupted while waiting
+     */
+    private static void runOnThreads(IntConsumer task)
+            throws InterruptedException {
+        Thread[] threads = new Thread[THREADS];
+        for (int t = 0; t < THREADS; t++) {
+            final int index = t;
+            threads[t] = new Thread(() -> task.accept(index));
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+    }
+
+    /**
+     * Tests that concurrent adds and removes on different items are all
+     * applied.
+     *
+     * @throws InterruptedException
+     *             if interrupted while waiting
+     */
+    @Test
+    public void testConcurrentAddRemove() throws InterruptedException {
+        ConcurrentMChest chest = new ConcurrentMChest();
+        final int rounds = 100;
+        runOnThreads(t -> {
+            for (int i = 0; i < rounds; i++) {
+                chest.addItem("item" + t, 2);
+                chest.decrement("item" + t, 1);
+            }
+        });
+        for (int t = 0; t < THREADS; t++) {
+            assertEquals(rounds, chest.itemQuantity("item" + t));
+        }
+        assertEquals(THREADS * rounds, chest.totalItems());
+        assertEquals(THREADS, chest.getItems().size());
+    }
+
+    /**
+     * Tests that concurrent single-item adds stop exactly at the capacity.
+     *
+     * @throws InterruptedException
+     *             if interrupted while waiting
+     */
+    @Test
+    public void testConcurrentAddsRespectCapacity()
+            throws InterruptedException {
+        ConcurrentMChest chest = new ConcurrentMChest();
+        final int attempts = 500;
+        final int full = 1000;
+        runOnThreads(t -> {
+            for (int i = 0; i < attempts; i++) {
+                chest.tryAddItem("stone" + (i % THREADS), 1);
+            }
+        });
+        assertTrue(chest.isFull());
+        assertEquals(full, chest.totalItems());
+        int sum = 0;
+        for (int i = 0; i < THREADS; i++) {
+            sum += chest.itemQuantity("stone" + i);
+        }
+        assertEquals(full, sum);
+    }
+
+    /**
+     * Tests that tryAddItem refuses to add to a full chest.
+     */
+    @Test
+    public void testTryAddItemFull() {
+        ConcurrentMChest chest = new ConcurrentMChest();
+        final int full = 1000;
+        assertTrue(chest.tryAddItem("stone", full));
+        assertFalse(chest.tryAddItem("dirt", 1));
+        assertFalse(chest.containsItem("dirt"));
+    }
+
+    /**
+     * Tests that addItem throws rather than dropping items when the chest is
+     * already full.
+     */
+    @Test(expected = IllegalStateException.class)
+    public void testAddItemFullThrows() {
+        ConcurrentMChest chest = new ConcurrentMChest();
+        final int full = 1000;
+        chest.addItem("stone", full);
+        chest.addItem("dirt", 1);
+    }
+
+    /**
+     * Tests that two threads comparing the same pair of chests in opposite
+     * directions do not deadlock.
+     *
+     * @throws InterruptedException
+     *             if interrupted while waiting
+     */
+    @Test
+    public void testConcurrentEqualsInBothDirections()
+            throws InterruptedException {
+        ConcurrentMChest a = new ConcurrentMChest();
+        ConcurrentMChest b = new ConcurrentMChest();
+        final int items = 50;
+        for (int i = 0; i < items; i++) {
+            a.addItem("item" + i, 1);
+            b.addItem("item" + i, 1);
+        }
+        final int rounds = 2000;
+        AtomicInteger unequal = new AtomicInteger();
+        Thread forward = new Thread(() -> {
+            for (int i = 0; i < rounds; i++) {
+                if (!a.equals(b)) {
+                    unequal.incrementAndGet();
+                }
+            }
+        });
+        Thread backward = new Thread(() -> {
+            for (int i = 0; i < rounds; i++) {
+                if (!b.equals(a)) {
+                    unequal.incrementAndGet();
+                }
+            }
+        });
+        forward.start();
+        backward.start();
+        final long waitMillis = 30000;
+        forward.join(waitMillis);
+        backward.join(waitMillis);
+        assertFalse(forward.isAlive());
+        assertFalse(backward.isAlive());
+        assertEquals(0, unequal.get());
+        assertEquals(a.hashCode(), b.hashCode());
+    }
+}
@@ -0,0 +1,60 @@
+package components.mchest;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for the ItemRegistry class.
+ */
+public class ItemRegistryTest {
+
+    /**
+     * Tests that IDs are assigned densely in registration order.
+     */
+    @Test
+    public void testIdsAreDense() {
+        ItemRegistry registry = new ItemRegistry();
+        assertEquals(0, registry.idOf("wood"));
+        assertEquals(1, registry.idOf("stick"));
+        assertEquals(2, registry.size());
+    }
+
+    /**
+     * Tests that registering a name twice returns the same ID.
+     */
+    @Test
+    public void testIdOfIsStable() {
+        ItemRegistry registry = new ItemRegistry();
+        int wood = registry.idOf("wood");
+        registry.idOf("stick");
+        assertEquals(wood, registry.idOf("wood"));
+        assertEquals(2, registry.size());
+    }
+
+    /**
+     * Tests that find does not register unknown names.
+     */
+    @Test
+    public void testFindUnknown() {
+        ItemRegistry registry = new ItemRegistry();
+        assertEquals(-1, registry.find("bedrock"));
+        assertEquals(0, registry.size());
+    }
+
+    /**
+     * Tests that names survive the registry growing.
+     */
+    @Test
+    public void testNameAfterGrowth() {
+        ItemRegistry registry = new ItemRegistry();
+        final int itemCount = 500;
+        for (int i = 0; i < itemCount; i++) {
+            registry.idOf("item" + i);
+        }
+        for (int i = 0; i < itemCount; i++) {
+            assertEquals("item" + i, registry.name(i));
+            assertEquals(i, registry.find("item" + i));
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package components.mchest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for the MChestCodec class.
+ */
+public class MChestCodecTest {
+
+    /**
+     * Builds a chest with a few items, including a multi-byte quantity and a
+     * non-ASCII name.
+     *
+     * @return the chest
+     */
+    private static MChest sampleChest() {
+        MChest chest = new MChestOnMap();
+        final int many = 300;
+        final int three = 3;
+        chest.addItem("wood", three);
+        chest.addItem("stone", many);
+        chest.addItem("épée", 1);
+        return chest;
+    }
+
+    /**
+     * Tests that a chest round-trips through a ByteBuffer by name.
+     */
+    @Test
+    public void testByteBufferRoundTrip() {
+        MChestCodec codec = new MChestCodec();
+        MChest chest = sampleChest();
+        ByteBuffer buffer = ByteBuffer.allocate(codec.encodedSize(chest));
+        codec.encode(chest, buffer);
+        assertEquals(0, buffer.remaining());
+        buffer.flip();
+        MChest decoded = new MChestOnMap();
+        decoded.addItem("junk", 1);
+        codec.decode(buffer, decoded);
+        assertEquals(chest, decoded);
+        assertEquals(0, buffer.remaining());
+    }
+
+    /**
+     * Tests that a chest round-trips through DataOutput and DataInput by
+     * registry ID, into another kernel implementation.
+     *
+     * @throws IOException
+     *             never
+     */
+    @Test
+    public void testStreamRoundTripWithDictionary() throws IOException {
+        MChestCodec codec = new MChestCodec(new ItemRegistry());
+        MChest chest = sampleChest();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        codec.write(chest, new DataOutputStream(bytes));
+        assertEquals(codec.encodedSize(chest), bytes.size());
+        MChest decoded = new MChestOnIntTable();
+        codec.read(new DataInputStream(
+                new ByteArrayInputStream(bytes.toByteArray())), decoded);
+        assertEquals(chest, decoded);
+    }
+
+    /**
+     * Tests that the dictionary encoding is smaller than the name encoding
+     * and that an empty chest takes two bytes.
+     */
+    @Test
+    public void testEncodedSizes() {
+        MChest chest = sampleChest();
+        int byName = new MChestCodec().encodedSize(chest);
+        int byId = new MChestCodec(new ItemRegistry()).encodedSize(chest);
+        assertTrue(byId < byName);
+        assertEquals(2, new MChestCodec().encodedSize(new MChestOnMap()));
+    }
+
+    /**
+     * Tests varint encoding at the byte boundaries.
+     */
+    @Test
+    public void testVarints() {
+        final int[] values = { 0, 127, 128, 16383, 16384, Integer.MAX_VALUE };
+        final int[] sizes = { 1, 1, 2, 2, 3, 5 };
+        final int capacity = 32;
+        ByteBuffer buffer = ByteBuffer.allocate(capacity);
+        for (int i = 0; i < values.length; i++) {
+            assertEquals(sizes[i], MChestCodec.varintSize(values[i]));
+            MChestCodec.putVarint(buffer, values[i]);
+        }
+        buffer.flip();
+        for (int value : values) {
+            assertEquals(value, MChestCodec.getVarint(buffer));
+        }
+    }
+
+    /**
+     * Tests that decoding an ID encoding without a dictionary is rejected.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testDecodeIdsWithoutDictionary() {
+        MChestCodec withIds = new MChestCodec(new ItemRegistry());
+        MChest chest = sampleChest();
+        ByteBuffer buffer = ByteBuffer.allocate(withIds.encodedSize(chest));
+        withIds.encode(chest, buffer);
+        buffer.flip();
+        new MChestCodec().decode(buffer, new MChestOnMap());
+    }
+
+    /**
+     * Tests that every truncation of an encoding is rejected with an
+     * IllegalArgumentException and leaves the target chest unchanged.
+     */
+    @Test
+    public void testDecodeTruncated() {
+        MChestCodec codec = new MChestCodec();
+        MChest chest = sampleChest();
+        ByteBuffer buffer = ByteBuffer.allocate(codec.encodedSize(chest));
+        codec.encode(chest, buffer);
+        final int five = 5;
+        MChest target = new MChestOnMap();
+        target.addItem("keep", five);
+        for (int length = 0; length < buffer.capacity(); length++) {
+            ByteBuffer prefix = ByteBuffer.wrap(buffer.array(), 0, length);
+            boolean rejected = false;
+            try {
+                codec.decode(prefix, target);
+            } catch (IllegalArgumentException e) {
+                rejected = true;
+            }
+            assertTrue(rejected);
+            assertEquals(1, target.distinctItems());
+            assertEquals(five, target.itemQuantity("keep"));
+        }
+    }
+
+    /**
+     * Tests that a chest taken past capacity by a single addItem decodes
+     * whatever order its entries are encoded in.
+     */
+    @Test
+    public void testDecodeOverfilledChestInEveryOrder() {
+        final int[][] orders = { { 0, 1, 2 }, { 0, 2, 1 }, { 1, 0, 2 },
+                { 1, 2, 0 }, { 2, 0, 1 }, { 2, 1, 0 } };
+        final String[] items = { "a", "b", "c" };
+        final int[] quantities = { 500, 499, 600 };
+        final int total = 1599;
+        final int bufferSize = 32;
+        MChestCodec codec = new MChestCodec();
+        for (int[] order : orders) {
+            ByteBuffer buffer = ByteBuffer.allocate(bufferSize);
+            buffer.put((byte) MChestCodec.NAMES);
+            MChestCodec.putVarint(buffer, items.length);
+            for (int i : order) {
+                MChestCodec.putVarint(buffer, 1);
+                buffer.put((byte) items[i].charAt(0));
+                MChestCodec.putVarint(buffer, quantities[i]);
+            }
+            buffer.flip();
+            MChest chest = new ConcurrentMChest();
+            codec.decode(buffer, chest);
+            assertEquals(total, chest.totalItems());
+            for (int i = 0; i < items.length; i++) {
+                assertEquals(quantities[i], chest.itemQuantity(items[i]));
+            }
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package components.mchest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+
+import org.junit.Test;
+
+/**
+ * Tests {@code MChestOnMap} listeners and {@code MChestDeltaBatcher}.
+ */
+public class MChestDeltaBatcherTest {
+
+    /**
+     * The chest of every batch delivered by a flush.
+     */
+    private final ArrayList<MChest> chests = new ArrayList<>();
+
+    /**
+     * The batch delivered for the chest at the same index of
+     * {@code chests}, as strings.
+     */
+    private final ArrayList<String> batches = new ArrayList<>();
+
+    /**
+     * Returns a batcher recording into {@code chests} and {@code batches}.
+     *
+     * @return the batcher
+     */
+    private MChestDeltaBatcher recordingBatcher() {
+        return new MChestDeltaBatcher((chest, deltas) -> {
+            StringBuilder batch = new StringBuilder();
+            for (MChestDelta delta : deltas) {
+                batch.append(delta);
+            }
+            this.chests.add(chest);
+            this.batches.add(batch.toString());
+        });
+    }
+
+    /**
+     * Tests that listeners see each change with its old and new quantity.
+     */
+    @Test
+    public void testListenerSeesChanges() {
+        MChestOnMap chest = new MChestOnMap();
+        StringBuilder seen = new StringBuilder();
+        MChestListener listener = (source, item, oldQty, newQty) -> seen
+                .append(item).append(oldQty).append(newQty).append(' ');
+        chest.addListener(listener);
+        final int three = 3;
+        chest.addItem("wood", three);
+        chest.removeItem("wood", 1);
+        chest.addItem("stone", 1);
+        chest.clear();
+        chest.removeListener(listener);
+        chest.addItem("wood", 1);
+        assertEquals("wood03 wood32 stone01 wood20 stone10 ",
+                seen.toString());
+    }
+
+    /**
+     * Tests that transferFrom reports changes to both chests.
+     */
+    @Test
+    public void testTransferReportsBothChests() {
+        MChestOnMap target = new MChestOnMap();
+        MChestOnMap source = new MChestOnMap();
+        target.addItem("wood", 2);
+        target.addItem("stone", 1);
+        source.addItem("wood", 2);
+        source.addItem("iron", 1);
+        MChestDeltaBatcher batcher = this.recordingBatcher();
+        batcher.watch(target);
+        batcher.watch(source);
+        target.transferFrom(source);
+        batcher.flush();
+        assertEquals(2, this.chests.size());
+        int targetBatch = this.chests.indexOf(target);
+        assertEquals("(stone, 1 -> 0)(iron, 0 -> 1)",
+                this.batches.get(targetBatch));
+        assertEquals("(wood, 2 -> 0)(iron, 1 -> 0)",
+                this.batches.get(1 - targetBatch));
+    }
+
+    /**
+     * Tests that changes within a tick coalesce to one delta per item and
+     * that changes which cancel out are dropped.
+     */
+    @Test
+    public void testCoalescesPerTick() {
+        MChestOnMap chest = new MChestOnMap();
+        chest.addItem("stone", 2);
+        MChestDeltaBatcher batcher = this.recordingBatcher();
+        batcher.watch(chest);
+        final int five = 5;
+        chest.addItem("wood", 2);
+        chest.addItem("wood", five);
+        chest.decrement("wood", 1);
+        chest.addItem("iron", 1);
+        chest.removeItem("iron", 1);
+        chest.decrement("stone", 1);
+        assertEquals(1, batcher.pendingChests());
+        batcher.flush();
+        assertEquals(1, this.batches.size());
+        assertSame(chest, this.chests.get(0));
+        assertEquals("(wood, 0 -> 6)(stone, 2 -> 1)",
+                this.batches.get(0));
+        batcher.flush();
+        assertEquals(1, this.batches.size());
+        assertEquals(0, batcher.pendingChests());
+    }
+
+    /**
+     * Tests that a tick whose changes all cancel out delivers nothing.
+     */
+    @Test
+    public void testNoBatchWhenUnchanged() {
+        MChestOnMap chest = new MChestOnMap();
+        MChestDeltaBatcher batcher = this.recordingBatcher();
+        batcher.watch(chest);
+        chest.addItem("wood", 1);
+        chest.clear();
+        batcher.flush();
+        assertEquals(0, this.batches.size());
+    }
+
+    /**
+     * Tests that equal chests get separate batches.
+     */
+    @Test
+    public void testEqualChestsBatchedSeparately() {
+        MChestOnMap first = new MChestOnMap();
+        MChestOnMap second = new MChestOnMap();
+        MChestDeltaBatcher batcher = this.recordingBatcher();
+        batcher.watch(first);
+        batcher.watch(second);
+        first.addItem("wood", 1);
+        second.addItem("wood", 1);
+        batcher.unwatch(second);
+        second.addItem("wood", 1);
+        batcher.flush();
+        assertEquals(2, this.batches.size());
+        assertEquals(this.batches.get(0), this.batches.get(1));
+        assertEquals("(wood, 0 -> 1)", this.batches.get(1));
+    }
+}
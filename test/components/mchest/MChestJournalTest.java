@@ -0,0 +1,240 @@
+package components.mchest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for the MChestJournal class.
+ */
+public class MChestJournalTest {
+
+    /**
+     * Flush interval long enough that tests control every flush.
+     */
+    private static final long TICK = 60_000;
+
+    /**
+     * Tests that every kind of change survives closing and reopening.
+     *
+     * @throws IOException
+     *             if the journal fails
+     */
+    @Test
+    public void testReplayRestoresChests() throws IOException {
+        Path dir = Files.createTempDirectory("journal");
+        final int five = 5;
+        final int three = 3;
+        try (MChestJournal journal = MChestJournal.open(dir, TICK)) {
+            MChest first = journal.chest(0);
+            MChest second = journal.chest(1);
+            MChest third = journal.chest(2);
+            first.addItem("wood", five);
+            first.removeItem("wood", 2);
+            second.addItem("stone", 1);
+            second.clear();
+            second.addItem("coal", three);
+            third.transferFrom(second);
+        }
+        try (MChestJournal journal = MChestJournal.open(dir, TICK)) {
+            assertEquals(three, journal.chest(0).itemQuantity("wood"));
+            assertEquals(0, journal.chest(1).totalItems());
+            assertEquals(three, journal.chest(2).itemQuantity("coal"));
+            assertFalse(journal.chest(2).containsItem("stone"));
+        }
+    }
+
+    /**
+     * Tests that changes made after a compaction are replayed over the
+     * snapshot, and the ones before it are not replayed twice.
+     *
+     * @throws IOException
+     *             if the journal fails
+     */
+    @Test
+    public void testCompactionThenReplay() throws IOException {
+        Path dir = Files.createTempDirectory("journal");
+        final int four = 4;
+        try (MChestJournal journal = MChestJournal.open(dir, TICK)) {
+            journal.chest(0).addItem("iron", 2);
+            journal.sync();
+            journal.compact();
+            journal.chest(0).addItem("iron", 2);
+            journal.chest(1).addItem("gold", 1);
+        }
+        try (MChestJournal journal = MChestJournal.open(dir, TICK)) {
+            assertEquals(four, journal.chest(0).itemQuantity("iron"));
+            assertEquals(1, journal.chest(1).itemQuantity("gold"));
+        }
+    }
+
+    /**
+     * Tests that a torn record at the end of the journal is dropped and
+     * every record before it is kept.
+     *
+     * @throws IOException
+     *             if the journal fails
+     */
+    @Test
+    public void testTornTailIsTruncated() throws IOException {
+        Path dir = Files.createTempDirectory("journal");
+        try (MChestJournal journal = MChestJournal.open(dir, TICK)) {
+            journal.chest(0).addItem("sand", 1);
+            journal.sync();
+            journal.chest(0).addItem("glass", 1);
+        }
+        Path file = dir.resolve("journal");
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 1);
+        }
+        try (MChestJournal journal = MChestJournal.open(dir, TICK)) {
+            assertEquals(1, journal.chest(0).itemQuantity("sand"));
+            assertFalse(journal.chest(0).containsItem("glass"));
+            journal.chest(0).addItem("dirt", 1);
+        }
+        try (MChestJournal journal = MChestJournal.open(dir, TICK)) {
+            assertEquals(2, journal.chest(0).totalItems());
+        }
+    }
+
+    /**
+     * Tests that the background flusher writes changes without an explicit
+     * sync.
+     *
+     * @throws IOException
+     *             if the journal fails
+     * @throws InterruptedException
+     *             if the test is interrupted
+     */
+    @Test
+    public void testFlusherWritesChanges()
+            throws IOException, InterruptedException {
+        Path dir = Files.createTempDirectory("journal");
+        final long tick = 10;
+        final long wait = 500;
+        MChestJournal journal = MChestJournal.open(dir, tick);
+        long before = Files.size(dir.resolve("journal"));
+        journal.chest(0).addItem("torch", 1);
+        long deadline = System.currentTimeMillis() + wait;
+        while (Files.size(dir.resolve("journal")) == before
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(tick);
+        }
+        assertFalse(Files.size(dir.resolve("journal")) == before);
+        journal.close();
+    }
+
+    /**
+     * Tests that the flusher compacts a journal past its size threshold.
+     *
+     * @throws IOException
+     *             if the journal fails
+     * @throws InterruptedException
+     *             if the test is interrupted
+     */
+    @Test
+    public void testFlusherCompacts() throws IOException, InterruptedException {
+        Path dir = Files.createTempDirectory("journal");
+        final long tick = 10;
+        final long wait = 500;
+        MChestJournal journal = MChestJournal.open(dir, tick, 1);
+        journal.chest(0).addItem("torch", 2);
+        long deadline = System.currentTimeMillis() + wait;
+        while (!Files.exists(dir.resolve("snapshot"))
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(tick);
+        }
+        journal.close();
+        try (MChestJournal reopened = MChestJournal.open(dir, TICK)) {
+            assertEquals(2, reopened.chest(0).itemQuantity("torch"));
+        }
+        assertTrue(Files.exists(dir.resolve("snapshot")));
+    }
+
+    /**
+     * Tests that a transfer between chests of two journals is recorded in
+     * both.
+     *
+     * @throws IOException
+     *             if a journal fails
+     */
+    @Test
+    public void testTransferBetweenJournals() throws IOException {
+        Path sourceDir = Files.createTempDirectory("journal");
+        Path targetDir = Files.createTempDirectory("journal");
+        final int four = 4;
+        try (MChestJournal source = MChestJournal.open(sourceDir, TICK);
+                MChestJournal target = MChestJournal.open(targetDir, TICK)) {
+            source.chest(0).addItem("iron", four);
+            target.chest(0).addItem("gold", 1);
+            target.chest(0).transferFrom(source.chest(0));
+        }
+        try (MChestJournal source = MChestJournal.open(sourceDir, TICK);
+                MChestJournal target = MChestJournal.open(targetDir, TICK)) {
+            assertEquals(0, source.chest(0).totalItems());
+            assertEquals(four, target.chest(0).itemQuantity("iron"));
+            assertFalse(target.chest(0).containsItem("gold"));
+        }
+    }
+
+    /**
+     * Tests that a chest taken past capacity by a single addItem survives
+     * compaction and reopening.
+     *
+     * @throws IOException
+     *             if the journal fails
+     */
+    @Test
+    public void testOverfilledChestSurvivesCompaction() throws IOException {
+        Path dir = Files.createTempDirectory("journal");
+        final int a = 500;
+        final int b = 499;
+        final int c = 600;
+        try (MChestJournal journal = MChestJournal.open(dir, TICK)) {
+            MChest chest = journal.chest(0);
+            chest.addItem("a", a);
+            chest.addItem("b", b);
+            chest.addItem("c", c);
+            journal.compact();
+        }
+        try (MChestJournal journal = MChestJournal.open(dir, TICK)) {
+            assertEquals(a + b + c, journal.chest(0).totalItems());
+            assertEquals(c, journal.chest(0).itemQuantity("c"));
+        }
+    }
+
+    /**
+     * Tests that draining a journaled chest into a chest outside any journal
+     * is recorded as the journaled chest's reset.
+     *
+     * @throws IOException
+     *             if the journal fails
+     */
+    @Test
+    public void testTransferToPlainChest() throws IOException {
+        Path dir = Files.createTempDirectory("journal");
+        final int four = 4;
+        MChest plain = new MChestOnMap();
+        try (MChestJournal journal = MChestJournal.open(dir, TICK)) {
+            journal.chest(0).addItem("iron", four);
+            journal.chest(1).addItem("gold", 1);
+            plain.transferFrom(journal.chest(0));
+            MChest temp = journal.chest(1).newInstance();
+            temp.transferFrom(journal.chest(1));
+        }
+        assertEquals(four, plain.itemQuantity("iron"));
+        try (MChestJournal journal = MChestJournal.open(dir, TICK)) {
+            assertEquals(0, journal.chest(0).totalItems());
+            assertEquals(0, journal.chest(1).totalItems());
+        }
+    }
+}
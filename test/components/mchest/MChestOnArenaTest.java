@@ -0,0 +1,137 @@
+package components.mchest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Runs the full {@code MChest} test suite against {@code MChestOnArena},
+ * plus tests for block growth, freeing and compaction of the arena.
+ */
+public class MChestOnArenaTest extends MChestTest {
+
+    /**
+     * The arena shared by the chests of one test.
+     */
+    private final MChestArena arena = new MChestArena();
+
+    @Override
+    protected MChest constructorTest() {
+        return new MChestOnArena(this.arena);
+    }
+
+    /**
+     * Tests that every item survives the chest's block growing several
+     * times.
+     */
+    @Test
+    public void testManyDistinctItems() {
+        MChest chest = this.constructorTest();
+        MChest neighbor = this.constructorTest();
+        final int itemCount = 100;
+        final int quantities = 9;
+        for (int i = 1; i <= itemCount; i++) {
+            chest.addItem("item" + i, 1 + i % quantities);
+            neighbor.addItem("item" + i, 1);
+        }
+        for (int i = 1; i <= itemCount; i++) {
+            assertEquals(1 + i % quantities, chest.itemQuantity("item" + i));
+        }
+        assertEquals(itemCount, chest.distinctItems());
+        assertEquals(itemCount, neighbor.totalItems());
+    }
+
+    /**
+     * Tests that compaction reclaims the blocks left behind by growth and
+     * keeps every chest's contents.
+     */
+    @Test
+    public void testCompactKeepsContents() {
+        MChestOnArena first = new MChestOnArena(this.arena);
+        MChestOnArena second = new MChestOnArena(this.arena);
+        final int itemCount = 20;
+        for (int i = 0; i < itemCount; i++) {
+            first.addItem("item" + i, 2);
+            second.addItem("other" + i, 1);
+        }
+        first.decrement("item0", 2);
+        assertTrue(this.arena.wastedBytes() > 0);
+        this.arena.compact();
+        assertEquals(0, this.arena.wastedBytes());
+        assertEquals(itemCount - 1, first.distinctItems());
+        assertEquals(2 * (itemCount - 1), first.totalItems());
+        assertEquals(1, second.itemQuantity("other7"));
+        first.addItem("item0", 1);
+        assertEquals(1, first.itemQuantity("item0"));
+    }
+
+    /**
+     * Tests that a released chest's handle is reused by the next chest,
+     * which starts out empty.
+     */
+    @Test
+    public void testReleaseReusesHandle() {
+        MChestOnArena chest = new MChestOnArena(this.arena);
+        chest.addItem("stone", 2);
+        assertEquals(1, this.arena.liveChests());
+        chest.release();
+        assertEquals(0, this.arena.liveChests());
+        MChestOnArena reused = new MChestOnArena(this.arena);
+        assertEquals(1, this.arena.liveChests());
+        assertEquals(0, reused.totalItems());
+        assertFalse(reused.containsItem("stone"));
+    }
+
+    /**
+     * Tests transferFrom between chests of different arenas.
+     */
+    @Test
+    public void testTransferFromOtherArena() {
+        MChest chest = this.constructorTest();
+        MChest source = new MChestOnArena(new MChestArena());
+        final int five = 5;
+        chest.addItem("dirt", 1);
+        source.addItem("sand", five);
+        chest.transferFrom(source);
+        assertEquals(five, chest.itemQuantity("sand"));
+        assertFalse(chest.containsItem("dirt"));
+        assertEquals(0, source.totalItems());
+    }
+
+    /**
+     * Tests that an arena holding one small chest reserves a small slab
+     * rather than a full-size one.
+     */
+    @Test
+    public void testSmallArenaStaysSmall() {
+        final long fullSlab = 1 << 20;
+        MChestOnArena chest = new MChestOnArena(this.arena);
+        chest.addItem("stone", 2);
+        assertTrue(this.arena.reservedBytes() < fullSlab);
+    }
+
+    /**
+     * Tests that a chest emptied before compaction can be filled again
+     * after the slabs it used were dropped.
+     */
+    @Test
+    public void testAddAfterCompactingEmptiedChest() {
+        final int chestCount = 3000;
+        MChestOnArena[] chests = new MChestOnArena[chestCount];
+        for (int i = 0; i < chestCount; i++) {
+            chests[i] = new MChestOnArena(this.arena);
+            chests[i].addItem("item" + i, 1);
+        }
+        MChestOnArena last = chests[chestCount - 1];
+        for (int i = 0; i < chestCount - 1; i++) {
+            chests[i].release();
+        }
+        last.clear();
+        this.arena.compact();
+        last.addItem("stone", 2);
+        assertEquals(2, last.itemQuantity("stone"));
+        assertEquals(1, last.distinctItems());
+    }
+}
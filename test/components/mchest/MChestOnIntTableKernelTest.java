@@ -0,0 +1,14 @@
+package components.mchest;
+
+/**
+ * Runs the {@code MChestOnMap} kernel test suite against
+ * {@code MChestOnIntTable}.
+ */
+public class MChestOnIntTableKernelTest extends MChestOnMapTest {
+
+    @Override
+    protected MChest constructorTest() {
+        return new MChestOnIntTable();
+    }
+
+}
@@ -0,0 +1,71 @@
+package components.mchest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Runs the full {@code MChest} test suite against {@code MChestOnIntTable},
+ * plus tests for its probing, growth and deletion behavior.
+ */
+public class MChestOnIntTableTest extends MChestTest {
+
+    @Override
+    protected MChest constructorTest() {
+        return new MChestOnIntTable();
+    }
+
+    /**
+     * Tests that every item survives the table growing several times.
+     */
+    @Test
+    public void testManyDistinctItems() {
+        MChest chest = this.constructorTest();
+        final int itemCount = 200;
+        for (int i = 1; i <= itemCount; i++) {
+            chest.addItem("item" + i, i);
+        }
+        for (int i = 1; i <= itemCount; i++) {
+            assertEquals(i, chest.itemQuantity("item" + i));
+        }
+        assertEquals(itemCount, chest.getItems().size());
+    }
+
+    /**
+     * Tests that removing items from the middle of probe runs keeps the
+     * remaining items reachable.
+     */
+    @Test
+    public void testRemoveKeepsOtherItemsReachable() {
+        MChest chest = this.constructorTest();
+        final int itemCount = 100;
+        for (int i = 0; i < itemCount; i++) {
+            chest.addItem("block" + i, 1);
+        }
+        for (int i = 0; i < itemCount; i += 2) {
+            chest.removeItem("block" + i, 1);
+        }
+        for (int i = 0; i < itemCount; i++) {
+            assertEquals(i % 2 == 1, chest.containsItem("block" + i));
+        }
+        assertEquals(itemCount / 2, chest.totalItems());
+    }
+
+    /**
+     * Tests that colliding item names ("Aa" and "BB" share a hash code) are
+     * stored and removed independently.
+     */
+    @Test
+    public void testCollidingItemNames() {
+        MChest chest = this.constructorTest();
+        final int three = 3;
+        chest.addItem("Aa", 2);
+        chest.addItem("BB", three);
+        chest.removeItem("Aa", 2);
+        assertFalse(chest.containsItem("Aa"));
+        assertTrue(chest.containsItem("BB"));
+        assertEquals(three, chest.itemQuantity("BB"));
+    }
+}
@@ -0,0 +1,45 @@
+package components.mchest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import org.junit.Test;
+
+/**
+ * Runs the full {@code MChest} test suite against {@code MChestOnItemIds},
+ * plus tests for its handling of item IDs.
+ */
+public class MChestOnItemIdsTest extends MChestTest {
+
+    @Override
+    protected MChest constructorTest() {
+        return new MChestOnItemIds();
+    }
+
+    /**
+     * Tests that an item name never seen by the registry is reported as absent
+     * without being registered.
+     */
+    @Test
+    public void testUnregisteredItem() {
+        MChest chest = this.constructorTest();
+        String item = "never-registered-" + System.nanoTime();
+        assertFalse(chest.containsItem(item));
+        assertEquals(0, chest.itemQuantity(item));
+        assertEquals(-1, ItemRegistry.shared().find(item));
+    }
+
+    /**
+     * Tests that adding an item with a large ID grows the count array.
+     */
+    @Test
+    public void testAddAfterManyRegistrations() {
+        MChest chest = this.constructorTest();
+        final int itemCount = 100;
+        for (int i = 0; i < itemCount; i++) {
+            ItemRegistry.shared().idOf("ids-test-item" + i);
+        }
+        chest.addItem("ids-test-item" + (itemCount - 1), 2);
+        assertEquals(2, chest.itemQuantity("ids-test-item" + (itemCount - 1)));
+    }
+}
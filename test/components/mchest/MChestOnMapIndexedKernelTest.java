@@ -0,0 +1,14 @@
+package components.mchest;
+
+/**
+ * Runs the {@code MChestOnMap} kernel test suite against an indexed
+ * {@code MChestOnMap}.
+ */
+public class MChestOnMapIndexedKernelTest extends MChestOnMapTest {
+
+    @Override
+    protected MChest constructorTest() {
+        return new MChestOnMap(true);
+    }
+
+}
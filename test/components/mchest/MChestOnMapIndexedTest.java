@@ -0,0 +1,81 @@
+package components.mchest;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import components.list.List;
+
+/**
+ * Runs the full {@code MChest} test suite against {@code MChestOnMap} with
+ * its quantity index turned on, plus tests that the index follows every
+ * change to the chest.
+ */
+public class MChestOnMapIndexedTest extends MChestTest {
+
+    @Override
+    protected MChest constructorTest() {
+        return new MChestOnMap(true);
+    }
+
+    /**
+     * Tests that range queries see quantities changed by adds and removals.
+     */
+    @Test
+    public void testIndexFollowsChanges() {
+        MChest chest = this.constructorTest();
+        final int four = 4;
+        final int five = 5;
+        chest.addItem("iron", 2);
+        chest.addItem("gold", four);
+        chest.addItem("iron", 2);
+        chest.decrement("gold", 3);
+        List<String> atLeast = chest.getItemsByQuantity(four);
+        atLeast.moveToStart();
+        assertEquals(1, atLeast.rightLength());
+        assertEquals("iron", atLeast.rightFront());
+        chest.removeItem("iron", five);
+        assertEquals(1, chest.getItemsByQuantity(1).rightLength());
+        assertEquals(1, chest.getItemsByQuantityAtMost(1).rightLength());
+    }
+
+    /**
+     * Tests that getItemsByQuantity returns names in increasing order of
+     * quantity.
+     */
+    @Test
+    public void testGetItemsByQuantityOrdered() {
+        MChest chest = this.constructorTest();
+        final int five = 5;
+        final int seven = 7;
+        chest.addItem("emerald", seven);
+        chest.addItem("coal", 2);
+        chest.addItem("lapis", five);
+        List<String> items = chest.getItemsByQuantity(2);
+        items.moveToStart();
+        assertEquals("coal", items.removeRightFront());
+        assertEquals("lapis", items.removeRightFront());
+        assertEquals("emerald", items.removeRightFront());
+    }
+
+    /**
+     * Tests that newInstance keeps the index, and that transferFrom moves or
+     * rebuilds it.
+     */
+    @Test
+    public void testNewInstanceAndTransferKeepIndex() {
+        MChest chest = this.constructorTest();
+        MChest copy = chest.newInstance();
+        MChest plain = new MChestOnMap();
+        final int three = 3;
+        plain.addItem("stone", three);
+        plain.addItem("dirt", 1);
+        copy.transferFrom(plain);
+        List<String> top = copy.topItems(1);
+        top.moveToStart();
+        assertEquals("stone", top.rightFront());
+        chest.transferFrom(copy);
+        assertEquals(2, chest.bottomItems(three).rightLength());
+        assertEquals(0, copy.topItems(1).rightLength());
+    }
+}
@@ -14,6 +14,17 @@ import components.map.Map.Pair;
  */
 public class MChestOnMapTest {
 
+    /**
+     * Invokes the no-argument constructor of the implementation under test.
+     * Subclasses override this to run the same tests against another kernel
+     * implementation.
+     *
+     * @return the new, empty chest
+     */
+    protected MChest constructorTest() {
+        return new MChestOnMap();
+    }
+
     // --- Add Item Tests ---
 
     /**
@@ -21,7 +32,7 @@ public class MChestOnMapTest {
      */
     @Test
     public void testAddNewItem() {
-        MChest chest = new MChestOnMap();
+        MChest chest = this.constructorTest();
         final int three = 3;
         chest.addItem("diamond", three);
         assertEquals(three, chest.itemQuantity("diamond"));
@@ -32,7 +43,7 @@ public class MChestOnMapTest {
      */
     @Test
     public void testAddExistingItem() {
-        MChest chest = new MChestOnMap();
+        MChest chest = this.constructorTest();
         final int five = 5;
         final int two = 2;
         final int seven = 7;
@@ -46,7 +57,7 @@ public class MChestOnMapTest {
      */
     @Test
     public void testAddItemToReachFull() {
-        MChest chest = new MChestOnMap();
+        MChest chest = this.constructorTest();
         final int almostFull = 999;
         final int one = 1;
         chest.addItem("feather", almostFull);
@@ -62,7 +73,7 @@ public class MChestOnMapTest {
      */
     @Test
     public void testRemoveFullQuantity() {
-        MChest chest = new MChestOnMap();
+        MChest chest = this.constructorTest();
         final int four = 4;
         chest.addItem("gold", four);
         Pair<String, Integer> removed = chest.removeItem("gold", four);
@@ -76,7 +87,7 @@ public class MChestOnMapTest {
      */
     @Test
     public void testRemovePartialQuantity() {
-        MChest chest = new MChestOnMap();
+        MChest chest = this.constructorTest();
         final int ten = 10;
         final int four = 4;
         final int six = 6;
@@ -90,7 +101,7 @@ public class MChestOnMapTest {
      */
     @Test
     public void testRemoveAfterMultipleAdds() {
-        MChest chest = new MChestOnMap();
+        MChest chest = this.constructorTest();
         final int three = 3;
         final int two = 2;
         final int five = 5;
@@ -108,7 +119,7 @@ public class MChestOnMapTest {
      */
     @Test
     public void testIsFullFalse() {
-        MChest chest = new MChestOnMap();
+        MChest chest = this.constructorTest();
         final int halfFull = 500;
         chest.addItem("stone", halfFull);
         assertFalse(chest.isFull());
@@ -119,7 +130,7 @@ public class MChestOnMapTest {
      */
     @Test
     public void testIsFullTrue() {
-        MChest chest = new MChestOnMap();
+        MChest chest = this.constructorTest();
         final int full = 1000;
         chest.addItem("stone", full);
         assertTrue(chest.isFull());
@@ -132,7 +143,7 @@ public class MChestOnMapTest {
      */
     @Test
     public void testContainsItemTrue() {
-        MChest chest = new MChestOnMap();
+        MChest chest = this.constructorTest();
         final int one = 1;
         chest.addItem("apple", one);
         assertTrue(chest.containsItem("apple"));
@@ -143,7 +154,7 @@ public class MChestOnMapTest {
      */
     @Test
     public void testContainsItemFalse() {
-        MChest chest = new MChestOnMap();
+        MChest chest = this.constructorTest();
         assertFalse(chest.containsItem("netherite"));
     }
 
@@ -154,7 +165,7 @@ public class MChestOnMapTest {
      */
     @Test
     public void testItemQuantityExisting() {
-        MChest chest = new MChestOnMap();
+        MChest chest = this.constructorTest();
         final int four = 4;
         chest.addItem("bread", four);
         assertEquals(four, chest.itemQuantity("bread"));
@@ -165,8 +176,153 @@ public class MChestOnMapTest {
      */
     @Test
     public void testItemQuantityNonexistent() {
-        MChest chest = new MChestOnMap();
+        MChest chest = this.constructorTest();
         final int zero = 0;
         assertEquals(zero, chest.itemQuantity("obsidian"));
     }
+
+    // --- totalItems Tests ---
+
+    /**
+     * Tests that the running total tracks additions and partial removals.
+     */
+    @Test
+    public void testTotalItemsAfterAddAndRemove() {
+        MChest chest = this.constructorTest();
+        final int ten = 10;
+        final int four = 4;
+        final int three = 3;
+        final int nine = 9;
+        chest.addItem("coal", ten);
+        chest.addItem("iron", three);
+        chest.removeItem("coal", four);
+        assertEquals(nine, chest.totalItems());
+    }
+
+    /**
+     * Tests that the running total drops by the actual quantity removed when
+     * more than the stored quantity is requested.
+     */
+    @Test
+    public void testTotalItemsAfterOverRemove() {
+        MChest chest = this.constructorTest();
+        final int two = 2;
+        final int five = 5;
+        chest.addItem("wool", two);
+        chest.addItem("string", 1);
+        chest.removeItem("wool", five);
+        assertEquals(1, chest.totalItems());
+    }
+
+    /**
+     * Tests that transferFrom moves the running total along with the items.
+     */
+    @Test
+    public void testTotalItemsAfterTransferFrom() {
+        MChest source = this.constructorTest();
+        MChest target = this.constructorTest();
+        final int six = 6;
+        source.addItem("sand", six);
+        target.addItem("dirt", 1);
+        target.transferFrom(source);
+        assertEquals(six, target.totalItems());
+        assertEquals(0, source.totalItems());
+    }
+
+    /**
+     * Tests that isFull() becomes false again after removing from a full
+     * chest.
+     */
+    @Test
+    public void testIsFullAfterRemove() {
+        MChest chest = this.constructorTest();
+        final int full = 1000;
+        chest.addItem("stone", full);
+        chest.removeItem("stone", 1);
+        assertFalse(chest.isFull());
+    }
+
+    // --- decrement Tests ---
+
+    /**
+     * Tests decrementing part of an item's quantity.
+     */
+    @Test
+    public void testDecrementPartial() {
+        MChest chest = this.constructorTest();
+        final int seven = 7;
+        final int three = 3;
+        final int four = 4;
+        chest.addItem("torch", seven);
+        assertEquals(four, chest.decrement("torch", three));
+        assertEquals(four, chest.itemQuantity("torch"));
+        assertEquals(four, chest.totalItems());
+    }
+
+    /**
+     * Tests decrementing more than an item's quantity removes the item.
+     */
+    @Test
+    public void testDecrementAll() {
+        MChest chest = this.constructorTest();
+        final int two = 2;
+        final int five = 5;
+        chest.addItem("torch", two);
+        chest.addItem("coal", 1);
+        assertEquals(0, chest.decrement("torch", five));
+        assertFalse(chest.containsItem("torch"));
+        assertEquals(1, chest.totalItems());
+    }
+
+    /**
+     * Tests that a partial removal reports the quantity actually removed.
+     */
+    @Test
+    public void testRemovePartialReturnsRemovedPair() {
+        MChest chest = this.constructorTest();
+        final int ten = 10;
+        final int four = 4;
+        chest.addItem("emerald", ten);
+        Pair<String, Integer> removed = chest.removeItem("emerald", four);
+        assertEquals("emerald", removed.key());
+        assertEquals(four, (int) removed.value());
+    }
+
+    // --- forEachItem Tests ---
+
+    /**
+     * Tests that forEachItem visits every item exactly once with its
+     * quantity.
+     */
+    @Test
+    public void testForEachItemVisitsEveryItem() {
+        MChest chest = this.constructorTest();
+        final int three = 3;
+        final int seven = 7;
+        chest.addItem("iron", three);
+        chest.addItem("gold", seven);
+        chest.addItem("iron", 1);
+        int[] visits = new int[1];
+        int[] sum = new int[1];
+        chest.forEachItem((item, quantity) -> {
+            assertEquals(chest.itemQuantity(item), quantity);
+            visits[0]++;
+            sum[0] += quantity;
+        });
+        assertEquals(2, visits[0]);
+        assertEquals(three + seven + 1, sum[0]);
+    }
+
+    /**
+     * Tests that forEachItem does nothing on an empty chest.
+     */
+    @Test
+    public void testForEachItemEmptyChest() {
+        MChest chest = this.constructorTest();
+        chest.addItem("dirt", 2);
+        chest.decrement("dirt", 2);
+        chest.forEachItem((item, quantity) -> {
+            throw new AssertionError("Unexpected item: " + item);
+        });
+    }
 }
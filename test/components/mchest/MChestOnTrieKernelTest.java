@@ -0,0 +1,13 @@
+package components.mchest;
+
+/**
+ * Runs the {@code MChestOnMap} kernel test suite against {@code MChestOnTrie}.
+ */
+public class MChestOnTrieKernelTest extends MChestOnMapTest {
+
+    @Override
+    protected MChest constructorTest() {
+        return new MChestOnTrie();
+    }
+
+}
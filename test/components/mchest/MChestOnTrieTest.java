@@ -0,0 +1,112 @@
+package components.mchest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import org.junit.Test;
+
+/**
+ * Runs the full {@code MChest} test suite against {@code MChestOnTrie}, plus
+ * tests for its trie structure and snapshots.
+ */
+public class MChestOnTrieTest extends MChestTest {
+
+    @Override
+    protected MChest constructorTest() {
+        return new MChestOnTrie();
+    }
+
+    /**
+     * Tests that items survive the trie growing several levels deep and
+     * collapsing again as they are removed.
+     */
+    @Test
+    public void testManyDistinctItems() {
+        MChest chest = this.constructorTest();
+        final int itemCount = 2000;
+        for (int i = 1; i <= itemCount; i++) {
+            chest.addItem("item" + i, i);
+        }
+        for (int i = 1; i <= itemCount; i++) {
+            assertEquals(i, chest.itemQuantity("item" + i));
+        }
+        assertEquals(itemCount, chest.distinctItems());
+        for (int i = 1; i <= itemCount; i += 2) {
+            chest.decrement("item" + i, i);
+        }
+        for (int i = 1; i <= itemCount; i++) {
+            assertEquals(i % 2 == 0, chest.containsItem("item" + i));
+        }
+        assertEquals(itemCount / 2, chest.getItems().size());
+    }
+
+    /**
+     * Tests that names with equal hash codes ("Aa" and "BB" collide, and so
+     * do their concatenations) are stored and removed independently.
+     */
+    @Test
+    public void testFullHashCollisions() {
+        MChest chest = this.constructorTest();
+        String[] names = { "AaAa", "AaBB", "BBAa", "BBBB" };
+        for (int i = 0; i < names.length; i++) {
+            chest.addItem(names[i], i + 1);
+        }
+        chest.removeItem("AaBB", 2);
+        chest.removeItem("BBBB", 2);
+        final int three = 3;
+        assertEquals(1, chest.itemQuantity("AaAa"));
+        assertFalse(chest.containsItem("AaBB"));
+        assertEquals(three, chest.itemQuantity("BBAa"));
+        assertEquals(2, chest.itemQuantity("BBBB"));
+        chest.decrement("AaAa", 1);
+        chest.decrement("BBBB", 2);
+        assertEquals(three, chest.itemQuantity("BBAa"));
+        assertEquals(1, chest.distinctItems());
+    }
+
+    /**
+     * Tests that a snapshot keeps the contents it was taken with.
+     */
+    @Test
+    public void testSnapshotIsIsolated() {
+        MChestOnTrie chest = new MChestOnTrie();
+        final int five = 5;
+        chest.addItem("wood", five);
+        chest.addItem("stone", 2);
+        MChest snapshot = chest.snapshot();
+        chest.addItem("wood", 1);
+        chest.removeItem("stone", 2);
+        chest.addItem("iron", 1);
+        assertEquals(five, snapshot.itemQuantity("wood"));
+        assertEquals(2, snapshot.itemQuantity("stone"));
+        assertFalse(snapshot.containsItem("iron"));
+        assertEquals(five + 2, snapshot.totalItems());
+        chest.clear();
+        assertEquals(2, snapshot.distinctItems());
+    }
+
+    /**
+     * Tests that a snapshot cannot be changed.
+     */
+    @Test(expected = UnsupportedOperationException.class)
+    public void testSnapshotIsImmutable() {
+        MChestOnTrie chest = new MChestOnTrie();
+        chest.addItem("wood", 1);
+        chest.snapshot().addItem("wood", 1);
+    }
+
+    /**
+     * Tests that a snapshot equals its chest until the chest changes.
+     */
+    @Test
+    public void testSnapshotEqualsChest() {
+        MChestOnTrie chest = new MChestOnTrie();
+        chest.addItem("wood", 2);
+        MChest snapshot = chest.snapshot();
+        assertEquals(chest, snapshot);
+        assertEquals(chest.hashCode(), snapshot.hashCode());
+        chest.addItem("wood", 1);
+        assertFalse(chest.equals(snapshot));
+        assertEquals(0, snapshot.newInstance().totalItems());
+    }
+}
@@ -7,12 +7,26 @@ import static org.junit.Assert.assertTrue;
 import org.junit.Test;
 
 import components.list.List;
+import components.map.Map;
+import components.map.Map.Pair;
+import components.map.Map2;
 
 /**
  * Unit tests for the MChest class and its functionalities.
  */
 public class MChestTest {
 
+    /**
+     * Invokes the no-argument constructor of the implementation under test.
+     * Subclasses override this to run the same tests against another kernel
+     * implementation.
+     *
+     * @return the new, empty chest
+     */
+    protected MChest constructorTest() {
+        return new MChestOnMap();
+    }
+
     /*
      * canCraft tests
      */
@@ -22,7 +36,7 @@ public class MChestTest {
      */
     @Test
     public void testCanCraftTrue() {
-        MChest chest = new MChestOnMap();
+        MChest chest = this.constructorTest();
         chest.addItem("wood", 2);
         chest.addItem("string", 1);
         assertTrue(chest.canCraft("wood", "string"));
@@ -33,7 +47,7 @@ public class MChestTest {
      */
     @Test
     public void testCanCraftFalseMissingItem() {
-        MChest chest = new MChestOnMap();
+        MChest chest = this.constructorTest();
         chest.addItem("wood", 2);
         assertFalse(chest.canCraft("wood", "string"));
     }
@@ -47,7 +61,7 @@ public class MChestTest {
      */
     @Test
     public void testTotalItemsMultipleItems() {
-        MChest chest = new MChestOnMap();
+        MChest chest = this.constructorTest();
         final int three = 3;
         final int seven = 7;
         final int ten = 10;
@@ -61,7 +75,7 @@ public class MChestTest {
      */
     @Test
     public void testTotalItemsEmptyChest() {
-        MChest chest = new MChestOnMap();
+        MChest chest = this.constructorTest();
         assertEquals(0, chest.totalItems());
     }
 
@@ -75,7 +89,7 @@ public class MChestTest {
      */
     @Test
     public void testGetItemsByQuantityOneMatch() {
-        MChest chest = new MChestOnMap();
+        MChest chest = this.constructorTest();
         final int six = 6;
         final int five = 5;
         chest.addItem("iron", 2);
@@ -105,7 +119,7 @@ public class MChestTest {
      */
     @Test
     public void testGetItemsByQuantityMultipleMatches() {
-        MChest chest = new MChestOnMap();
+        MChest chest = this.constructorTest();
         final int five = 5;
         final int six = 6;
         chest.addItem("emerald", five);
@@ -139,6 +153,72 @@ public class MChestTest {
         assertTrue(hasCoal);
     }
 
+    /**
+     * Tests the getItemsByQuantityAtMost method, including the boundary
+     * quantity.
+     */
+    @Test
+    public void testGetItemsByQuantityAtMost() {
+        MChest chest = this.constructorTest();
+        final int five = 5;
+        final int six = 6;
+        chest.addItem("emerald", five);
+        chest.addItem("coal", six);
+        chest.addItem("lapis", 2);
+        List<String> items = chest.getItemsByQuantityAtMost(five);
+        items.moveToStart();
+        assertEquals(2, items.rightLength());
+        boolean hasCoal = false;
+        for (String item : items) {
+            hasCoal = hasCoal || item.equals("coal");
+        }
+        assertFalse(hasCoal);
+        assertEquals(0, chest.getItemsByQuantityAtMost(1).rightLength());
+    }
+
+    /**
+     * Tests that topItems returns the largest quantities, largest first, and
+     * breaks ties by name.
+     */
+    @Test
+    public void testTopItems() {
+        MChest chest = this.constructorTest();
+        final int five = 5;
+        final int nine = 9;
+        chest.addItem("emerald", five);
+        chest.addItem("coal", nine);
+        chest.addItem("lapis", 2);
+        chest.addItem("iron", five);
+        List<String> top = chest.topItems(3);
+        top.moveToStart();
+        assertEquals(3, top.rightLength());
+        assertEquals("coal", top.removeRightFront());
+        assertEquals("iron", top.removeRightFront());
+        assertEquals("emerald", top.removeRightFront());
+    }
+
+    /**
+     * Tests that bottomItems returns the smallest quantities, smallest first,
+     * and every item when asked for more than the chest holds.
+     */
+    @Test
+    public void testBottomItems() {
+        MChest chest = this.constructorTest();
+        final int five = 5;
+        final int ten = 10;
+        chest.addItem("emerald", five);
+        chest.addItem("lapis", 2);
+        chest.addItem("coal", 1);
+        chest.decrement("emerald", 2);
+        List<String> bottom = chest.bottomItems(ten);
+        bottom.moveToStart();
+        assertEquals(3, bottom.rightLength());
+        assertEquals("coal", bottom.removeRightFront());
+        assertEquals("lapis", bottom.removeRightFront());
+        assertEquals("emerald", bottom.removeRightFront());
+        assertEquals(0, chest.bottomItems(0).rightLength());
+    }
+
     /*
      * getItems tests
      */
@@ -149,7 +229,7 @@ public class MChestTest {
      */
     @Test
     public void testGetItems() {
-        MChest chest = new MChestOnMap();
+        MChest chest = this.constructorTest();
         final int eight = 8;
         chest.addItem("arrow", eight);
         chest.addItem("bow", 1);
@@ -164,7 +244,7 @@ public class MChestTest {
      */
     @Test
     public void testGetItemsEmptyChest() {
-        MChest chest = new MChestOnMap();
+        MChest chest = this.constructorTest();
         components.map.Map<String, Integer> items = chest.getItems();
         assertEquals(0, items.size());
     }
@@ -179,7 +259,7 @@ public class MChestTest {
      */
     @Test
     public void testClearNonEmpty() {
-        MChest chest = new MChestOnMap();
+        MChest chest = this.constructorTest();
         final int three = 3;
         chest.addItem("apple", three);
         chest.clear();
@@ -193,7 +273,7 @@ public class MChestTest {
      */
     @Test
     public void testClearTwice() {
-        MChest chest = new MChestOnMap();
+        MChest chest = this.constructorTest();
         chest.addItem("melon", 1);
         chest.clear();
         chest.clear();
@@ -210,8 +290,8 @@ public class MChestTest {
      */
     @Test
     public void testEqualsTrue() {
-        MChest chest1 = new MChestOnMap();
-        MChest chest2 = new MChestOnMap();
+        MChest chest1 = this.constructorTest();
+        MChest chest2 = this.constructorTest();
         chest1.addItem("torch", 2);
         chest2.addItem("torch", 2);
         assertTrue(chest1.equals(chest2));
@@ -224,13 +304,86 @@ public class MChestTest {
      */
     @Test
     public void testEqualsFalse() {
-        MChest chest1 = new MChestOnMap();
-        MChest chest2 = new MChestOnMap();
+        MChest chest1 = this.constructorTest();
+        MChest chest2 = this.constructorTest();
+        chest1.addItem("torch", 2);
+        chest2.addItem("torch", 1);
+        assertFalse(chest1.equals(chest2));
+    }
+
+    /**
+     * Tests that equals tells apart chests with the same total but different
+     * items.
+     */
+    @Test
+    public void testEqualsSameTotalDifferentItems() {
+        MChest chest1 = this.constructorTest();
+        MChest chest2 = this.constructorTest();
         chest1.addItem("torch", 2);
         chest2.addItem("torch", 1);
+        chest2.addItem("stick", 1);
+        assertFalse(chest1.equals(chest2));
+        assertFalse(chest2.equals(chest1));
+    }
+
+    /**
+     * Tests that chests reaching the same contents through different changes
+     * are equal and have the same hash code.
+     */
+    @Test
+    public void testHashCodeIndependentOfHistory() {
+        MChest chest1 = this.constructorTest();
+        MChest chest2 = this.constructorTest();
+        final int four = 4;
+        final int six = 6;
+        chest1.addItem("torch", four);
+        chest1.addItem("coal", 1);
+        chest2.addItem("coal", six);
+        chest2.addItem("sand", 2);
+        chest2.addItem("torch", 1);
+        chest2.decrement("coal", 2 + 3);
+        chest2.decrement("sand", 2);
+        chest2.addItem("torch", 3);
+        assertTrue(chest1.equals(chest2));
+        assertEquals(chest1.hashCode(), chest2.hashCode());
+        chest2.addItem("torch", 1);
         assertFalse(chest1.equals(chest2));
     }
 
+    /**
+     * Tests that distinctItems counts names, not quantities.
+     */
+    @Test
+    public void testDistinctItems() {
+        MChest chest = this.constructorTest();
+        final int five = 5;
+        assertEquals(0, chest.distinctItems());
+        chest.addItem("torch", five);
+        chest.addItem("coal", 1);
+        chest.addItem("torch", 1);
+        assertEquals(2, chest.distinctItems());
+        chest.decrement("coal", 1);
+        assertEquals(1, chest.distinctItems());
+    }
+
+    /**
+     * Tests that equal chests of different implementations are equal and have
+     * the same hash code.
+     */
+    @Test
+    public void testEqualsOtherImplementation() {
+        MChest chest1 = this.constructorTest();
+        MChest chest2 = new MChestOnIntTable();
+        final int five = 5;
+        chest1.addItem("torch", 2);
+        chest1.addItem("coal", five);
+        chest2.addItem("coal", five);
+        chest2.addItem("torch", 2);
+        assertTrue(chest1.equals(chest2));
+        assertTrue(chest2.equals(chest1));
+        assertEquals(chest1.hashCode(), chest2.hashCode());
+    }
+
     /*
      * toString
      */
@@ -241,7 +394,7 @@ public class MChestTest {
      */
     @Test
     public void testToStringNonEmpty() {
-        MChest chest = new MChestOnMap();
+        MChest chest = this.constructorTest();
         chest.addItem("book", 1);
         String output = chest.toString();
         assertTrue(output.contains("book"));
@@ -254,8 +407,163 @@ public class MChestTest {
      */
     @Test
     public void testToStringEmpty() {
-        MChest chest = new MChestOnMap();
+        MChest chest = this.constructorTest();
         String output = chest.toString();
         assertTrue(output.contains("MChest:"));
     }
+
+    /*
+     * int-keyed overloads
+     */
+
+    /**
+     * Tests that items added by ID can be read back by name and by ID.
+     */
+    @Test
+    public void testAddItemById() {
+        MChest chest = this.constructorTest();
+        final int three = 3;
+        int wood = ItemRegistry.shared().idOf("wood");
+        chest.addItem(wood, three);
+        assertEquals(three, chest.itemQuantity("wood"));
+        assertEquals(three, chest.itemQuantity(wood));
+        assertTrue(chest.containsItem(wood));
+    }
+
+    /**
+     * Tests removing an item by ID.
+     */
+    @Test
+    public void testRemoveItemById() {
+        MChest chest = this.constructorTest();
+        final int five = 5;
+        final int two = 2;
+        final int three = 3;
+        int stick = ItemRegistry.shared().idOf("stick");
+        chest.addItem("stick", five);
+        Pair<String, Integer> removed = chest.removeItem(stick, two);
+        assertEquals("stick", removed.key());
+        assertEquals(two, (int) removed.value());
+        assertEquals(three, chest.itemQuantity(stick));
+    }
+
+    /**
+     * Tests containsItem by ID for a registered item that is not in the chest.
+     */
+    @Test
+    public void testContainsItemByIdFalse() {
+        MChest chest = this.constructorTest();
+        int obsidian = ItemRegistry.shared().idOf("obsidian");
+        assertFalse(chest.containsItem(obsidian));
+        assertEquals(0, chest.itemQuantity(obsidian));
+    }
+
+    /*
+     * addAll and removeAll
+     */
+
+    /**
+     * Tests that addAll adds every item in the batch.
+     */
+    @Test
+    public void testAddAll() {
+        MChest chest = this.constructorTest();
+        final int three = 3;
+        final int five = 5;
+        chest.addItem("wood", 1);
+        Map<String, Integer> batch = new Map2<>();
+        batch.add("wood", three);
+        batch.add("stone", five);
+        assertTrue(chest.addAll(batch));
+        assertEquals(1 + three, chest.itemQuantity("wood"));
+        assertEquals(five, chest.itemQuantity("stone"));
+        assertEquals(1 + three + five, chest.totalItems());
+    }
+
+    /**
+     * Tests that addAll leaves a full chest unchanged.
+     */
+    @Test
+    public void testAddAllFullChest() {
+        MChest chest = this.constructorTest();
+        final int full = 1000;
+        chest.addItem("stone", full);
+        Map<String, Integer> batch = new Map2<>();
+        batch.add("wood", 1);
+        assertFalse(chest.addAll(batch));
+        assertFalse(chest.containsItem("wood"));
+        assertEquals(full, chest.totalItems());
+    }
+
+    /**
+     * Tests that addAll rejects a whole batch that does not fit, even when
+     * the chest is not full, and accepts one that fills it exactly.
+     */
+    @Test
+    public void testAddAllBatchTooLarge() {
+        MChest chest = this.constructorTest();
+        final int almostFull = 999;
+        chest.addItem("stone", almostFull);
+        Map<String, Integer> batch = new Map2<>();
+        batch.add("wood", 1);
+        batch.add("iron", 1);
+        assertFalse(chest.fits(batch));
+        assertFalse(chest.addAll(batch));
+        assertFalse(chest.containsItem("wood"));
+        assertEquals(almostFull, chest.totalItems());
+        batch.remove("iron");
+        assertTrue(chest.addAll(batch));
+        assertEquals(almostFull + 1, chest.totalItems());
+    }
+
+    /**
+     * Tests that removeAll removes every item in the batch.
+     */
+    @Test
+    public void testRemoveAll() {
+        MChest chest = this.constructorTest();
+        final int three = 3;
+        final int five = 5;
+        chest.addItem("wood", three);
+        chest.addItem("stone", five);
+        Map<String, Integer> batch = new Map2<>();
+        batch.add("wood", three);
+        batch.add("stone", 2);
+        assertTrue(chest.removeAll(batch));
+        assertFalse(chest.containsItem("wood"));
+        assertEquals(three, chest.itemQuantity("stone"));
+    }
+
+    /**
+     * Tests that removeAll removes nothing when one item is short.
+     */
+    @Test
+    public void testRemoveAllShortItem() {
+        MChest chest = this.constructorTest();
+        final int three = 3;
+        final int five = 5;
+        chest.addItem("wood", three);
+        chest.addItem("stone", five);
+        Map<String, Integer> batch = new Map2<>();
+        batch.add("wood", 2);
+        batch.add("stone", five + 1);
+        assertFalse(chest.removeAll(batch));
+        assertEquals(three, chest.itemQuantity("wood"));
+        assertEquals(five, chest.itemQuantity("stone"));
+    }
+
+    /**
+     * Tests that remainingCapacity counts down to 0 under the legacy limit.
+     */
+    @Test
+    public void testRemainingCapacityLegacy() {
+        MChest chest = this.constructorTest();
+        final int full = 1000;
+        final int some = 250;
+        assertEquals(full, chest.remainingCapacity("wood"));
+        chest.addItem("wood", some);
+        assertEquals(full - some, chest.remainingCapacity("stone"));
+        chest.addItem("stone", full - some);
+        assertEquals(0, chest.remainingCapacity("stone"));
+    }
 }
@@ -0,0 +1,133 @@
+package components.mchest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for the MChestTransaction class.
+ */
+public class MChestTransactionTest {
+
+    /**
+     * Tests moving items between two chests.
+     */
+    @Test
+    public void testMoveCommits() {
+        final int five = 5;
+        final int three = 3;
+        MChest source = new MChestOnMap();
+        MChest target = new ConcurrentMChest();
+        source.addItem("wood", five);
+        MChestTransaction transaction = new MChestTransaction();
+        transaction.move(source, target, "wood", three);
+        assertTrue(transaction.commit());
+        assertEquals(2, source.itemQuantity("wood"));
+        assertEquals(three, target.itemQuantity("wood"));
+    }
+
+    /**
+     * Tests that a transaction with one short item changes nothing.
+     */
+    @Test
+    public void testShortItemRollsBackEverything() {
+        final int five = 5;
+        MChest first = new MChestOnMap();
+        MChest second = new MChestOnIntTable();
+        MChest third = new ConcurrentMChest();
+        first.addItem("wood", five);
+        second.addItem("stone", 1);
+        MChestTransaction transaction = new MChestTransaction()
+                .move(first, third, "wood", five)
+                .move(second, third, "stone", 2);
+        assertFalse(transaction.commit());
+        assertEquals(five, first.itemQuantity("wood"));
+        assertEquals(1, second.itemQuantity("stone"));
+        assertEquals(0, third.totalItems());
+    }
+
+    /**
+     * Tests that a transaction adding to a full chest changes nothing.
+     */
+    @Test
+    public void testFullTargetRollsBack() {
+        final int full = 1000;
+        MChest source = new MChestOnMap();
+        MChest target = new ConcurrentMChest();
+        source.addItem("wood", 1);
+        target.addItem("stone", full);
+        assertFalse(new MChestTransaction().move(source, target, "wood", 1)
+                .commit());
+        assertEquals(1, source.itemQuantity("wood"));
+        assertEquals(full, target.totalItems());
+    }
+
+    /**
+     * Tests that a transaction whose additions do not all fit in a chest
+     * that is not yet full changes nothing.
+     */
+    @Test
+    public void testOversizedGainRollsBack() {
+        final int almostFull = 999;
+        MChest source = new MChestOnMap();
+        source.addItem("wood", 2);
+        MChest[] targets = { new MChestOnMap(), new ConcurrentMChest() };
+        for (MChest target : targets) {
+            target.addItem("stone", almostFull);
+            assertFalse(new MChestTransaction()
+                    .move(source, target, "wood", 2).commit());
+            assertEquals(2, source.itemQuantity("wood"));
+            assertEquals(almostFull, target.totalItems());
+        }
+    }
+
+    /**
+     * Tests that changes to the same item of the same chest are netted.
+     */
+    @Test
+    public void testChangesAreNetted() {
+        final int three = 3;
+        final int five = 5;
+        MChest chest = new MChestOnMap();
+        chest.addItem("wood", three);
+        MChestTransaction transaction = new MChestTransaction()
+                .remove(chest, "wood", five).add(chest, "wood", three);
+        assertTrue(transaction.commit());
+        assertEquals(1, chest.itemQuantity("wood"));
+    }
+
+    /**
+     * Tests that opposite concurrent transfers between two chests neither
+     * deadlock nor lose items.
+     *
+     * @throws InterruptedException
+     *             if interrupted while waiting
+     */
+    @Test
+    public void testConcurrentOppositeTransfers() throws InterruptedException {
+        final int stock = 500;
+        final int rounds = 2000;
+        MChest left = new ConcurrentMChest();
+        MChest right = new MChestOnMap();
+        left.addItem("gold", stock);
+        right.addItem("gold", stock);
+        Thread toRight = new Thread(() -> {
+            for (int i = 0; i < rounds; i++) {
+                new MChestTransaction().move(left, right, "gold", 1).commit();
+            }
+        });
+        Thread toLeft = new Thread(() -> {
+            for (int i = 0; i < rounds; i++) {
+                new MChestTransaction().move(right, left, "gold", 1).commit();
+            }
+        });
+        toRight.start();
+        toLeft.start();
+        toRight.join();
+        toLeft.join();
+        assertEquals(2 * stock,
+                left.itemQuantity("gold") + right.itemQuantity("gold"));
+    }
+}
@@ -0,0 +1,122 @@
+package components.mchest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests {@code MChestOnMap} with a {@code SlotCapacityPolicy}.
+ */
+public class SlotCapacityPolicyTest {
+
+    /**
+     * Stack size of most items in the tests.
+     */
+    private static final int STACK = 64;
+
+    /**
+     * Stack size of ender pearls in the tests.
+     */
+    private static final int PEARL_STACK = 16;
+
+    /**
+     * Returns a three-slot policy where pearls stack to 16 and swords to 1.
+     *
+     * @return the policy
+     */
+    private static SlotCapacityPolicy threeSlots() {
+        final int three = 3;
+        return new SlotCapacityPolicy(three, STACK, CapacityPolicy.UNLIMITED)
+                .withStackSize("ender_pearl", PEARL_STACK)
+                .withStackSize("sword", 1);
+    }
+
+    /**
+     * Tests that each item fills slots at its own stack size.
+     */
+    @Test
+    public void testSlotsFillByStackSize() {
+        MChest chest = new MChestOnMap(threeSlots());
+        final int three = 3;
+        assertEquals(three * STACK, chest.remainingCapacity("stone"));
+        assertEquals(three * PEARL_STACK,
+                chest.remainingCapacity("ender_pearl"));
+        assertEquals(three, chest.remainingCapacity("sword"));
+        chest.addItem("sword", 2);
+        assertEquals(STACK, chest.remainingCapacity("stone"));
+        chest.addItem("stone", 1);
+        assertTrue(chest.isFull());
+        assertEquals(STACK - 1, chest.remainingCapacity("stone"));
+        assertEquals(0, chest.remainingCapacity("sword"));
+    }
+
+    /**
+     * Tests that removals free slots again.
+     */
+    @Test
+    public void testRemovalFreesSlots() {
+        MChest chest = new MChestOnMap(threeSlots());
+        final int pearls = PEARL_STACK + 1;
+        chest.addItem("ender_pearl", pearls);
+        chest.addItem("stone", 1);
+        assertTrue(chest.isFull());
+        chest.decrement("ender_pearl", 1);
+        assertFalse(chest.isFull());
+        assertEquals(PEARL_STACK, chest.remainingCapacity("ender_pearl"));
+        chest.clear();
+        assertEquals(STACK * (2 + 1), chest.remainingCapacity("stone"));
+    }
+
+    /**
+     * Tests that the weight limit caps items by their weight.
+     */
+    @Test
+    public void testWeightLimit() {
+        final int limit = 100;
+        final int ingotWeight = 10;
+        final int ten = 10;
+        CapacityPolicy policy = new SlotCapacityPolicy(
+                CapacityPolicy.UNLIMITED, CapacityPolicy.UNLIMITED, limit)
+                        .withWeight("iron_ingot", ingotWeight)
+                        .withWeight("feather", 0);
+        MChest chest = new MChestOnMap(policy);
+        assertEquals(ten, chest.remainingCapacity("iron_ingot"));
+        chest.addItem("stone", ten * 2);
+        assertEquals(limit - ten * 2, chest.remainingCapacity("stone"));
+        assertEquals(2 * 2 * 2, chest.remainingCapacity("iron_ingot"));
+        chest.addItem("iron_ingot", 2 * 2 * 2);
+        assertTrue(chest.isFull());
+        assertEquals(CapacityPolicy.UNLIMITED,
+                chest.remainingCapacity("feather"));
+    }
+
+    /**
+     * Tests that newInstance and transferFrom keep each chest's policy.
+     */
+    @Test
+    public void testNewInstanceAndTransferKeepPolicy() {
+        MChestOnMap chest = new MChestOnMap(threeSlots());
+        MChestOnMap copy = (MChestOnMap) chest.newInstance();
+        assertSame(chest.capacityPolicy(), copy.capacityPolicy());
+        MChest legacy = new MChestOnMap();
+        legacy.addItem("sword", 2);
+        chest.transferFrom(legacy);
+        assertEquals(1, chest.remainingCapacity("sword"));
+        final int full = 1000;
+        assertEquals(full, legacy.remainingCapacity("sword"));
+    }
+
+    /**
+     * Tests that the legacy policy matches the original 1000-item limit.
+     */
+    @Test
+    public void testLegacyPolicy() {
+        CapacityPolicy legacy = CapacityPolicy.legacy();
+        assertEquals(CapacityPolicy.UNLIMITED, legacy.slotLimit());
+        assertEquals(CapacityPolicy.LEGACY_ITEMS, legacy.weightLimit());
+        assertEquals(1, legacy.weight("anything"));
+    }
+}